@@ -0,0 +1,216 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the query path of the tool against an embedded H2GIS database, so that
+ * changes to pooling, streaming and transfer can be compared on any machine without
+ * a database server. Generates tables of points, lines and polygons, then runs the
+ * layer queries through DatabaseConnector in each transfer mode and prints the
+ * latency, throughput and phase timings.
+ * Run with mvn -Pbenchmark compile exec:java, see the benchmark profile in pom.xml.
+ */
+public final class QueryBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:gqt_bench;DB_CLOSE_DELAY=-1";
+    private static final String[] TABLES = {"points", "lines", "polygons"};
+    private static final int DEFAULT_ROWS = 100000;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int DEFAULT_VERTICES = 32;
+    private static final int INSERT_BATCH = 1000;
+    private static final double EXTENT = 10000;
+    private static final double STEP = 5;
+    private static final double RADIUS = 20;
+    private static final long SEED = 42;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double MILLIS_PER_SECOND = 1000;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private QueryBenchmark() { }
+
+    /**
+     * Runs the benchmark.
+     * @param args number of rows per table, number of timed runs per query,
+     *     and vertices per line and polygon
+     * @throws SQLException if the test database could not be created
+     */
+    public static void main(final String[] args) throws SQLException {
+        int rows = argument(args, 0, DEFAULT_ROWS);
+        int iterations = argument(args, 1, DEFAULT_ITERATIONS);
+        int vertices = argument(args, 2, DEFAULT_VERTICES);
+        Database db = new Database("bench", URL, "sa", "");
+
+        try (Connection con = DriverManager.getConnection(URL, db.getUser(), db.getPassword())) {
+            long start = System.nanoTime();
+            createTables(con, rows, vertices);
+            System.out.printf(Locale.ROOT, "Created %d rows in each of %s in %.0f ms%n",
+                    rows, String.join(", ", TABLES),
+                    (System.nanoTime() - start) / NANOS_PER_MILLI);
+
+            System.out.printf(Locale.ROOT, "%-9s %-14s %9s %9s %9s %10s %8s"
+                    + " %8s %8s %8s %8s%n", "table", "mode", "rows", "best ms", "median ms",
+                    "rows/s", "MB", "connect", "execute", "fetch", "decode");
+            for (String table : TABLES) {
+                String query = "SELECT ST_AsText(geom) FROM " + table;
+                QueryOptions text = new QueryOptions();
+                QueryOptions binary = new QueryOptions();
+                binary.setBinaryTransfer(true);
+                QueryOptions cursor = new QueryOptions(binary);
+                cursor.setCursorFetch(true);
+                run(table, "text", query, db, text, iterations);
+                run(table, "binary", query, db, binary, iterations);
+                run(table, "binary+cursor", query, db, cursor, iterations);
+                runLegacy(table, query, db, iterations);
+            }
+        } finally {
+            System.out.println("Pool: " + ConnectionPool.getPool(db));
+            ConnectionPool.shutdownAll();
+        }
+    }
+
+    private static int argument(final String[] args, final int index, final int fallback) {
+        if (args.length > index) {
+            return Integer.parseInt(args[index]);
+        }
+        return fallback;
+    }
+
+    /**
+     * Times a layer query through DatabaseConnector.streamQuery, as used by QueryTask.
+     * The first run is not timed, it warms up the pool and the JIT.
+     */
+    private static void run(final String table, final String mode, final String query,
+                            final Database db, final QueryOptions options,
+                            final int iterations) {
+        List<Double> millis = new ArrayList<>();
+        QueryMetrics total = new QueryMetrics();
+        long rows = 0;
+        for (int i = 0; i <= iterations; i++) {
+            QueryMetrics metrics = new QueryMetrics();
+            long start = System.nanoTime();
+            QueryResult result = DatabaseConnector.streamQuery(query, db, options,
+                    geometry -> metrics.addVertices(geometry.getNumPoints()),
+                    new QueryHandle(), metrics);
+            long elapsed = System.nanoTime() - start;
+            if (!result.isSuccess()) {
+                System.out.println(table + " " + mode + ": " + result.getError());
+                return;
+            }
+            if (i > 0) {
+                millis.add(elapsed / NANOS_PER_MILLI);
+                rows = result.getRows();
+                total.add(metrics);
+            }
+        }
+        report(table, mode, rows, millis, total, iterations);
+    }
+
+    /**
+     * Times DatabaseConnector.executeQuery, which reads every row as text.
+     */
+    private static void runLegacy(final String table, final String query, final Database db,
+                                  final int iterations) {
+        List<Double> millis = new ArrayList<>();
+        for (int i = 0; i <= iterations; i++) {
+            long start = System.nanoTime();
+            DatabaseConnector.executeQuery(query, db);
+            if (i > 0) {
+                millis.add((System.nanoTime() - start) / NANOS_PER_MILLI);
+            }
+        }
+        Collections.sort(millis);
+        System.out.printf(Locale.ROOT, "%-9s %-14s %9s %9.1f %9.1f%n", table, "executeQuery",
+                "", millis.get(0), millis.get(millis.size() / 2));
+    }
+
+    private static void report(final String table, final String mode, final long rows,
+                               final List<Double> millis, final QueryMetrics total,
+                               final int iterations) {
+        Collections.sort(millis);
+        double best = millis.get(0);
+        double median = millis.get(millis.size() / 2);
+        System.out.printf(Locale.ROOT, "%-9s %-14s %9d %9.1f %9.1f %10.0f %8.1f"
+                        + " %8.1f %8.1f %8.1f %8.1f%n",
+                table, mode, rows, best, median, rows / (median / MILLIS_PER_SECOND),
+                total.getBytes() / BYTES_PER_MB / iterations,
+                total.getMillis(QueryMetrics.Phase.CONNECT) / iterations,
+                total.getMillis(QueryMetrics.Phase.EXECUTE) / iterations,
+                total.getMillis(QueryMetrics.Phase.FETCH) / iterations,
+                total.getMillis(QueryMetrics.Phase.DECODE) / iterations);
+    }
+
+    /**
+     * Loads the H2GIS functions and fills the point, line and polygon tables with
+     * geometries generated from a fixed seed, so every run queries the same data.
+     */
+    private static void createTables(final Connection con, final int rows, final int vertices)
+            throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("CREATE ALIAS IF NOT EXISTS H2GIS_SPATIAL"
+                    + " FOR \"org.h2gis.functions.factory.H2GISFunctions.load\"");
+            st.execute("CALL H2GIS_SPATIAL()");
+            for (String table : TABLES) {
+                st.execute("DROP TABLE IF EXISTS " + table);
+                st.execute("CREATE TABLE " + table
+                        + " (id INT AUTO_INCREMENT PRIMARY KEY, geom GEOMETRY)");
+            }
+        }
+        Random random = new Random(SEED);
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        for (String table : TABLES) {
+            try (PreparedStatement insert = con.prepareStatement(
+                    "INSERT INTO " + table + " (geom) VALUES (ST_GeomFromText(?))")) {
+                for (int i = 0; i < rows; i++) {
+                    insert.setString(1, createWkt(table, random, vertices));
+                    insert.addBatch();
+                    if ((i + 1) % INSERT_BATCH == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            con.commit();
+            try (Statement st = con.createStatement()) {
+                st.execute("CREATE SPATIAL INDEX ON " + table + " (geom)");
+            }
+        }
+        con.setAutoCommit(autoCommit);
+    }
+
+    private static String createWkt(final String table, final Random random,
+                                    final int vertices) {
+        double x = random.nextDouble() * EXTENT;
+        double y = random.nextDouble() * EXTENT;
+        if ("points".equals(table)) {
+            return "POINT(" + x + " " + y + ")";
+        }
+        StringBuilder wkt = new StringBuilder();
+        if ("lines".equals(table)) {
+            wkt.append("LINESTRING(");
+            for (int v = 0; v < vertices; v++) {
+                if (v > 0) {
+                    wkt.append(", ");
+                }
+                x += (2 * random.nextDouble() - 1) * STEP;
+                y += (2 * random.nextDouble() - 1) * STEP;
+                wkt.append(x).append(' ').append(y);
+            }
+            return wkt.append(')').toString();
+        }
+        wkt.append("POLYGON((");
+        for (int v = 0; v < vertices; v++) {
+            double angle = 2 * Math.PI * v / vertices;
+            wkt.append(x + RADIUS * Math.cos(angle)).append(' ')
+                    .append(y + RADIUS * Math.sin(angle)).append(", ");
+        }
+        return wkt.append(x + RADIUS).append(' ').append(y).append("))").toString();
+    }
+}
@@ -0,0 +1,150 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the speed and garbage of FastWktReader and JTS WKTReader. A generated
+ * GEOMETRYCOLLECTION is read with WKTReader followed by a pass inverting the
+ * y-coordinates, as WktParser did, and with FastWktReader inverting them while reading.
+ * That both read the same geometries is checked by FastWktReaderTest.
+ * Run with mvn -Pbenchmark compile exec:java -Dbench.main=WktReaderBenchmark.
+ */
+public final class WktReaderBenchmark {
+
+    private static final int DEFAULT_ROWS = 100000;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int DEFAULT_VERTICES = 32;
+    private static final int MAX_DECIMALS = 17;
+    private static final double EXTENT = 10000;
+    private static final double STEP = 5;
+    private static final long SEED = 42;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private WktReaderBenchmark() { }
+
+    /**
+     * Runs the benchmark.
+     * @param args number of geometries in the timed collection, number of timed runs,
+     *     and vertices per geometry
+     * @throws ParseException if the generated collection can not be read
+     */
+    public static void main(final String[] args) throws ParseException {
+        int rows = argument(args, 0, DEFAULT_ROWS);
+        int iterations = argument(args, 1, DEFAULT_ITERATIONS);
+        int vertices = argument(args, 2, DEFAULT_VERTICES);
+        GeometryFactory factory = JTSFactoryFinder.getGeometryFactory();
+
+        Random random = new Random(SEED);
+        StringBuilder collection = new StringBuilder("GEOMETRYCOLLECTION (");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                collection.append(", ");
+            }
+            collection.append(createWkt(random, vertices, i % 2 == 0));
+        }
+        String wkt = collection.append(')').toString();
+        System.out.printf(Locale.ROOT, "Reading %d geometries of %d vertices, %.1f MB of WKT%n",
+                rows, vertices, wkt.length() / BYTES_PER_MB);
+        System.out.printf(Locale.ROOT, "%-22s %9s %9s %12s%n", "reader", "best ms", "median ms",
+                "garbage MB");
+
+        WKTReader wktReader = new WKTReader(factory);
+        time("WKTReader + invert", iterations, () -> {
+            Geometry geometry = wktReader.read(wkt);
+            for (Coordinate coordinate : geometry.getCoordinates()) {
+                coordinate.y *= -1;
+            }
+        });
+        FastWktReader fastReader = new FastWktReader(factory, true, false);
+        time("FastWktReader", iterations, () -> fastReader.read(wkt));
+        FastWktReader packedReader = new FastWktReader(factory, true, true);
+        time("FastWktReader packed", iterations, () -> packedReader.read(wkt));
+    }
+
+    private static int argument(final String[] args, final int index, final int fallback) {
+        if (args.length > index) {
+            return Integer.parseInt(args[index]);
+        }
+        return fallback;
+    }
+
+    /**
+     * Times reading with a reader. The first run is not timed, it warms up the JIT.
+     * The garbage is the memory the reading thread allocated per run, including the
+     * geometries read.
+     */
+    private static void time(final String name, final int iterations, final Read read)
+            throws ParseException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        List<Double> millis = new ArrayList<>();
+        long allocated = 0;
+        for (int i = 0; i <= iterations; i++) {
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            read.run();
+            long elapsed = System.nanoTime() - start;
+            if (i > 0) {
+                millis.add(elapsed / NANOS_PER_MILLI);
+                allocated += threads.getThreadAllocatedBytes(thread) - bytes;
+            }
+        }
+        Collections.sort(millis);
+        System.out.printf(Locale.ROOT, "%-22s %9.1f %9.1f %12.1f%n", name, millis.get(0),
+                millis.get(millis.size() / 2), allocated / BYTES_PER_MB / iterations);
+    }
+
+    /**
+     * Creates a line or polygon around a random place, with numbers as Java prints them
+     * or rounded to a random number of decimals, as databases print them.
+     */
+    private static String createWkt(final Random random, final int vertices,
+                                    final boolean polygon) {
+        int decimals = random.nextInt(MAX_DECIMALS);
+        double x = random.nextDouble() * EXTENT - EXTENT / 2;
+        double y = random.nextDouble() * EXTENT - EXTENT / 2;
+        StringBuilder wkt = new StringBuilder();
+        if (polygon) {
+            wkt.append("POLYGON ((");
+        } else {
+            wkt.append("LINESTRING (");
+        }
+        String first = number(x, decimals) + " " + number(y, decimals);
+        wkt.append(first);
+        for (int v = 0; v < vertices; v++) {
+            x += (2 * random.nextDouble() - 1) * STEP;
+            y += (2 * random.nextDouble() - 1) * STEP;
+            wkt.append(", ").append(number(x, decimals)).append(' ').append(number(y, decimals));
+        }
+        if (polygon) {
+            wkt.append(", ").append(first).append(')');
+        }
+        return wkt.append(')').toString();
+    }
+
+    private static String number(final double value, final int decimals) {
+        if (decimals == 0) {
+            return Double.toString(value);
+        }
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    /**
+     * Reading done by one timed run.
+     */
+    private interface Read {
+        void run() throws ParseException;
+    }
+}
@@ -0,0 +1,98 @@
+import javafx.concurrent.Task;
+
+/**
+ * Work sent to a database on a background thread, tracked by the Controller while
+ * it runs: a layer query or a script of statements, or a file read into a layer, which
+ * has no database.
+ * Cancelling the task cancels its statements on the server.
+ */
+public abstract class BackgroundQuery extends Task<QueryResult> {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Database database;
+    private final QueryHandle handle = new QueryHandle();
+    private final long startTime = System.nanoTime();
+    private volatile long rows = 0;
+    private volatile long endTime = 0;
+
+    /**
+     * Creates a task for a database.
+     * @param database the database the work is sent to, null for a file
+     */
+    protected BackgroundQuery(final Database database) {
+        this.database = database;
+    }
+
+    @Override
+    protected final QueryResult call() {
+        try {
+            return runQuery();
+        } finally {
+            endTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Does the work on the background thread.
+     * @return the outcome
+     */
+    protected abstract QueryResult runQuery();
+
+    /**
+     * Checks if the task is filling a layer.
+     * @param layer the layer
+     * @return true if rows of this task end up in the layer
+     */
+    public abstract boolean isFilling(Layer layer);
+
+    /**
+     * Cancels the task and drops the rows it has not yet added to its layers,
+     * used when a newer query for the same layer replaces it.
+     */
+    public abstract void discard();
+
+    /**
+     * Cancels the task. The thread is not interrupted, since that can leave the
+     * connection in an unknown state; the statement is cancelled instead, and the rows
+     * received so far stay in the layer.
+     * @param mayInterruptIfRunning ignored
+     * @return true if the task was cancelled
+     */
+    @Override
+    public final boolean cancel(final boolean mayInterruptIfRunning) {
+        handle.cancel();
+        return super.cancel(false);
+    }
+
+    protected final QueryHandle getHandle() {
+        return handle;
+    }
+
+    /**
+     * Counts a row added to a layer. Called by one thread at a time.
+     */
+    protected final void addRow() {
+        rows++;
+    }
+
+    public final Database getDatabase() {
+        return database;
+    }
+
+    public final long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Gets the time since the task was submitted, or the time it took once it is done.
+     * @return elapsed time in seconds
+     */
+    public final double getElapsedSeconds() {
+        long end = endTime;
+        if (end == 0) {
+            end = System.nanoTime();
+        }
+        return (end - startTime) / NANOS_PER_SECOND;
+    }
+}
@@ -0,0 +1,194 @@
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Splits the output of a PostgreSQL COPY ... TO STDOUT (FORMAT binary) into rows.
+ * The data arrives in chunks that need not line up with rows, so the parser keeps
+ * an incomplete row until the rest of it arrives. Only the value of the first column
+ * of each row is handed on; the other columns are skipped.
+ * Not thread safe, one parser is used per COPY.
+ */
+public class BinaryCopyParser {
+
+    /**
+     * Every binary COPY starts with this signature.
+     */
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF,
+            '\r', '\n', 0};
+    private static final int INT16_BYTES = 2;
+    private static final int INT32_BYTES = 4;
+    /**
+     * Header length before the header extension: signature, flags and extension length.
+     */
+    private static final int HEADER_BYTES = SIGNATURE.length + 2 * INT32_BYTES;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BYTE_BITS = 8;
+    private static final int TRAILER = -1;
+    private static final int NULL_LENGTH = -1;
+
+    private byte[] pending = new byte[0];
+    private int pendingLength = 0;
+    private boolean headerRead = false;
+    private boolean finished = false;
+    private long rows = 0;
+
+    /**
+     * Parses the next chunk of COPY data, handing the first value of every complete row
+     * to the sink.
+     * @param chunk bytes as received from the server
+     * @param sink receives the first value of each row, null for SQL NULL
+     * @return false once the end of the data has been read
+     * @throws SQLException if the data is not binary COPY output
+     */
+    public final boolean feed(final byte[] chunk, final Consumer<byte[]> sink)
+            throws SQLException {
+        if (finished) {
+            return false;
+        }
+        byte[] data = chunk;
+        int length = chunk.length;
+        if (pendingLength > 0) {
+            append(chunk);
+            data = pending;
+            length = pendingLength;
+        }
+        int consumed = parse(data, length, sink);
+        int left = length - consumed;
+        if (left > 0 && data != pending) {
+            pendingLength = 0;
+            append(data, consumed, left);
+        } else if (left > 0) {
+            System.arraycopy(pending, consumed, pending, 0, left);
+            pendingLength = left;
+        } else {
+            pendingLength = 0;
+        }
+        return !finished;
+    }
+
+    /**
+     * Gets the number of rows parsed so far.
+     * @return the number of rows
+     */
+    public final long getRows() {
+        return rows;
+    }
+
+    /**
+     * Parses the header and as many complete rows as the data holds.
+     * @return the number of bytes used
+     */
+    private int parse(final byte[] data, final int length, final Consumer<byte[]> sink)
+            throws SQLException {
+        int position = 0;
+        if (!headerRead) {
+            // checked as far as it has arrived, so that short text output fails too
+            for (int i = 0; i < SIGNATURE.length && i < length; i++) {
+                if (data[i] != SIGNATURE[i]) {
+                    throw new SQLException("Invalid binary COPY signature");
+                }
+            }
+            if (length < HEADER_BYTES) {
+                return 0;
+            }
+            int extension = readInt32(data, SIGNATURE.length + INT32_BYTES);
+            if (extension < 0) {
+                throw new SQLException("Invalid binary COPY header extension " + extension);
+            }
+            if (length < HEADER_BYTES + extension) {
+                return 0;
+            }
+            position = HEADER_BYTES + extension;
+            headerRead = true;
+        }
+        while (position + INT16_BYTES <= length) {
+            int fields = readInt16(data, position);
+            if (fields == TRAILER) {
+                finished = true;
+                return length;
+            }
+            int end = findRowEnd(data, position + INT16_BYTES, length, fields);
+            if (end < 0) {
+                break;
+            }
+            sink.accept(readFirstValue(data, position + INT16_BYTES, fields));
+            rows++;
+            position = end;
+        }
+        return position;
+    }
+
+    /**
+     * Finds where a row ends.
+     * @param data the data
+     * @param start offset of the first value
+     * @param length number of bytes in the data
+     * @param fields number of values in the row
+     * @return offset after the row, or -1 if the row is not complete yet
+     * @throws SQLException if a value has an invalid length
+     */
+    private static int findRowEnd(final byte[] data, final int start, final int length,
+                                  final int fields) throws SQLException {
+        if (fields < 0) {
+            throw new SQLException("Invalid binary COPY field count " + fields);
+        }
+        long position = start;
+        for (int i = 0; i < fields; i++) {
+            if (position + INT32_BYTES > length) {
+                return -1;
+            }
+            int size = readInt32(data, (int) position);
+            position += INT32_BYTES;
+            if (size > 0) {
+                position += size;
+            } else if (size < NULL_LENGTH) {
+                throw new SQLException("Invalid binary COPY field length " + size);
+            }
+        }
+        if (position > length) {
+            return -1;
+        }
+        return (int) position;
+    }
+
+    private static byte[] readFirstValue(final byte[] data, final int start,
+                                         final int fields) {
+        if (fields == 0) {
+            return null;
+        }
+        int size = readInt32(data, start);
+        if (size == NULL_LENGTH) {
+            return null;
+        }
+        byte[] value = new byte[size];
+        System.arraycopy(data, start + INT32_BYTES, value, 0, size);
+        return value;
+    }
+
+    private void append(final byte[] chunk) {
+        append(chunk, 0, chunk.length);
+    }
+
+    private void append(final byte[] data, final int offset, final int count) {
+        if (pendingLength + count > pending.length) {
+            byte[] grown = new byte[Math.max(pendingLength + count, 2 * pending.length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(data, offset, pending, pendingLength, count);
+        pendingLength += count;
+    }
+
+    private static int readInt16(final byte[] data, final int position) {
+        return (short) ((data[position] & BYTE_MASK) << BYTE_BITS
+                | data[position + 1] & BYTE_MASK);
+    }
+
+    private static int readInt32(final byte[] data, final int position) {
+        int value = 0;
+        for (int i = 0; i < INT32_BYTES; i++) {
+            value = value << BYTE_BITS | data[position + i] & BYTE_MASK;
+        }
+        return value;
+    }
+}
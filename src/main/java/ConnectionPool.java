@@ -0,0 +1,426 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps open JDBC connections for each Database, so that running a query only
+ * pays for the statement round trip instead of a new TCP, SSL and auth handshake.
+ * Pools are keyed by the url and user of the Database, so databases with different
+ * names but the same server connection share a pool.
+ */
+public final class ConnectionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private static final int DEFAULT_MIN_SIZE = 1;
+    private static final int DEFAULT_MAX_SIZE = 8;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long EVICTION_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long BORROW_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * Connections returned to the pool more recently than this are handed out
+     * again without running the validation query.
+     */
+    private static final long VALIDATION_BYPASS_MS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final int WARM_UP_TIMEOUT_SECONDS = 30;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final String VALIDATION_QUERY = "SELECT 1";
+    private static final String[] DRIVERS = {"com.mysql.jdbc.Driver", "org.postgresql.Driver"};
+
+    private static final Map<String, ConnectionPool> POOLS = new HashMap<>();
+    private static ScheduledExecutorService evictor;
+    private static boolean driversLoaded = false;
+
+    private static int minSize = DEFAULT_MIN_SIZE;
+    private static int maxSize = DEFAULT_MAX_SIZE;
+    private static long idleTimeout = DEFAULT_IDLE_TIMEOUT_MS;
+
+    private final Database database;
+    private final int poolMinSize;
+    private final int poolMaxSize;
+    private final Semaphore permits;
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+
+    private int active = 0;
+    private long borrowCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long openedCount = 0;
+
+    private ConnectionPool(final Database database) {
+        this.database = database;
+        this.poolMinSize = minSize;
+        this.poolMaxSize = maxSize;
+        this.permits = new Semaphore(poolMaxSize, true);
+    }
+
+    /**
+     * Sets the sizing used for pools created after this call.
+     * @param min number of connections kept open while idle
+     * @param max maximum number of connections open at the same time
+     * @param idleTimeoutMillis idle connections above min are closed after this long
+     */
+    public static synchronized void configure(final int min, final int max,
+                                              final long idleTimeoutMillis) {
+        minSize = Math.max(0, min);
+        maxSize = Math.max(1, Math.max(minSize, max));
+        idleTimeout = idleTimeoutMillis;
+    }
+
+    public static synchronized int getConfiguredMinSize() {
+        return minSize;
+    }
+
+    public static synchronized int getConfiguredMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the time after which idle connections above min are closed, in pools
+     * created from now on.
+     * @return the timeout in milliseconds
+     */
+    public static synchronized long getConfiguredIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Gets the pool for the database, creating it on first use.
+     * @param db the database to connect to
+     * @return the pool shared by all queries against db
+     */
+    public static synchronized ConnectionPool getPool(final Database db) {
+        String key = db.getUrl() + '\n' + db.getUser();
+        ConnectionPool pool = POOLS.get(key);
+        if (pool == null) {
+            loadDrivers();
+            pool = new ConnectionPool(db);
+            POOLS.put(key, pool);
+            startEvictor();
+        }
+        return pool;
+    }
+
+    /**
+     * Closes every pooled connection. Called when the application exits.
+     */
+    public static synchronized void shutdownAll() {
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.closeIdle(0);
+        }
+        POOLS.clear();
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+    }
+
+    /**
+     * Loads the JDBC drivers once instead of on every query.
+     */
+    private static void loadDrivers() {
+        if (driversLoaded) {
+            return;
+        }
+        for (String driver : DRIVERS) {
+            try {
+                Class.forName(driver);
+            } catch (ClassNotFoundException e) {
+                LOGGER.log(Level.WARNING, "JDBC driver not found: " + driver);
+            }
+        }
+        driversLoaded = true;
+    }
+
+    private static void startEvictor() {
+        if (evictor == null) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(ConnectionPool::evictAll,
+                    EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void evictAll() {
+        List<ConnectionPool> pools;
+        synchronized (ConnectionPool.class) {
+            pools = new ArrayList<>(POOLS.values());
+        }
+        for (ConnectionPool pool : pools) {
+            pool.closeIdle(idleTimeout);
+        }
+    }
+
+    /**
+     * Opens connections until min connections, and at least one, are idle, and runs a
+     * statement on each, so that the first query does not pay for the handshake or for
+     * the server loading what the statement uses, such as the PostGIS library.
+     * @param statement the statement run on each connection, for example a query using
+     *     a spatial function
+     * @throws SQLException if a connection could not be opened or the statement failed
+     */
+    public void warmUp(final String statement) throws SQLException {
+        int target = Math.max(1, poolMinSize);
+        List<Connection> opened = new ArrayList<>();
+        try {
+            while (opened.size() < target && getIdleCount() + opened.size() < target) {
+                Connection con = borrow();
+                opened.add(con);
+                try (Statement st = con.createStatement()) {
+                    StatementTimeout.execute(st, statement, WARM_UP_TIMEOUT_SECONDS);
+                }
+            }
+        } finally {
+            for (Connection con : opened) {
+                release(con);
+            }
+        }
+    }
+
+    /**
+     * Borrows a validated connection, opening a new one if none are idle.
+     * Blocks while max connections are in use.
+     * @return an open connection that must be given back with release or discard
+     * @throws SQLException if no connection could be opened or the wait timed out
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            Connection con = takeValidIdle();
+            if (con == null) {
+                con = open();
+            }
+            synchronized (this) {
+                active++;
+            }
+            return con;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a connection back to the pool.
+     * @param con connection returned by borrow
+     */
+    public void release(final Connection con) {
+        boolean reusable;
+        try {
+            reusable = !con.isClosed();
+            if (reusable && !con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        if (reusable) {
+            synchronized (this) {
+                idle.push(new IdleConnection(con, System.currentTimeMillis()));
+            }
+            finishRelease();
+        } else {
+            discard(con);
+        }
+    }
+
+    /**
+     * Closes a borrowed connection instead of returning it, used when it is broken
+     * or holds session state, such as temporary tables, that later users must not see.
+     * @param con connection returned by borrow
+     */
+    public void discard(final Connection con) {
+        close(con);
+        finishRelease();
+    }
+
+    private void finishRelease() {
+        synchronized (this) {
+            active--;
+        }
+        permits.release();
+    }
+
+    private Connection takeValidIdle() {
+        while (true) {
+            IdleConnection candidate;
+            synchronized (this) {
+                candidate = idle.poll();
+            }
+            if (candidate == null) {
+                return null;
+            }
+            long idleFor = System.currentTimeMillis() - candidate.getIdleSince();
+            if (idleFor < VALIDATION_BYPASS_MS || isValid(candidate.getConnection())) {
+                return candidate.getConnection();
+            }
+            close(candidate.getConnection());
+        }
+    }
+
+    private Connection open() throws SQLException {
+        String password = database.getPassword();
+        if (password == null || password.isEmpty()) {
+            password = null;
+        }
+        Connection con = DriverManager.getConnection(database.getUrl(),
+                database.getUser(), password);
+        synchronized (this) {
+            openedCount++;
+        }
+        return con;
+    }
+
+    /**
+     * Checks a connection with the driver's own check, or with the validation query
+     * for drivers that do not implement Connection.isValid, such as the PostgreSQL
+     * driver in use.
+     */
+    private static boolean isValid(final Connection con) {
+        try {
+            return con.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLFeatureNotSupportedException e) {
+            try (Statement st = con.createStatement()) {
+                StatementTimeout.execute(st, VALIDATION_QUERY, VALIDATION_TIMEOUT_SECONDS);
+                return true;
+            } catch (SQLException ex) {
+                return false;
+            }
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes idle connections that have not been used for longer than the timeout,
+     * keeping at least min connections open.
+     * @param timeoutMillis idle time after which a connection is closed
+     */
+    private void closeIdle(final long timeoutMillis) {
+        List<Connection> toClose = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            int keep = poolMinSize;
+            if (timeoutMillis == 0) {
+                keep = 0;
+            }
+            // the oldest connections are at the end of the deque
+            while (idle.size() > keep
+                    && now - idle.peekLast().getIdleSince() >= timeoutMillis) {
+                toClose.add(idle.pollLast().getConnection());
+            }
+        }
+        toClose.forEach(ConnectionPool::close);
+    }
+
+    private static void close(final Connection con) {
+        try {
+            con.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    private synchronized void recordWait(final long nanos) {
+        borrowCount++;
+        totalWaitNanos += nanos;
+        maxWaitNanos = Math.max(maxWaitNanos, nanos);
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    public int getMaxSize() {
+        return poolMaxSize;
+    }
+
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+
+    public synchronized double getTotalWaitMillis() {
+        return totalWaitNanos / NANOS_PER_MILLI;
+    }
+
+    public synchronized double getMaxWaitMillis() {
+        return maxWaitNanos / NANOS_PER_MILLI;
+    }
+
+    public synchronized double getAverageWaitMillis() {
+        if (borrowCount == 0) {
+            return 0;
+        }
+        return totalWaitNanos / NANOS_PER_MILLI / borrowCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Pool %s: %d active, %d idle (max %d), %d borrowed, "
+                        + "%d opened, wait avg %.1f ms / max %.1f ms",
+                database.getName(), active, idle.size(), poolMaxSize, borrowCount,
+                openedCount, getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    /**
+     * A connection sitting in the pool, with the time it was returned.
+     */
+    private static final class IdleConnection {
+        private final Connection connection;
+        private final long idleSince;
+
+        IdleConnection(final Connection connection, final long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        long getIdleSince() {
+            return idleSince;
+        }
+    }
+}
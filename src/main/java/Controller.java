@@ -1,4 +1,9 @@
 
+import com.vividsolutions.jts.geom.Envelope;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
@@ -8,10 +13,21 @@ import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import models.ModelBoundaries;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Consumer;
 
 
 public class Controller {
@@ -64,6 +80,57 @@ public class Controller {
     private Button loadConfig;
     @FXML
     private Button saveConfig;
+    @FXML
+    private Text poolStatus;
+    @FXML
+    private CheckMenuItem binaryTransferMenuItem;
+    @FXML
+    private CheckMenuItem compactTransferMenuItem;
+    @FXML
+    private CheckMenuItem copyTransferMenuItem;
+    @FXML
+    private CheckMenuItem viewportQueryMenuItem;
+    @FXML
+    private CheckMenuItem levelOfDetailMenuItem;
+    @FXML
+    private CheckMenuItem resultCacheMenuItem;
+    @FXML
+    private CheckMenuItem cursorFetchMenuItem;
+    @FXML
+    private CheckMenuItem probeMenuItem;
+    @FXML
+    private ProgressIndicator queryProgress;
+    @FXML
+    private Button cancelQueryButton;
+    @FXML
+    private Text queryStatus;
+
+    private static final Duration QUERY_STATUS_INTERVAL = Duration.millis(100);
+    /**
+     * Viewport queries fetch this much more than the visible extent on each side,
+     * relative to its size, so that small pans do not need a new query.
+     */
+    private static final double VIEWPORT_MARGIN = 0.25;
+    /**
+     * Level of detail queries simplify geometries by this fraction of a screen pixel,
+     * so the simplification can not be seen at the zoom level it was fetched for.
+     */
+    private static final double SIMPLIFY_PIXELS = 0.5;
+    private static final double DIALOG_SPACING = 5;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double PLAN_WIDTH = 700;
+    private static final double PLAN_HEIGHT = 450;
+    /**
+     * Range of decimals TWKB can store.
+     */
+    private static final int MIN_COMPACT_PRECISION = -8;
+    private static final int MAX_COMPACT_PRECISION = 7;
+
+    private final QueryOptions queryOptions = new QueryOptions();
+    private final QueryResultCache resultCache = new QueryResultCache(
+            QueryResultCache.DEFAULT_MAX_BYTES, QueryResultCache.DEFAULT_TIME_TO_LIVE_MS);
+    private final List<BackgroundQuery> runningQueries = new ArrayList<>();
+    private Timeline queryStatusTimeline;
     
 
 
@@ -73,11 +140,14 @@ public class Controller {
     private static List<KeyCode> heldDownKeys = new ArrayList<>();
 
     private DisplayController displayController;
+    private WktEditor wktEditor;
 
     public final DisplayController createDisplayController(
             final BackgroundGrid backgroundGrid, final Stage stage) {
         this.displayController = new DisplayController(upperPane, zoomText,
                 backgroundGrid, positionX,  positionY, zoomTextError, stage);
+        this.displayController.setOnViewChanged(this::refreshQueryLayers);
+        this.wktEditor = new WktEditor(wktTextArea, upperPane, displayController);
         return this.displayController;
     }
 
@@ -86,6 +156,9 @@ public class Controller {
         fitVisibleMenuItem.setDisable(true);
         fitSelectedMenuItem.setDisable(true);
         fitAllMenuItem.setDisable(true);
+        queryStatusTimeline = new Timeline(new KeyFrame(QUERY_STATUS_INTERVAL,
+                event -> updateQueryStatus()));
+        queryStatusTimeline.setCycleCount(Animation.INDEFINITE);
     }
 
     public final AnchorPane getUpperPane() {
@@ -126,6 +199,282 @@ public class Controller {
      */
     public final void setDatabase(final Database db) {
         this.currentDatabase = db;
+        updatePoolStatus();
+    }
+
+    /**
+     * Called when an item in the query options menu is toggled.
+     */
+    public final void updateQueryOptions() {
+        queryOptions.setBinaryTransfer(binaryTransferMenuItem.isSelected());
+        queryOptions.setCompactTransfer(compactTransferMenuItem.isSelected());
+        queryOptions.setCopyTransfer(copyTransferMenuItem.isSelected());
+        queryOptions.setViewportQuery(viewportQueryMenuItem.isSelected());
+        queryOptions.setLevelOfDetail(levelOfDetailMenuItem.isSelected());
+        queryOptions.setCacheResults(resultCacheMenuItem.isSelected());
+        queryOptions.setCursorFetch(cursorFetchMenuItem.isSelected());
+        queryOptions.setProbe(probeMenuItem.isSelected());
+    }
+
+    /**
+     * Asks for the number of seconds a query may run before it is cancelled.
+     */
+    public final void editQueryTimeout() {
+        TextInputDialog dialog = new TextInputDialog(
+                Integer.toString(queryOptions.getQueryTimeout()));
+        dialog.setTitle("Query timeout");
+        dialog.setHeaderText("Seconds a query may run before it is cancelled (0 for no limit)");
+        Optional<String> input = dialog.showAndWait();
+        if (input.isPresent()) {
+            try {
+                queryOptions.setQueryTimeout(Integer.parseInt(input.get().trim()));
+            } catch (NumberFormatException e) {
+                Alerts alert = new Alerts("The timeout must be a whole number of seconds",
+                        "Invalid timeout", "");
+                alert.show();
+            }
+        }
+    }
+
+    /**
+     * Called from the query options menu. Asks for the number of rows fetched in each
+     * round trip when fetching large results through a cursor.
+     */
+    public final void editFetchSize() {
+        TextInputDialog dialog = new TextInputDialog(
+                Integer.toString(queryOptions.getFetchSize()));
+        dialog.setTitle("Fetch size");
+        dialog.setHeaderText("Rows fetched in each round trip for large results");
+        Optional<String> input = dialog.showAndWait();
+        if (input.isPresent()) {
+            try {
+                queryOptions.setFetchSize(Integer.parseInt(input.get().trim()));
+            } catch (NumberFormatException e) {
+                Alerts alert = new Alerts("The fetch size must be a whole number of rows",
+                        "Invalid fetch size", "");
+                alert.show();
+            }
+        }
+    }
+
+    /**
+     * Called from the query options menu. Asks for the number of spatial parts queries
+     * are split into.
+     */
+    public final void editPartitions() {
+        TextInputDialog dialog = new TextInputDialog(
+                Integer.toString(queryOptions.getPartitions()));
+        dialog.setTitle("Partitions");
+        dialog.setHeaderText("Number of parts a query is split into, running at the same time"
+                + " (1 to run it as it is)");
+        Optional<String> input = dialog.showAndWait();
+        if (input.isPresent()) {
+            try {
+                queryOptions.setPartitions(Integer.parseInt(input.get().trim()));
+            } catch (NumberFormatException e) {
+                Alerts alert = new Alerts("The number of partitions must be a whole number",
+                        "Invalid partitions", "");
+                alert.show();
+            }
+        }
+    }
+
+    /**
+     * Called from the query options menu. Asks for the number of vertices a probed
+     * query may return before asking whether to fetch it.
+     */
+    public final void editVertexBudget() {
+        TextInputDialog dialog = new TextInputDialog(
+                Long.toString(queryOptions.getVertexBudget()));
+        dialog.setTitle("Vertex budget");
+        dialog.setHeaderText("Vertices a probed query may return without asking"
+                + " (0 for no limit)");
+        Optional<String> input = dialog.showAndWait();
+        if (input.isPresent()) {
+            try {
+                queryOptions.setVertexBudget(Long.parseLong(input.get().trim()));
+            } catch (NumberFormatException e) {
+                Alerts alert = new Alerts("The vertex budget must be a whole number",
+                        "Invalid vertex budget", "");
+                alert.show();
+            }
+        }
+    }
+
+    /**
+     * Called from the query options menu. Asks the database for the plan of the selected
+     * layer's query, sent as it was with the layer's options, and shows it as a tree.
+     * Steps that scan a whole table for a spatial condition are highlighted, and the
+     * server times are added to the timings shown on the layer name.
+     */
+    public final void explainLayerQuery() {
+        Layer layer = Layer.getSelectedLayer();
+        if (layer == null || layer.getSQLQuery() == null
+                || layer.getSQLQuery().trim().isEmpty()) {
+            Alerts alert = new Alerts("Select one layer filled by a query", "Layer Error", "");
+            alert.show();
+            return;
+        }
+        Database database = layer.getQueryDatabase();
+        QueryOptions options = layer.getQueryOptions();
+        if (database == null) {
+            database = getCurrentDB();
+        }
+        if (options == null) {
+            options = new QueryOptions(queryOptions);
+        }
+        if (database == null) {
+            Alerts alert = new Alerts("No database selected", "DB Error", "");
+            alert.show();
+            return;
+        }
+        String query = layer.getSQLQuery();
+        Database target = database;
+        QueryOptions sentWith = options;
+        queryStatus.setText("Explaining " + layer.getLayerName() + "...");
+        QueryExecutor.execute(() -> {
+            QueryPlan plan = DatabaseConnector.explainQuery(query, target, sentWith);
+            Platform.runLater(() -> showQueryPlan(layer, plan));
+        });
+    }
+
+    /**
+     * Called from the query options menu. Asks how often the selected layer's query is
+     * sent again to keep the layer up to date, for tables that change all the time.
+     * The query must return the geometry, a unique id and a version or timestamp;
+     * only the features whose version changed are decoded and replaced.
+     * Viewport, level of detail, probing, partitions, caching, bulk and compact transfer
+     * do not apply to live layers: unchanged features are not fetched again, so their
+     * detail can not follow the view.
+     */
+    public final void editLiveRefresh() {
+        Layer layer = Layer.getSelectedLayer();
+        if (layer == null || layer.getSQLQuery() == null
+                || layer.getSQLQuery().trim().isEmpty()) {
+            Alerts alert = new Alerts("Select one layer filled by a query", "Layer Error", "");
+            alert.show();
+            return;
+        }
+        Database database = layer.getQueryDatabase();
+        if (database == null) {
+            database = getCurrentDB();
+        }
+        if (database == null) {
+            Alerts alert = new Alerts("No database selected", "DB Error", "");
+            alert.show();
+            return;
+        }
+        long current = 0;
+        if (layer.getLiveLayer() != null) {
+            current = layer.getLiveLayer().getIntervalSeconds();
+        }
+        TextInputDialog dialog = new TextInputDialog(Long.toString(current));
+        dialog.setTitle("Live refresh");
+        dialog.setHeaderText("Seconds between refreshes of " + layer.getLayerName()
+                + " (0 to stop)");
+        dialog.setContentText("The query returns geometry, id and version:");
+        Optional<String> input = dialog.showAndWait();
+        if (!input.isPresent()) {
+            return;
+        }
+        long seconds;
+        try {
+            seconds = Long.parseLong(input.get().trim());
+        } catch (NumberFormatException e) {
+            Alerts alert = new Alerts("The interval must be a whole number of seconds",
+                    "Invalid interval", "");
+            alert.show();
+            return;
+        }
+        if (seconds <= 0) {
+            layer.setLiveLayer(null);
+            return;
+        }
+        QueryOptions options = new QueryOptions(queryOptions);
+        options.setViewportQuery(false);
+        options.setLevelOfDetail(false);
+        options.setProbe(false);
+        options.setPartitions(1);
+        options.setCacheResults(false);
+        options.setCopyTransfer(false);
+        options.setCompactTransfer(false);
+        applyView(options);
+        cancelLayerQueries(layer);
+        layer.setQuerySource(database, options);
+        LiveLayer live = new LiveLayer(layer, layer.getSQLQuery(), database, options,
+                upperPane, displayController);
+        layer.setLiveLayer(live);
+        live.start(seconds);
+    }
+
+    /**
+     * Shows the plan of a layer's query, or why it could not be found.
+     * @param layer the layer
+     * @param plan the plan
+     */
+    private void showQueryPlan(final Layer layer, final QueryPlan plan) {
+        queryStatus.setText("");
+        if (!plan.isSuccess()) {
+            Alerts alert = new Alerts(plan.getError(), "Explain Error", "");
+            alert.show();
+            return;
+        }
+        layer.setQueryPlan(plan);
+        TreeView<QueryPlan.Node> tree = new TreeView<>(createPlanItem(plan.getRoot()));
+        tree.setCellFactory(view -> new TreeCell<QueryPlan.Node>() {
+            @Override
+            protected void updateItem(final QueryPlan.Node node, final boolean empty) {
+                super.updateItem(node, empty);
+                if (empty || node == null) {
+                    setText(null);
+                    setStyle("");
+                } else {
+                    setText(node.toString());
+                    if (node.hasWarning()) {
+                        setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
+                    } else {
+                        setStyle("");
+                    }
+                }
+            }
+        });
+        tree.setPrefSize(PLAN_WIDTH, PLAN_HEIGHT);
+        VBox content = new VBox(DIALOG_SPACING, new Text(plan.toString()), tree);
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Query plan");
+        dialog.setHeaderText("Plan of " + layer.getLayerName());
+        dialog.setResizable(true);
+        dialog.getDialogPane().setContent(content);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.show();
+    }
+
+    private static TreeItem<QueryPlan.Node> createPlanItem(final QueryPlan.Node node) {
+        TreeItem<QueryPlan.Node> item = new TreeItem<>(node);
+        item.setExpanded(true);
+        for (QueryPlan.Node child : node.getChildren()) {
+            item.getChildren().add(createPlanItem(child));
+        }
+        return item;
+    }
+
+    /**
+     * Called from the query options menu. Drops all cached query results, so the next
+     * queries are sent to the database again.
+     */
+    public final void clearResultCache() {
+        resultCache.invalidateAll();
+    }
+
+    /**
+     * Shows the connection pool metrics of the current database in the databases tab.
+     */
+    public final void updatePoolStatus() {
+        if (currentDatabase == null) {
+            poolStatus.setText("");
+        } else {
+            poolStatus.setText(ConnectionPool.getPool(currentDatabase).toString());
+        }
     }
 
     /**
@@ -161,17 +510,13 @@ public class Controller {
     }
 
     /**
-     * Loads a database stored in config.properties. Gives an alert if there is
-     * no database stored in the file.
+     * Loads the databases stored in config.properties and selects the first.
+     * Gives an alert if there is no database stored in the file.
      */
     public final void loadConfig() {
-        Database db = PropertyValues.Input();
-        if (db != null) {
-            dbList.getItems().add(db);
-            dbList2.getItems().add(db);
-            setDatabase(db);
-            dbList.getSelectionModel().select(db);
-            dbList2.getSelectionModel().select(db);
+        List<Database> databases = PropertyValues.Input();
+        if (!databases.isEmpty()) {
+            addDatabases(databases);
         } else {
             String title = "Failed to load properties";
             String body = "No database stored in config.properties";
@@ -184,8 +529,85 @@ public class Controller {
     }
 
     /**
-     * Saves the currently selected database to the config.properties file. Gives an
-     * alert if no database is selected.
+     * Adds databases to the database lists, leaving out those already in them,
+     * and selects the first.
+     * @param databases the databases
+     */
+    private void addDatabases(final List<Database> databases) {
+        for (Database db : databases) {
+            if (findListed(db) == null) {
+                dbList.getItems().add(db);
+                dbList2.getItems().add(db);
+            }
+        }
+        Database db = findListed(databases.get(0));
+        setDatabase(db);
+        dbList.getSelectionModel().select(db);
+        dbList2.getSelectionModel().select(db);
+    }
+
+    /**
+     * Finds the entry of the database list with the same name, url and user as a
+     * database, such as one read again from the configuration file.
+     * @param db the database
+     * @return the listed database, or null if it is not listed
+     */
+    private Database findListed(final Database db) {
+        for (Object item : dbList.getItems()) {
+            Database listed = (Database) item;
+            if (listed.getName().equals(db.getName()) && listed.getUrl().equals(db.getUrl())
+                    && Objects.equals(listed.getUser(), db.getUser())) {
+                return listed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called when the application has started. If config.properties sets warmup=true,
+     * sizes the connection pools by its settings, adds its databases and connects to each
+     * of them in the background, so the first query is as fast as later ones.
+     * Without the file or the setting nothing happens.
+     */
+    public final void warmUpFromConfig() {
+        Properties settings;
+        try {
+            settings = PropertyValues.read();
+        } catch (IOException e) {
+            return;
+        }
+        if (!PropertyValues.isWarmUp(settings)) {
+            return;
+        }
+        PropertyValues.configurePool(settings);
+        List<Database> databases = PropertyValues.getDatabases(settings);
+        if (databases.isEmpty()) {
+            return;
+        }
+        addDatabases(databases);
+        queryStatus.setText("Connecting to " + databases.size() + " databases...");
+        for (Database db : databases) {
+            QueryExecutor.execute(() -> {
+                long start = System.nanoTime();
+                QueryResult result = DatabaseConnector.warmUp(db);
+                double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+                Platform.runLater(() -> {
+                    if (result.isSuccess()) {
+                        queryStatus.setText(String.format("Connected to %s in %.1f s",
+                                db.getName(), seconds));
+                    } else {
+                        queryStatus.setText("Could not connect to " + db.getName() + ": "
+                                + result.getError());
+                    }
+                    updatePoolStatus();
+                });
+            });
+        }
+    }
+
+    /**
+     * Saves the databases to the config.properties file, the selected one first, so it
+     * is selected when they are loaded. Gives an alert if no database is selected.
      */
     public final void saveConfig() {
         if (this.getCurrentDB() == null) {
@@ -194,7 +616,14 @@ public class Controller {
             Alerts alert = new Alerts(title, "", body);
             alert.show();
         } else {
-            PropertyValues.Output(this.getCurrentDB());
+            List<Database> databases = new ArrayList<>();
+            databases.add(this.getCurrentDB());
+            for (Object item : dbList.getItems()) {
+                if (!databases.contains(item)) {
+                    databases.add((Database) item);
+                }
+            }
+            PropertyValues.Output(databases);
         }
 
     }
@@ -202,6 +631,7 @@ public class Controller {
     @FXML
     public final void updateLayer() {
         WktParser wktParser = new WktParser(Layer.getSelectedLayer(), upperPane);
+        Layer.getSelectedLayer().setLiveLayer(null);
         Layer.getSelectedLayer().setSQLQuery(dbTextArea.getText());
         boolean result = wktParser.parseWktString(wktTextArea.getText());
         if (result) {
@@ -210,6 +640,44 @@ public class Controller {
         }
     }
 
+    /**
+     * Called from the query options menu. Reads a WKT file into the selected layer on a
+     * background thread, one geometry or collection member at a time, so a file larger
+     * than the text area could hold is drawn as it is read. The view is fitted to the
+     * layers when the file has been read.
+     */
+    public final void openWktFile() {
+        Layer layer = Layer.getSelectedLayer();
+        if (layer == null) {
+            Alerts alert = new Alerts("Select one layer to show the file in", "Layer Error", "");
+            alert.show();
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Open WKT file");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("WKT files", "*.wkt", "*.txt"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(upperPane.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        layer.setLiveLayer(null);
+        cancelLayerQueries(layer);
+        layer.setQuerySource(null, null);
+        LayerLoader loader = new LayerLoader(layer, upperPane, displayController);
+        startQuery(new WktFileTask(file, loader), finished -> {
+            QueryResult result = finished.getValue();
+            if (result != null && !result.isSuccess()) {
+                Alerts alert = new Alerts(result.getError(), "File Error", "");
+                alert.show();
+            }
+            if (result != null && result.getRows() > 0) {
+                displayController.zoomToFitAll();
+            }
+        });
+    }
+
     public final MenuItem getFitSelectedMenuItem() {
         return fitSelectedMenuItem;
     }
@@ -335,65 +803,516 @@ public class Controller {
 
     /**
      * Called when clicking the submit query button.
+     * The rows are streamed into the selected layer on a background thread.
      */
     public final void submitQuery() {
         String qText = dbTextArea.getText();
         Database database = getCurrentDB();
-        if (database != null) {
-            try {
-                String result = DatabaseConnector.executeQuery(qText, database);
-
-                if (result.contains("POSTGIS Error")) {
-                    String title = "SQL Error";
-                    String header = "POSTGIS Error";
-
-                    //Specify different errors later, for example self-intersection
-                    String alertMsg = "Invalid geometry,wrong syntax or empty query";
-                    Alerts alert = new Alerts(alertMsg, title, header);
-                    alert.show();
-                } else if (result.contains("MYSQL error")) {
-                    String title = "SQL Error";
-                    String header = "MYSQL Error";
-
-                    //Specify different errors later, for example self intersection
-                    String alertMsg = "Invalid geometry, wrong syntax or empty query";
-                    Alerts alert = new Alerts(alertMsg, title, header);
-                    alert.show();
-                } else if (result.contains("URL not valid")) {
-                    String title = "Server Error";
-                    String header = " ";
-                    String alertMsg = "Server URL not valid";
-                    Alerts alert = new Alerts(alertMsg, title, header);
-                    alert.show();
-                } else if (result.contains("Wrong username")) {
-                    String title = "Credential error";
-                    String header = " ";
-                    String alertMsg = "Wrong username or password";
-                    Alerts alert = new Alerts(alertMsg, title, header);
-                    alert.show();
-                } else if (result.contains("Invalid Query")) {
-                    String title = "Query Error";
-                    String header = "";
-                    String alertMsg = "Syntax error in query or invalid request";
-                    Alerts alert = new Alerts(alertMsg, title, header);
-                    alert.show();
-
-                } else if (result.contains("Wrong server")) {
-                    String title = "Server Error";
-                    String header = "";
-                    String alertMsg = "Server URL not valid";
-                    Alerts alert = new Alerts(alertMsg, title, header);
-                    alert.show();
-                } else {
-                    wktTextArea.setText(result);
-                    updateLayer();
+        Layer layer = Layer.getSelectedLayer();
+        if (database == null) {
+            Alerts alert = new Alerts("No database selected", "DB Error", "");
+            alert.show();
+        } else if (layer == null) {
+            Alerts alert = new Alerts("Select one layer to show the result in", "Layer Error", "");
+            alert.show();
+        } else {
+            layer.setSQLQuery(qText);
+            SqlScript script = new SqlScript(qText, SqlDialect.forDatabase(database));
+            if (script.getStatements().size() <= 1) {
+                runLayerQuery(layer, qText, database, new QueryOptions(queryOptions));
+            } else if (script.isIndependent()) {
+                runIndependentQueries(layer, script.getStatements(), database);
+            } else {
+                runScript(layer, script.getStatements(), database);
+            }
+        }
+    }
+
+    /**
+     * Sends queries that do not depend on each other at the same time, each on its own
+     * pooled connection. The first fills the given layer, the others fill new layers.
+     * @param layer the selected layer
+     * @param statements the queries
+     * @param database the database to send them to
+     */
+    private void runIndependentQueries(final Layer layer, final List<String> statements,
+                                       final Database database) {
+        List<BackgroundQuery> tasks = new ArrayList<>();
+        List<String> outcomes = new ArrayList<>();
+        Map<BackgroundQuery, String> labels = new LinkedHashMap<>();
+        Consumer<BackgroundQuery> onFinished = finished -> {
+            tasks.remove(finished);
+            outcomes.add(labels.get(finished) + " " + describeFinishedQuery(finished));
+            if (tasks.isEmpty()) {
+                showQuerySummary("Run script", statements.size()
+                        + " queries sent at the same time", outcomes);
+            }
+        };
+        for (int i = 0; i < statements.size(); i++) {
+            Layer target = layer;
+            if (i > 0) {
+                target = addLayer(layer.getLayerName() + " " + (i + 1));
+            }
+            target.setSQLQuery(statements.get(i));
+            QueryTask task = runLayerQuery(target, statements.get(i), database,
+                    new QueryOptions(queryOptions), onFinished);
+            tasks.add(task);
+            labels.put(task, "Statement " + (i + 1) + ",");
+        }
+    }
+
+    /**
+     * Sends the statements of a script one after the other on one connection, so they
+     * share temporary tables and settings. Each statement returning geometries fills a
+     * layer: the first one the given layer, the others new layers.
+     * Viewport, level of detail, probing, partitions and caching need a query that can be
+     * sent again on its own, so they are not used for scripts.
+     * @param layer the selected layer
+     * @param statements the statements
+     * @param database the database to send them to
+     */
+    private void runScript(final Layer layer, final List<String> statements,
+                           final Database database) {
+        QueryOptions options = new QueryOptions(queryOptions);
+        options.setViewportQuery(false);
+        options.setLevelOfDetail(false);
+        options.setProbe(false);
+        options.setPartitions(1);
+        options.setCacheResults(false);
+        applyView(options);
+        cancelLayerQueries(layer);
+        List<Layer> filled = new ArrayList<>();
+        ScriptTask task = new ScriptTask(statements, database, options, index -> {
+            Layer target = layer;
+            if (!filled.isEmpty()) {
+                target = addLayer(layer.getLayerName() + " " + (index + 1));
+            }
+            filled.add(target);
+            target.setLiveLayer(null);
+            target.setSQLQuery(statements.get(index));
+            // the statement may need the tables of earlier ones, it can not be sent again
+            target.setQuerySource(null, null);
+            return new LayerLoader(target, upperPane, displayController);
+        });
+        startQuery(task, finished -> {
+            List<String> outcomes = new ArrayList<>();
+            List<QueryResult> results = task.getResults();
+            for (int i = 0; i < statements.size(); i++) {
+                String outcome = "not run";
+                if (i < results.size() && results.get(i).isSuccess()) {
+                    outcome = results.get(i).getRows() + " rows";
+                } else if (i < results.size()) {
+                    outcome = results.get(i).getError();
                 }
-            } catch (NullPointerException e) {
-                Alerts alert = new Alerts("Query returned null", "Null error", "");
+                outcomes.add("Statement " + (i + 1) + ": " + outcome);
+            }
+            if (task.getException() != null) {
+                outcomes.add(String.valueOf(task.getException()));
+            }
+            showQuerySummary("Run script", String.format("%d statements run on one connection"
+                    + " in %.2f s", statements.size(), task.getElapsedSeconds()), outcomes);
+        });
+    }
+
+    /**
+     * Adds an empty layer at the top of the layer list.
+     * @param name name of the layer
+     * @return the layer
+     */
+    private Layer addLayer(final String name) {
+        Layer layer = new Layer(null, vboxLayers, name, wktTextArea, dbTextArea, this);
+        Layer.getLayers(false).add(layer);
+        layer.addLayerToView();
+        return layer;
+    }
+
+    /**
+     * Called from the query options menu. Sends the query to several databases at once,
+     * each filling a new layer named after its database, and shows the time and outcome
+     * of each when all are done.
+     */
+    public final void submitQueryToDatabases() {
+        List<Database> databases = chooseDatabases();
+        if (databases.isEmpty()) {
+            return;
+        }
+        String qText = dbTextArea.getText();
+        List<BackgroundQuery> tasks = new ArrayList<>();
+        List<String> outcomes = new ArrayList<>();
+        Consumer<BackgroundQuery> onFinished = finished -> {
+            tasks.remove(finished);
+            outcomes.add(describeFinishedQuery(finished));
+            if (tasks.isEmpty()) {
+                showQuerySummary("Run on databases",
+                        "Query sent to " + outcomes.size() + " databases", outcomes);
+            }
+        };
+        for (Database database : databases) {
+            Layer layer = addLayer(database.getName());
+            layer.setSQLQuery(qText);
+            tasks.add(runLayerQuery(layer, qText, database, new QueryOptions(queryOptions),
+                    onFinished));
+        }
+    }
+
+    /**
+     * Lets the user pick the databases to send a query to.
+     * @return the chosen databases, empty if the dialog was cancelled
+     */
+    private List<Database> chooseDatabases() {
+        Dialog<List<Database>> dialog = new Dialog<>();
+        dialog.setTitle("Run on databases");
+        dialog.setHeaderText("Send the query to each of these databases, into a new layer each");
+        ButtonType runButtonType = new ButtonType("Run", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(runButtonType, ButtonType.CANCEL);
+
+        VBox choices = new VBox(DIALOG_SPACING);
+        Map<CheckBox, Database> checkBoxes = new LinkedHashMap<>();
+        for (Object item : dbList.getItems()) {
+            Database database = (Database) item;
+            CheckBox checkBox = new CheckBox(database.getName() + " (" + database.getUrl() + ")");
+            checkBox.setSelected(database.equals(getCurrentDB()));
+            checkBoxes.put(checkBox, database);
+            choices.getChildren().add(checkBox);
+        }
+        dialog.getDialogPane().setContent(choices);
+
+        dialog.setResultConverter(dialogButton -> {
+            List<Database> chosen = new ArrayList<>();
+            if (dialogButton == runButtonType) {
+                checkBoxes.forEach((checkBox, database) -> {
+                    if (checkBox.isSelected()) {
+                        chosen.add(database);
+                    }
+                });
+            }
+            return chosen;
+        });
+        return dialog.showAndWait().orElse(new ArrayList<>());
+    }
+
+    /**
+     * Shows the outcome of each of several queries sent together.
+     * @param title title of the dialog
+     * @param header what was sent
+     * @param outcomes one line for each query
+     */
+    private void showQuerySummary(final String title, final String header,
+                                  final List<String> outcomes) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(header);
+        alert.setContentText(String.join("\n", outcomes));
+        alert.show();
+    }
+
+    /**
+     * Sends a query whose rows replace the geometries of a layer.
+     * @param layer the layer to fill
+     * @param query the query
+     * @param database the database to send it to
+     * @param options a copy of the query options, owned by the query from now on
+     */
+    private void runLayerQuery(final Layer layer, final String query, final Database database,
+                               final QueryOptions options) {
+        runLayerQuery(layer, query, database, options, null);
+    }
+
+    /**
+     * Sends a query whose rows replace the geometries of a layer, stopping the queries
+     * still filling the layer.
+     * @param layer the layer to fill
+     * @param query the query
+     * @param database the database to send it to
+     * @param options a copy of the query options, owned by the query from now on
+     * @param onFinished called on the JavaFX thread when the query is done, instead of
+     *     showing its errors; may be null
+     * @return the query task
+     */
+    private QueryTask runLayerQuery(final Layer layer, final String query,
+                                    final Database database, final QueryOptions options,
+                                    final Consumer<BackgroundQuery> onFinished) {
+        applyView(options);
+        cancelLayerQueries(layer);
+        layer.setLiveLayer(null);
+        layer.setQuerySource(database, options);
+        LayerLoader loader = new LayerLoader(layer, upperPane, displayController);
+        QueryTask task = new QueryTask(query, database, options, loader, resultCache);
+        task.setOnProbed(probe -> prepareForProbe(probe, options));
+        startQuery(task, onFinished);
+        return task;
+    }
+
+    /**
+     * Sets the options that depend on the view: the area a viewport query fetches and
+     * the detail level of detail and compact queries keep.
+     * @param options the options of a query about to be sent
+     */
+    private void applyView(final QueryOptions options) {
+        if (options.isViewportQuery()) {
+            Envelope viewport = displayController.getVisibleEnvelope();
+            viewport.expandBy(viewport.getWidth() * VIEWPORT_MARGIN,
+                    viewport.getHeight() * VIEWPORT_MARGIN);
+            options.setViewport(viewport);
+        }
+        if (options.isLevelOfDetail()) {
+            options.setSimplifyTolerance(displayController.getPixelSize() * SIMPLIFY_PIXELS);
+        }
+        if (options.isCompactTransfer()) {
+            options.setCompactPrecision(getCompactPrecision());
+        }
+    }
+
+    /**
+     * Called when the probe of a query is done, before its rows are fetched. Asks
+     * whether to fetch a result larger than the vertex budget, then zooms to the extent
+     * of the result, so the rows are drawn where they will stay and are fetched with
+     * the detail of the new view.
+     * @param probe the probe of the query
+     * @param options the options of the query
+     * @return false if the query should be cancelled
+     */
+    private boolean prepareForProbe(final QueryProbe probe, final QueryOptions options) {
+        long budget = options.getVertexBudget();
+        if (budget > 0 && probe.getVertices() > budget) {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+            alert.setTitle("Large result");
+            alert.setHeaderText(String.format("The query returns %d rows with %d vertices,"
+                    + " more than the budget of %d", probe.getRows(), probe.getVertices(),
+                    budget));
+            alert.setContentText("Fetch the result anyway?");
+            Optional<ButtonType> answer = alert.showAndWait();
+            if (!answer.isPresent() || answer.get() != ButtonType.OK) {
+                return false;
+            }
+        }
+        Envelope extent = probe.getExtent();
+        if (extent != null) {
+            // models have their y-coordinates inverted
+            ModelBoundaries boundaries = new ModelBoundaries();
+            boundaries.include(extent.getMinX(), -extent.getMaxY());
+            boundaries.include(extent.getMaxX(), -extent.getMinY());
+            displayController.zoomToFit(boundaries);
+            applyView(options);
+        }
+        return true;
+    }
+
+    /**
+     * Called when the view has settled after panning or zooming. Sends the query of
+     * every viewport or level of detail layer again if what the layer fetched no
+     * longer matches the view.
+     */
+    private void refreshQueryLayers() {
+        Envelope visible = displayController.getVisibleEnvelope();
+        double tolerance = displayController.getPixelSize() * SIMPLIFY_PIXELS;
+        for (Layer layer : new ArrayList<>(Layer.getLayers(false))) {
+            QueryOptions options = layer.getQueryOptions();
+            if (options == null) {
+                continue;
+            }
+            boolean outsideViewport = options.isViewportQuery()
+                    && !options.getViewport().contains(visible);
+            // zooming out keeps the finer geometries, zooming in needs more detail
+            boolean tooCoarse = options.isLevelOfDetail()
+                    && options.getSimplifyTolerance() > tolerance
+                    || options.isCompactTransfer()
+                    && options.getCompactPrecision() < getCompactPrecision()
+                    && isSentCompact(layer);
+            if (outsideViewport || tooCoarse) {
+                runLayerQuery(layer, layer.getSQLQuery(), layer.getQueryDatabase(),
+                        new QueryOptions(options));
+            }
+        }
+    }
+
+    /**
+     * Checks if a layer's geometries were sent as TWKB. Compact transfer falls back to
+     * binary or text transfer when the query has no text function to replace, and then
+     * the precision does not depend on the zoom level.
+     * @param layer a layer filled by a query
+     * @return true if the layer's query uses compact transfer
+     */
+    private static boolean isSentCompact(final Layer layer) {
+        SqlDialect dialect = SqlDialect.forDatabase(layer.getQueryDatabase());
+        return dialect != null && DatabaseConnector.isCompactTransfer(layer.getSQLQuery(),
+                dialect, layer.getQueryOptions());
+    }
+
+    /**
+     * Finds the number of decimals compact transfer must keep, so that rounding moves
+     * a point less than the simplification tolerance at the current zoom level.
+     * @return the number of decimals
+     */
+    private int getCompactPrecision() {
+        double tolerance = displayController.getPixelSize() * SIMPLIFY_PIXELS;
+        int precision = (int) Math.ceil(-Math.log10(tolerance));
+        return Math.max(MIN_COMPACT_PRECISION, Math.min(MAX_COMPACT_PRECISION, precision));
+    }
+
+    /**
+     * Stops the queries still filling a layer, before it is filled by a new one.
+     * @param layer the layer
+     */
+    private void cancelLayerQueries(final Layer layer) {
+        for (BackgroundQuery task : new ArrayList<>(runningQueries)) {
+            if (task.isFilling(layer)) {
+                task.discard();
+            }
+        }
+    }
+
+    /**
+     * Runs a query task in the background and keeps track of it until it is done.
+     * The layers stay usable while the query runs.
+     * @param task the query to run
+     * @param onFinished called when the query is done, instead of showing its errors;
+     *     may be null
+     */
+    private void startQuery(final BackgroundQuery task,
+                            final Consumer<BackgroundQuery> onFinished) {
+        task.setOnSucceeded(event -> {
+            finishQuery(task);
+            QueryResult result = task.getValue();
+            if (onFinished != null) {
+                onFinished.accept(task);
+            } else if (!result.isSuccess()) {
+                showQueryError(result.getError());
+            }
+        });
+        task.setOnCancelled(event -> {
+            finishQuery(task);
+            if (onFinished != null) {
+                onFinished.accept(task);
+            }
+        });
+        task.setOnFailed(event -> {
+            finishQuery(task);
+            if (onFinished != null) {
+                onFinished.accept(task);
+            } else {
+                Alerts alert = new Alerts(String.valueOf(task.getException()),
+                        "Query Error", "");
                 alert.show();
             }
+        });
+        runningQueries.add(task);
+        queryStatusTimeline.play();
+        updateQueryStatus();
+        QueryExecutor.execute(task);
+    }
+
+    /**
+     * Describes the outcome of a query in one line, for the summary of several queries.
+     * @param task the finished query
+     * @return database name, row count and time, or the error
+     */
+    private static String describeFinishedQuery(final BackgroundQuery task) {
+        String outcome;
+        QueryResult result = task.getValue();
+        if (task.getException() != null) {
+            outcome = String.valueOf(task.getException());
+        } else if (result == null) {
+            outcome = task.getState().toString().toLowerCase();
+        } else if (result.isSuccess()) {
+            outcome = result.getRows() + " rows";
         } else {
-            Alerts alert = new Alerts("No database selected", "DB Error", "");
+            outcome = result.getError();
+        }
+        return String.format("%s: %s (%.2f s)", task.getDatabase().getName(), outcome,
+                task.getElapsedSeconds());
+    }
+
+    private void finishQuery(final BackgroundQuery task) {
+        runningQueries.remove(task);
+        String source = "";
+        if (task.getValue() != null && task.getValue().isCached()) {
+            source = " from cache";
+        }
+        queryStatus.setText(String.format("%s: %d rows%s in %.1f s",
+                task.getState().toString().toLowerCase(), task.getRowCount(), source,
+                task.getElapsedSeconds()));
+        if (runningQueries.isEmpty()) {
+            queryStatusTimeline.stop();
+        }
+        updateQueryStatus();
+        updatePoolStatus();
+    }
+
+    /**
+     * Updates the progress indicator and the elapsed time of the running queries.
+     */
+    private void updateQueryStatus() {
+        boolean running = !runningQueries.isEmpty();
+        queryProgress.setVisible(running);
+        cancelQueryButton.setDisable(!running);
+        if (running) {
+            BackgroundQuery oldest = runningQueries.get(0);
+            long rows = 0;
+            for (BackgroundQuery task : runningQueries) {
+                rows += task.getRowCount();
+            }
+            queryStatus.setText(String.format("%d running: %d rows, %.1f s",
+                    runningQueries.size(), rows, oldest.getElapsedSeconds()));
+        }
+    }
+
+    /**
+     * Called when clicking the cancel button. Cancels all running queries.
+     */
+    public final void cancelQueries() {
+        for (BackgroundQuery task : new ArrayList<>(runningQueries)) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Shows an alert describing the error returned from DatabaseConnector.
+     * @param result the error message
+     */
+    private void showQueryError(final String result) {
+        if (result.contains("POSTGIS Error")) {
+            String title = "SQL Error";
+            String header = "POSTGIS Error";
+
+            //Specify different errors later, for example self-intersection
+            String alertMsg = "Invalid geometry,wrong syntax or empty query";
+            Alerts alert = new Alerts(alertMsg, title, header);
+            alert.show();
+        } else if (result.contains("MYSQL error")) {
+            String title = "SQL Error";
+            String header = "MYSQL Error";
+
+            //Specify different errors later, for example self intersection
+            String alertMsg = "Invalid geometry, wrong syntax or empty query";
+            Alerts alert = new Alerts(alertMsg, title, header);
+            alert.show();
+        } else if (result.contains("URL not valid")) {
+            String title = "Server Error";
+            String header = " ";
+            String alertMsg = "Server URL not valid";
+            Alerts alert = new Alerts(alertMsg, title, header);
+            alert.show();
+        } else if (result.contains("Wrong username")) {
+            String title = "Credential error";
+            String header = " ";
+            String alertMsg = "Wrong username or password";
+            Alerts alert = new Alerts(alertMsg, title, header);
+            alert.show();
+        } else if (result.contains("Invalid Query")) {
+            String title = "Query Error";
+            String header = "";
+            String alertMsg = "Syntax error in query or invalid request";
+            Alerts alert = new Alerts(alertMsg, title, header);
+            alert.show();
+        } else if (result.contains("Wrong server")) {
+            String title = "Server Error";
+            String header = "";
+            String alertMsg = "Server URL not valid";
+            Alerts alert = new Alerts(alertMsg, title, header);
+            alert.show();
+        } else {
+            Alerts alert = new Alerts(result, "Query Error", "");
             alert.show();
         }
     }
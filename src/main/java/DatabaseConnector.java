@@ -1,174 +1,962 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
 
-
-
-
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
 
 import java.sql.Connection;
 import java.sql.Statement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.sql.DriverManager;
-
-
 import java.sql.SQLException;
-import java.sql.SQLOutput;
+
 /**
  * Created by Eirik on 10/6/2015.
  */
 public final class DatabaseConnector {
 
-        private DatabaseConnector() { }
+    private static final Logger LOGGER = Logger.getLogger(DatabaseConnector.class.getName());
+
+    /**
+     * SQLState class for connection exceptions, the connection can not be reused.
+     */
+    private static final String CONNECTION_ERROR_STATE = "08";
+    /**
+     * The extent used for partitions is widened by this fraction of its size, since
+     * databases may round the extent of the geometries inwards.
+     */
+    private static final double EXTENT_MARGIN = 1e-6;
+    /**
+     * SQLState PostgreSQL sends when a statement was cancelled or timed out.
+     */
+    private static final String QUERY_CANCELED_STATE = "57014";
+    /**
+     * Number of columns a live layer query returns: the geometry, the id and the version.
+     */
+    private static final int LIVE_COLUMNS = 3;
+    /**
+     * Query run when warming up a database. It uses spatial functions, so the server
+     * loads its spatial library, and returns a geometry for the decoder.
+     */
+    private static final String WARM_UP_QUERY =
+            "SELECT ST_AsText(ST_GeomFromText('POINT(0 0)'))";
+
+    public static final String CANCELLED = "Query cancelled";
+    public static final String TIMED_OUT = "Query timed out";
+
+    private DatabaseConnector() { }
+
     /**
-     * Makes a connection and sends a query to the currently selected database.
+     * Sends a query to the currently selected database, using a pooled connection.
      * @param query Query to be sent to the SQL server
      * @param db The current selected db, contains name, url, username, password.
      * @return Returns either a WKT string or an error message.
      */
-        public static String executeQuery(final String query, final Database db) {
-            String results = null;
-            Connection pCon = null;
-            Connection con = null;
-            Statement st = null;
-            Statement pSt = null;
-            ResultSet rs = null;
-            ResultSet pRs = null;
-            String user = db.getUser();
-            String url = db.getUrl();
-            String password = db.getPassword();
-            if(password.isEmpty()){
-                password = null;
+    public static String executeQuery(final String query, final Database db) {
+        String results = null;
+        if (SqlDialect.forDatabase(db) == null) {
+            return "Server URL not valid";
+        }
+        ConnectionPool pool = ConnectionPool.getPool(db);
+        Connection con = null;
+        boolean broken = false;
+        try {
+            con = pool.borrow();
+            try (Statement st = con.createStatement();
+                 ResultSet rs = st.executeQuery(query)) {
+                while (rs.next()) {
+                    results = rs.getString(1);
+                }
             }
+        } catch (SQLException ex) {
+            broken = isConnectionBroken(con, ex);
+            String error = describeError(ex);
+            if (error != null) {
+                return error;
+            }
+            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+        } finally {
+            if (con != null) {
+                if (broken) {
+                    pool.discard(con);
+                } else {
+                    pool.release(con);
+                }
+            }
+        }
+        if (results == null) {
+            results = "Invalid Query";
+        }
+        return results;
+    }
+
+    /**
+     * Prepares a database for its first query: loads the JDBC drivers, opens the pooled
+     * connections the pool keeps idle and runs a spatial query on each, then sends the
+     * same query through the layer query path so the classes decoding rows are loaded.
+     * @param db the database
+     * @return the outcome, or the error message if the database could not be reached
+     */
+    public static QueryResult warmUp(final Database db) {
+        QueryResult result = new QueryResult();
+        if (SqlDialect.forDatabase(db) == null) {
+            result.setError("Server URL not valid");
+            return result;
+        }
         try {
+            ConnectionPool.getPool(db).warmUp(WARM_UP_QUERY);
+        } catch (SQLException ex) {
+            String error = describeError(ex);
+            if (error == null) {
+                error = ex.getMessage();
+            }
+            result.setError(error);
+            return result;
+        }
+        return streamQuery(WARM_UP_QUERY, db, new QueryOptions(), geometry -> { },
+                new QueryHandle(), new QueryMetrics());
+    }
 
-            Class.forName("com.mysql.jdbc.Driver");
-            Class.forName("org.postgresql.Driver");
+    /**
+     * Sends a query and hands the geometry in the first column of every row to the sink
+     * as soon as the row arrives, instead of collecting the whole result first.
+     * Rows that do not contain a valid geometry are skipped and counted.
+     * A query returning no rows succeeds, it is up to the caller whether that is an error.
+     * @param query Query to be sent to the SQL server
+     * @param db The current selected db
+     * @param options how the query is sent and the result transferred
+     * @param sink receives the geometry of each row, on the calling thread
+     * @param handle lets another thread cancel the query
+     * @param metrics receives the time spent connecting, executing, fetching and decoding
+     * @return the number of rows read, or the error message if the query failed
+     */
+    public static QueryResult streamQuery(final String query, final Database db,
+                                          final QueryOptions options,
+                                          final Consumer<Geometry> sink,
+                                          final QueryHandle handle,
+                                          final QueryMetrics metrics) {
+        QueryResult result = new QueryResult();
+        SqlDialect dialect = SqlDialect.forDatabase(db);
+        if (dialect == null) {
+            result.setError("Server URL not valid");
+            return result;
+        }
+        String sql = prepareQuery(query, dialect, options);
+        GeometryDecoder decoder = new GeometryDecoder(metrics);
+        decoder.setCompact(isCompactTransfer(query, dialect, options));
+        ConnectionPool pool = ConnectionPool.getPool(db);
+        Connection con = null;
+        boolean broken = false;
+        try {
+            long start = System.nanoTime();
+            con = pool.borrow();
+            metrics.addTime(QueryMetrics.Phase.CONNECT, start);
+            if (isCopyTransfer(dialect, options) && con instanceof PGConnection) {
+                copyRows(con, sql, options.getQueryTimeout(),
+                        copiedValueReader(decoder, sink, result, metrics), handle, metrics);
+            } else {
+                try (Statement st = createStatement(con, dialect, options)) {
+                    handle.addStatement(st);
+                    try {
+                        if (handle.isCancelled()) {
+                            result.setError(CANCELLED);
+                            return result;
+                        }
+                        start = System.nanoTime();
+                        try (StatementTimeout timeout = StatementTimeout.start(st,
+                                options.getQueryTimeout())) {
+                            try {
+                                ResultSet rs = st.executeQuery(sql);
+                                metrics.addTime(QueryMetrics.Phase.EXECUTE, start);
+                                readRows(rs, decoder, sink, handle, timeout, result,
+                                        metrics);
+                            } catch (SQLException ex) {
+                                throw timeout.check(ex);
+                            }
+                        }
+                    } finally {
+                        handle.removeStatement(st);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            broken = isConnectionBroken(con, ex);
+            result.setError(describeQueryError(ex, handle));
+        } finally {
+            if (con != null) {
+                if (broken) {
+                    pool.discard(con);
+                } else {
+                    pool.release(con);
+                }
+            }
+        }
+        if (result.isSuccess() && handle.isCancelled()) {
+            result.setError(CANCELLED);
+        }
+        return result;
+    }
 
+    /**
+     * Sends the query of a live layer and finds the features that changed since the
+     * versions the delta was created with. The query returns the geometry in the first
+     * column, a unique id in the second and a version or timestamp in the third.
+     * The geometry of a row is only decoded if its id is new or its version changed.
+     * The deleted features are only found if every row was read.
+     * Live layers are read through a result set; bulk transfer is not used.
+     * @param query Query to be sent to the SQL server
+     * @param db The current selected db
+     * @param options how the query is sent and the result transferred
+     * @param delta receives the inserted, updated and deleted features
+     * @param handle lets another thread cancel the query
+     * @param metrics receives the time spent connecting, executing, fetching and decoding
+     * @return the number of rows read, or the error message if the query failed
+     */
+    public static QueryResult streamChanges(final String query, final Database db,
+                                            final QueryOptions options, final LayerDelta delta,
+                                            final QueryHandle handle,
+                                            final QueryMetrics metrics) {
+        QueryResult result = new QueryResult();
+        SqlDialect dialect = SqlDialect.forDatabase(db);
+        if (dialect == null) {
+            result.setError("Server URL not valid");
+            return result;
+        }
+        String sql = prepareQuery(query, dialect, options);
+        GeometryDecoder decoder = new GeometryDecoder(metrics);
+        decoder.setCompact(isCompactTransfer(query, dialect, options));
+        ConnectionPool pool = ConnectionPool.getPool(db);
+        Connection con = null;
+        boolean broken = false;
+        try {
+            long start = System.nanoTime();
+            con = pool.borrow();
+            metrics.addTime(QueryMetrics.Phase.CONNECT, start);
+            try (Statement st = createStatement(con, dialect, options)) {
+                handle.addStatement(st);
+                try {
+                    if (handle.isCancelled()) {
+                        result.setError(CANCELLED);
+                        return result;
+                    }
+                    start = System.nanoTime();
+                    try (StatementTimeout timeout = StatementTimeout.start(st,
+                            options.getQueryTimeout())) {
+                        try {
+                            ResultSet rs = st.executeQuery(sql);
+                            metrics.addTime(QueryMetrics.Phase.EXECUTE, start);
+                            if (rs.getMetaData().getColumnCount() < LIVE_COLUMNS) {
+                                rs.close();
+                                result.setError("A live layer query must return the"
+                                        + " geometry, an id and a version column");
+                                return result;
+                            }
+                            readChanges(rs, decoder, delta, handle, timeout, result,
+                                    metrics);
+                        } catch (SQLException ex) {
+                            throw timeout.check(ex);
+                        }
+                    }
+                } finally {
+                    handle.removeStatement(st);
+                }
+            }
+        } catch (SQLException ex) {
+            broken = isConnectionBroken(con, ex);
+            result.setError(describeQueryError(ex, handle));
+        } finally {
+            if (con != null) {
+                if (broken) {
+                    pool.discard(con);
+                } else {
+                    pool.release(con);
+                }
+            }
+        }
+        if (result.isSuccess() && handle.isCancelled()) {
+            result.setError(CANCELLED);
+        }
+        return result;
+    }
 
+    /**
+     * Reads the id and version of each row of a live layer query, and decodes the
+     * geometries of the rows that changed. Completes the delta if the result was read to
+     * the end.
+     * @param rs the result, closed when done
+     * @param decoder decoder for the geometry column
+     * @param delta receives the changed features
+     * @param handle checked for cancellation between rows
+     * @param timeout timeout of the query, which also limits reading the rows
+     * @param result counts the rows
+     * @param metrics receives the time spent waiting for rows
+     * @throws SQLException if reading the result fails
+     */
+    private static void readChanges(final ResultSet rs, final GeometryDecoder decoder,
+                                    final LayerDelta delta, final QueryHandle handle,
+                                    final StatementTimeout timeout,
+                                    final QueryResult result, final QueryMetrics metrics)
+            throws SQLException {
+        try (ResultSet rows = rs) {
+            while (!handle.isCancelled() && nextRow(rows, timeout, metrics)) {
+                String id = rows.getString(2);
+                String version = rows.getString(LIVE_COLUMNS);
+                if (id == null) {
+                    result.addSkippedRow();
+                    continue;
+                }
+                result.addRow();
+                metrics.addRows(1);
+                if (!delta.needsGeometry(id, version)) {
+                    continue;
+                }
+                try {
+                    Geometry geometry = decoder.decode(rows, 1);
+                    if (geometry != null) {
+                        delta.addChanged(id, version, geometry);
+                    }
+                } catch (ParseException | IllegalArgumentException e) {
+                    result.addSkippedRow();
+                }
+            }
+            if (!handle.isCancelled()) {
+                delta.complete();
+            }
+        }
+    }
 
-            //Sample query and servers for testing
+    /**
+     * Runs the statements of a script in order on one pooled connection, so that later
+     * statements see the temporary tables, settings and open transaction of earlier
+     * ones. The geometries of a statement returning rows go to that statement's sink.
+     * Plain queries are rewritten for the transfer options like a layer query.
+     * The script stops at the first statement that fails. Since the session state must
+     * not leak into later queries, the connection is closed afterwards instead of going
+     * back to the pool.
+     * @param statements the statements, without semicolons
+     * @param db the database
+     * @param options how the queries are sent and their results transferred
+     * @param sinks gives the sink for the geometries of a statement, by index
+     * @param metrics gives the metrics of a statement, by index
+     * @param handle lets another thread cancel the running statement
+     * @return one result for each statement that was run
+     */
+    public static List<QueryResult> runScript(final List<String> statements, final Database db,
+                                              final QueryOptions options,
+                                              final IntFunction<Consumer<Geometry>> sinks,
+                                              final IntFunction<QueryMetrics> metrics,
+                                              final QueryHandle handle) {
+        List<QueryResult> results = new ArrayList<>();
+        SqlDialect dialect = SqlDialect.forDatabase(db);
+        if (dialect == null) {
+            QueryResult result = new QueryResult();
+            result.setError("Server URL not valid");
+            results.add(result);
+            return results;
+        }
+        ConnectionPool pool = ConnectionPool.getPool(db);
+        Connection con = null;
+        QueryResult result = new QueryResult();
+        try {
+            long start = System.nanoTime();
+            con = pool.borrow();
+            metrics.apply(0).addTime(QueryMetrics.Phase.CONNECT, start);
+            try (Statement st = con.createStatement()) {
+                handle.addStatement(st);
+                try {
+                    for (int i = 0; i < statements.size() && !handle.isCancelled(); i++) {
+                        String statement = statements.get(i);
+                        QueryMetrics statementMetrics = metrics.apply(i);
+                        result = new QueryResult();
+                        results.add(result);
+                        String sql = statement;
+                        if (SqlScript.isQuery(statement, dialect)) {
+                            sql = prepareQuery(statement, dialect, options);
+                        }
+                        start = System.nanoTime();
+                        try (StatementTimeout timeout = StatementTimeout.start(st,
+                                options.getQueryTimeout())) {
+                            try {
+                                boolean hasRows = st.execute(sql);
+                                statementMetrics.addTime(QueryMetrics.Phase.EXECUTE, start);
+                                if (hasRows) {
+                                    GeometryDecoder decoder =
+                                            new GeometryDecoder(statementMetrics);
+                                    decoder.setCompact(
+                                            isCompactTransfer(statement, dialect, options));
+                                    readRows(st.getResultSet(), decoder, sinks.apply(i),
+                                            handle, timeout, result, statementMetrics);
+                                }
+                            } catch (SQLException ex) {
+                                throw timeout.check(ex);
+                            }
+                        }
+                    }
+                } finally {
+                    handle.removeStatement(st);
+                }
+            }
+        } catch (SQLException ex) {
+            if (results.isEmpty()) {
+                results.add(result);
+            }
+            result.setError(describeQueryError(ex, handle));
+        } finally {
+            if (con != null) {
+                pool.discard(con);
+            }
+        }
+        if (result.isSuccess() && handle.isCancelled()) {
+            result.setError(CANCELLED);
+        }
+        return results;
+    }
 
-            //String query = "SELECT ST_AsText(ST_Envelope(ST_GeomFromText(
-            // 'POLYGON((5 0,7 10,0 15,10 15,15 25,20 15,30 15,22 10,25 0,15 5,5 0))')));;";
-            //url = "jdbc:mysql://127.0.0.1:3306/sakila";
-            //user = "root";
-            //password = "dbpass";
+    /**
+     * Streams the result of a layer query with COPY ... TO STDOUT (FORMAT binary),
+     * which sends each row as a small binary message instead of going through the
+     * per row work of a result set. Messages are read one at a time and decoded as they
+     * arrive, so no more than one message is buffered here; when the sink blocks, the
+     * server waits for the socket to drain.
+     * Cancelling goes through a statement on the same connection, which makes the server
+     * abort the COPY. The timeout cancels it the same way, and covers reading the rows.
+     * @param con a pooled PostgreSQL connection
+     * @param sql the prepared query, returning WKB or TWKB in the first column
+     * @param seconds seconds the COPY may run, including reading its rows, 0 for no limit
+     * @param values receives the first value of each row
+     * @param handle lets another thread cancel the COPY
+     * @param metrics receives the time spent executing and fetching
+     * @throws SQLException if the COPY fails, an SQLTimeoutException if it timed out
+     */
+    private static void copyRows(final Connection con, final String sql, final int seconds,
+                                 final Consumer<byte[]> values, final QueryHandle handle,
+                                 final QueryMetrics metrics) throws SQLException {
+        String copy = "COPY (" + stripSemicolons(sql) + ") TO STDOUT (FORMAT binary)";
+        BinaryCopyParser parser = new BinaryCopyParser();
+        try (Statement canceller = con.createStatement();
+             StatementTimeout timeout = StatementTimeout.start(canceller, seconds)) {
+            handle.addStatement(canceller);
+            try {
+                if (handle.isCancelled()) {
+                    return;
+                }
+                long start = System.nanoTime();
+                CopyOut copyOut = ((PGConnection) con).getCopyAPI().copyOut(copy);
+                metrics.addTime(QueryMetrics.Phase.EXECUTE, start);
+                boolean more = true;
+                while (more) {
+                    // the rows the server sent before it was cancelled are still read
+                    // from the socket, so an expired COPY is stopped here as well
+                    if (handle.isCancelled() || timeout.isExpired()) {
+                        copyOut.cancelCopy();
+                        break;
+                    }
+                    start = System.nanoTime();
+                    byte[] chunk = copyOut.readFromCopy();
+                    metrics.addTime(QueryMetrics.Phase.FETCH, start);
+                    more = chunk != null && parser.feed(chunk, values);
+                }
+                // read to the end, so the connection is ready for the next query; the
+                // driver only unlocks the connection once the server has ended the COPY,
+                // which after a cancel it does with an error
+                while (copyOut.isActive() && copyOut.readFromCopy() != null) {
+                    continue;
+                }
+                timeout.checkExpired();
+            } catch (SQLException ex) {
+                throw timeout.check(ex);
+            } finally {
+                handle.removeStatement(canceller);
+            }
+        }
+    }
 
-            //String url = "jdbc:mysql://mysql.stud.ntnu.no/perchrib_raccoons";
-            //String user = "perchrib";
-            //String password = "123";
+    /**
+     * Creates the receiver of the values read by binary COPY, which decodes them and
+     * hands the geometries to the sink like {@link #readRows} does for a result set.
+     * @param decoder decoder for the geometry column
+     * @param sink receives the geometry of each row
+     * @param result counts the rows
+     * @param metrics counts the rows
+     * @return the receiver
+     */
+    private static Consumer<byte[]> copiedValueReader(final GeometryDecoder decoder,
+                                                      final Consumer<Geometry> sink,
+                                                      final QueryResult result,
+                                                      final QueryMetrics metrics) {
+        return value -> {
+            try {
+                Geometry geometry = decoder.decodeBytes(value);
+                if (geometry == null) {
+                    result.addSkippedRow();
+                } else {
+                    sink.accept(geometry);
+                    result.addRow();
+                    metrics.addRows(1);
+                }
+            } catch (ParseException | IllegalArgumentException e) {
+                result.addSkippedRow();
+            }
+        };
+    }
 
+    /**
+     * Removes semicolons ending a query, which are not allowed inside COPY ( ... ).
+     * @param sql the query
+     * @return the query without trailing semicolons and whitespace
+     */
+    private static String stripSemicolons(final String sql) {
+        int end = sql.length();
+        while (end > 0 && (sql.charAt(end - 1) == ';'
+                || Character.isWhitespace(sql.charAt(end - 1)))) {
+            end--;
+        }
+        return sql.substring(0, end);
+    }
 
-            if (url.contains("mysql")) {
+    /**
+     * Creates the statement for a layer query, fetching through a cursor if the options
+     * ask for it.
+     * @param con a pooled connection
+     * @param dialect dialect of the database
+     * @param options the query options
+     * @return the statement
+     * @throws SQLException if the statement could not be created
+     */
+    private static Statement createStatement(final Connection con, final SqlDialect dialect,
+                                             final QueryOptions options) throws SQLException {
+        if (options.isCursorFetch()) {
+            return dialect.createCursorStatement(con, options.getFetchSize());
+        }
+        return con.createStatement();
+    }
 
-                con = DriverManager.getConnection(url, user, password);
-                st = con.createStatement();
-                rs = st.executeQuery(query);
-                while (rs.next()) {
-                    System.out.print(rs.getString(1));
-                    results = rs.getString(1);
+    /**
+     * Moves to the next row, adding the wait for it to the fetch time.
+     * @param rows the result
+     * @param timeout timeout of the query, checked before each row
+     * @param metrics metrics of the query
+     * @return true if there is a row
+     * @throws SQLException if reading the result fails, an SQLTimeoutException if the
+     *     time of the query ran out
+     */
+    private static boolean nextRow(final ResultSet rows, final StatementTimeout timeout,
+                                   final QueryMetrics metrics) throws SQLException {
+        timeout.checkExpired();
+        long start = System.nanoTime();
+        try {
+            return rows.next();
+        } finally {
+            metrics.addTime(QueryMetrics.Phase.FETCH, start);
+        }
+    }
 
+    /**
+     * Decodes the rows of a result set and hands them to the sink, until the result
+     * ends, the query is cancelled or its time runs out.
+     * @param rs the result, closed when done
+     * @param decoder decoder for the geometry column
+     * @param sink receives the geometry of each row
+     * @param handle checked for cancellation between rows
+     * @param timeout timeout of the query, which also limits reading the rows
+     * @param result counts the rows
+     * @param metrics receives the time spent waiting for rows
+     * @throws SQLException if reading the result fails, an SQLTimeoutException if the
+     *     time of the query ran out
+     */
+    private static void readRows(final ResultSet rs, final GeometryDecoder decoder,
+                                 final Consumer<Geometry> sink, final QueryHandle handle,
+                                 final StatementTimeout timeout,
+                                 final QueryResult result, final QueryMetrics metrics)
+            throws SQLException {
+        try (ResultSet rows = rs) {
+            while (!handle.isCancelled() && nextRow(rows, timeout, metrics)) {
+                try {
+                    Geometry geometry = decoder.decode(rows, 1);
+                    if (geometry == null) {
+                        result.addSkippedRow();
+                    } else {
+                        sink.accept(geometry);
+                        result.addRow();
+                        metrics.addRows(1);
+                    }
+                } catch (ParseException | IllegalArgumentException e) {
+                    result.addSkippedRow();
                 }
-            } else if (url.contains("postgresql")) {
-                pCon = DriverManager.getConnection(url, user, password);
-                pSt = pCon.createStatement();
-                pRs = pSt.executeQuery(query);
-                while (pRs.next()) {
-                    System.out.println(pRs.getString(1));
-                    results = pRs.getString(1);
-                }
-            } else {
-                String exception = "Server URL not valid";
-                results = exception;
             }
-            if (rs != null) {
-                rs.close();
+        }
+    }
+
+    /**
+     * Maps an error from a running query to the message shown to the user,
+     * telling cancelled and timed out queries apart from other errors.
+     * @param ex the error
+     * @param handle handle of the query
+     * @return the error message
+     */
+    private static String describeQueryError(final SQLException ex, final QueryHandle handle) {
+        if (handle.isCancelled()) {
+            return CANCELLED;
+        }
+        if (QUERY_CANCELED_STATE.equals(ex.getSQLState())
+                || ex.getClass().getSimpleName().contains("Timeout")) {
+            return TIMED_OUT;
+        }
+        String error = describeError(ex);
+        if (error == null) {
+            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+            error = "Invalid Query";
+        }
+        return error;
+    }
+
+    /**
+     * Rewrites the layer query according to the options.
+     * With binary transfer, a text function such as ST_AsText is replaced by the
+     * dialect's WKB function, so that no WKT has to be produced or parsed.
+     * Compact transfer uses the dialect's TWKB function with the precision of the options.
+     * A viewport query gets a bounding box condition on the geometry expression.
+     * With level of detail, the geometry expression is simplified on the server; the
+     * condition still uses the original expression so that its index can be used.
+     * @param query the query as written by the user
+     * @param dialect dialect of the database
+     * @param options the query options
+     * @return the query to send
+     */
+    public static String prepareQuery(final String query, final SqlDialect dialect,
+                                      final QueryOptions options) {
+        String sql = query;
+        if (options.isViewportQuery() && options.getViewport() != null) {
+            GeometryQuery geometryQuery = new GeometryQuery(sql, dialect);
+            String geometry = geometryQuery.getGeometryExpression();
+            String filtered = null;
+            if (geometry != null) {
+                filtered = geometryQuery.withPredicate(
+                        dialect.envelopePredicate(geometry, options.getViewport()));
             }
-            if (st != null) {
-                st.close();
+            if (filtered == null) {
+                LOGGER.log(Level.INFO, "Could not add viewport condition to query: " + query);
+            } else {
+                sql = filtered;
             }
-            if (con != null) {
-                con.close();
+        }
+        if (options.isLevelOfDetail() && options.getSimplifyTolerance() > 0) {
+            GeometryQuery geometryQuery = new GeometryQuery(sql, dialect);
+            String geometry = geometryQuery.getGeometryExpression();
+            String simplified = null;
+            if (geometry != null) {
+                simplified = geometryQuery.withGeometryExpression(
+                        dialect.simplify(geometry, options.getSimplifyTolerance()));
             }
-            if (pRs != null) {
-                pRs.close();
+            if (simplified == null) {
+                LOGGER.log(Level.INFO, "Could not simplify geometries of query: " + query);
+            } else {
+                sql = simplified;
             }
-            if (pSt != null) {
-                pSt.close();
+        }
+        if (isCompactTransfer(query, dialect, options)) {
+            sql = new GeometryQuery(sql, dialect).withOutputFunction(dialect.getCompactFunction(),
+                    Integer.toString(options.getCompactPrecision()));
+        } else if (options.isBinaryTransfer() || options.isCompactTransfer()
+                || isCopyTransfer(dialect, options)) {
+            sql = new GeometryQuery(sql, dialect).withOutputFunction(dialect.getBinaryFunction());
+        }
+        return sql;
+    }
+
+    /**
+     * Asks the database for the plan of a layer query, as it is sent with the options.
+     * On PostgreSQL the query is run to measure it, on MySQL only planned.
+     * @param query the query as written by the user
+     * @param db the database
+     * @param options the options the layer was queried with
+     * @return the plan, or a plan holding the error
+     */
+    public static QueryPlan explainQuery(final String query, final Database db,
+                                         final QueryOptions options) {
+        SqlDialect dialect = SqlDialect.forDatabase(db);
+        if (dialect == null) {
+            return QueryPlan.failed("Server URL not valid");
+        }
+        String sql = dialect.explain(stripSemicolons(prepareQuery(query, dialect, options)));
+        if (sql == null) {
+            return QueryPlan.failed("The database can not explain queries in JSON");
+        }
+        ConnectionPool pool = ConnectionPool.getPool(db);
+        Connection con = null;
+        boolean broken = false;
+        try {
+            con = pool.borrow();
+            StringBuilder json = new StringBuilder();
+            try (Statement st = con.createStatement();
+                 ResultSet rs = StatementTimeout.executeQuery(st, sql,
+                         options.getQueryTimeout())) {
+                while (rs.next()) {
+                    json.append(rs.getString(1)).append('\n');
+                }
             }
-            if (pCon != null) {
-                pCon.close();
+            return QueryPlan.parse(dialect, json.toString(),
+                    new GeometryQuery(query, dialect).getGeometryExpression());
+        } catch (SQLException ex) {
+            broken = isConnectionBroken(con, ex);
+            // the server's message tells why, e.g. a MySQL version without FORMAT=JSON
+            return QueryPlan.failed(ex.getMessage());
+        } catch (ParseException ex) {
+            return QueryPlan.failed("Could not read the plan: " + ex.getMessage());
+        } finally {
+            if (con != null) {
+                if (broken) {
+                    pool.discard(con);
+                } else {
+                    pool.release(con);
+                }
             }
+        }
+    }
 
+    /**
+     * Splits a layer query into queries for the cells of a grid over the extent of
+     * its geometries, one cell for each part, so that the parts can run at the same time
+     * on separate connections. The grid has rows of equal height, each split into cells
+     * of equal width. Each geometry is returned by the cell holding the lower left corner
+     * of its bounding box, so no geometry is returned twice.
+     * @param query the query as written by the user
+     * @param db the database
+     * @param partitions the number of parts wanted
+     * @param known a probe of the query already run, or null to find the extent here
+     * @param handle lets another thread cancel the extent query
+     * @return one query for each cell, or null if the query can not be split
+     */
+    public static List<String> partitionQuery(final String query, final Database db,
+                                              final int partitions, final QueryProbe known,
+                                              final QueryHandle handle) {
+        SqlDialect dialect = SqlDialect.forDatabase(db);
+        if (dialect == null || dialect.getExtentFunction() == null || partitions < 2) {
+            return null;
+        }
+        GeometryQuery geometryQuery = new GeometryQuery(query, dialect);
+        String geometry = geometryQuery.getGeometryExpression();
+        if (geometry == null) {
+            return null;
+        }
+        QueryProbe probe = known;
+        if (probe == null) {
+            probe = probeQuery(query, db, false, handle);
+        }
+        if (probe == null || probe.getExtent() == null) {
+            LOGGER.log(Level.INFO, "Could not split query into partitions: " + query);
+            return null;
+        }
+        Envelope extent = new Envelope(probe.getExtent());
+        double margin = Math.max(extent.getWidth(), extent.getHeight()) * EXTENT_MARGIN
+                + EXTENT_MARGIN;
+        extent.expandBy(margin);
+        // exactly one cell per part: the rows share the parts out, the first rows
+        // taking one cell more when they do not divide evenly
+        int rows = (int) Math.sqrt(partitions);
+        List<String> queries = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int columns = partitions / rows;
+            if (row < partitions % rows) {
+                columns++;
+            }
+            for (int column = 0; column < columns; column++) {
+                String predicate = cellPredicate(dialect, geometry, extent,
+                        new int[] {column, row}, new int[] {columns, rows});
+                queries.add(geometryQuery.withPredicate(predicate));
+            }
+        }
+        return queries;
+    }
 
-        } catch (SQLException | ClassNotFoundException ex) {
-
-
-            if (ex.toString().contains("PSQL")) {
-                String exception = "POSTGIS Error";
-                results = exception;
-                return results;
-            } else if (ex.toString().contains("MySQL")) {
-                String exception = "MYSQL error";
-                results = exception;
-                return results;
-            } else if (ex.toString().contains("Access denied")) {
-                String exception = "Wrong username or password";
-                results = exception;
-                return results;
+    /**
+     * Creates the condition selecting the geometries of one grid cell: their bounding
+     * box intersects the cell, which can use the spatial index, and its lower left
+     * corner lies in the cell. The cells on the edges are open towards the outside.
+     * @param dialect dialect of the database
+     * @param geometry the geometry expression
+     * @param extent extent of the grid
+     * @param cell column and row of the cell
+     * @param size number of columns in the row of the cell, and number of rows
+     * @return the condition
+     */
+    private static String cellPredicate(final SqlDialect dialect, final String geometry,
+                                        final Envelope extent, final int[] cell,
+                                        final int[] size) {
+        double width = extent.getWidth() / size[0];
+        double height = extent.getHeight() / size[1];
+        double minX = extent.getMinX() + cell[0] * width;
+        double minY = extent.getMinY() + cell[1] * height;
+        Envelope envelope = new Envelope(minX, minX + width, minY, minY + height);
+        StringBuilder predicate = new StringBuilder(dialect.envelopePredicate(geometry, envelope));
+        if (cell[0] > 0) {
+            predicate.append(" AND ST_XMin(").append(geometry).append(") >= ").append(minX);
+        }
+        if (cell[0] < size[0] - 1) {
+            predicate.append(" AND ST_XMin(").append(geometry).append(") < ")
+                    .append(minX + width);
+        }
+        if (cell[1] > 0) {
+            predicate.append(" AND ST_YMin(").append(geometry).append(") >= ").append(minY);
+        }
+        if (cell[1] < size[1] - 1) {
+            predicate.append(" AND ST_YMin(").append(geometry).append(") < ")
+                    .append(minY + height);
+        }
+        return predicate.toString();
+    }
 
-            } else if (ex.toString().contains("Communications")) {
-                String exception = "Wrong server address";
-                results = exception;
-                return results;
+    /**
+     * Runs a cheap aggregate query over the rows of a layer query, to learn the extent
+     * of its geometries and how many rows it returns before fetching them.
+     * The extent and vertex count are only found on databases with the functions for them.
+     * @param query the query as written by the user
+     * @param db the database
+     * @param countVertices whether to count vertices too, which reads every geometry
+     * @param handle lets another thread cancel the probe
+     * @return the probe, or null if the query can not be summarised or the probe failed
+     */
+    public static QueryProbe probeQuery(final String query, final Database db,
+                                        final boolean countVertices, final QueryHandle handle) {
+        SqlDialect dialect = SqlDialect.forDatabase(db);
+        if (dialect == null) {
+            return null;
+        }
+        GeometryQuery geometryQuery = new GeometryQuery(query, dialect);
+        String geometry = geometryQuery.getGeometryExpression();
+        boolean hasExtent = geometry != null && dialect.getExtentFunction() != null;
+        boolean hasVertices = countVertices && geometry != null
+                && dialect.getVertexCountFunction() != null;
+        StringBuilder aggregates = new StringBuilder("COUNT(*) AS row_count");
+        if (hasExtent) {
+            aggregates.append(", ").append(dialect.getExtentFunction()).append('(')
+                    .append(geometry).append(") AS e");
+        }
+        if (hasVertices) {
+            aggregates.append(", SUM(").append(dialect.getVertexCountFunction()).append('(')
+                    .append(geometry).append(")) AS vertex_count");
+        }
+        String sql = geometryQuery.toAggregateQuery(aggregates.toString());
+        if (sql == null) {
+            return null;
+        }
+        if (hasExtent) {
+            String vertexColumn = "";
+            if (hasVertices) {
+                vertexColumn = ", vertex_count";
             }
+            sql = "SELECT row_count" + vertexColumn + ", ST_XMin(e) AS min_x,"
+                    + " ST_YMin(e) AS min_y, ST_XMax(e) AS max_x, ST_YMax(e) AS max_y"
+                    + " FROM (" + sql + ") probe";
         }
-            try {
-                if (rs != null) {
-                    rs.close();
-                }
-                if (st != null) {
-                    st.close();
-                }
-                if (con != null) {
-                    con.close();
-                }
-                if (pRs != null) {
-                    pRs.close();
-                }
-                if (pSt != null) {
-                    pSt.close();
-                }
-                if (pCon != null) {
-                    pCon.close();
+        ConnectionPool pool = ConnectionPool.getPool(db);
+        Connection con = null;
+        boolean broken = false;
+        try {
+            con = pool.borrow();
+            try (Statement st = con.createStatement()) {
+                handle.addStatement(st);
+                try (ResultSet rs = st.executeQuery(sql)) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    Envelope extent = null;
+                    if (hasExtent && rs.getObject("min_x") != null) {
+                        extent = new Envelope(rs.getDouble("min_x"), rs.getDouble("max_x"),
+                                rs.getDouble("min_y"), rs.getDouble("max_y"));
+                    }
+                    long vertices = -1;
+                    if (hasVertices) {
+                        vertices = rs.getLong("vertex_count");
+                    }
+                    return new QueryProbe(extent, rs.getLong("row_count"), vertices);
+                } finally {
+                    handle.removeStatement(st);
                 }
-            } catch (SQLException ex) {
-                System.out.println("The error:");
-                System.out.println(ex.getMessage());
-                Logger lgr = Logger.getLogger(SQLOutput.class.getName());
-
-                if (SQLOutput.class.getName().contains("PSQL")) {
-                    String exception = "Postgis error";
-                    results = exception;
-                    return results;
-                } else if (ex.getMessage().contains("MYSQL")) {
-                    String exception = "MYSQL error";
-                    results = exception;
-                    return results;
+            }
+        } catch (SQLException ex) {
+            broken = isConnectionBroken(con, ex);
+            LOGGER.log(Level.INFO, "Could not probe query: " + ex.getMessage());
+            return null;
+        } finally {
+            if (con != null) {
+                if (broken) {
+                    pool.discard(con);
                 } else {
-                    lgr.log(Level.WARNING, ex.getMessage(), ex);
+                    pool.release(con);
                 }
-
-            }
-            if (results == null) {
-                String exception = "Invalid Query";
-                results = exception;
             }
-            return results;
+        }
+    }
 
+    /**
+     * Checks if the rows of a query are streamed with binary COPY.
+     * @param dialect dialect of the database
+     * @param options the query options
+     * @return true for COPY transfer
+     */
+    public static boolean isCopyTransfer(final SqlDialect dialect, final QueryOptions options) {
+        return options.isCopyTransfer() && dialect.supportsBinaryCopy();
+    }
 
+    /**
+     * Checks if the geometries of a query are transferred as TWKB. This needs a database
+     * with a TWKB function and a text function in the query to replace, otherwise
+     * compact transfer falls back to binary transfer.
+     * @param query the query as written by the user
+     * @param dialect dialect of the database
+     * @param options the query options
+     * @return true if the binary geometry column holds TWKB instead of WKB
+     */
+    public static boolean isCompactTransfer(final String query, final SqlDialect dialect,
+                                            final QueryOptions options) {
+        return options.isCompactTransfer() && dialect.getCompactFunction() != null
+                && new GeometryQuery(query, dialect).hasTextFunction();
     }
 
-}
+    /**
+     * Maps an exception from the driver to the error message shown to the user.
+     * @param ex exception thrown while connecting or querying
+     * @return the error message, or null if the error is not recognized
+     */
+    public static String describeError(final SQLException ex) {
+        if (ex.toString().contains("PSQL")) {
+            return "POSTGIS Error";
+        } else if (ex.toString().contains("MySQL")) {
+            return "MYSQL error";
+        } else if (ex.toString().contains("Access denied")) {
+            return "Wrong username or password";
+        } else if (ex.toString().contains("Communications")) {
+            return "Wrong server address";
+        }
+        return null;
+    }
 
+    /**
+     * Checks whether a connection should be closed rather than returned to the pool.
+     * @param con the connection the error happened on, may be null
+     * @param ex the error
+     * @return true if the connection can not be reused
+     */
+    private static boolean isConnectionBroken(final Connection con, final SQLException ex) {
+        if (con == null) {
+            return false;
+        }
+        String state = ex.getSQLState();
+        if (state != null && state.startsWith(CONNECTION_ERROR_STATE)) {
+            return true;
+        }
+        try {
+            return con.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
 
+}
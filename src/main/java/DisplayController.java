@@ -1,3 +1,5 @@
+import com.vividsolutions.jts.geom.Envelope;
+import javafx.animation.PauseTransition;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.Cursor;
@@ -9,10 +11,12 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import models.GeometryModel;
 import models.ModelBoundaries;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Johannes on 19.10.2015.
@@ -38,6 +42,11 @@ public class DisplayController implements ChangeListener {
     private static final int MIN_ZOOM_LEVEL = -25;
 
     private static final int ZOOM_TO_SCALE_MULTIPLIER = 10;
+    /**
+     * Time the view must stay unchanged after panning or zooming before
+     * the view change listener is called.
+     */
+    private static final Duration VIEW_CHANGE_DELAY = Duration.millis(400);
     /**
      * Current level of zooming (0 -> default).
      */
@@ -83,6 +92,7 @@ public class DisplayController implements ChangeListener {
     private Text positionY;
     private Text zoomTextError;
     private Stage stage;
+    private final PauseTransition viewChangeDelay = new PauseTransition(VIEW_CHANGE_DELAY);
 
     public DisplayController(final AnchorPane parentPane,
                              final TextField zoomTextField,
@@ -99,6 +109,44 @@ public class DisplayController implements ChangeListener {
     }
 
 
+    /**
+     * Sets what happens when the user has panned or zoomed and the view has settled.
+     * @param listener called on the JavaFX thread
+     */
+    public final void setOnViewChanged(final Runnable listener) {
+        viewChangeDelay.setOnFinished(event -> listener.run());
+    }
+
+    /**
+     * Restarts the delay before the view change listener is called, so that it only
+     * runs once when the user zooms or drags several times in a row.
+     */
+    private void fireViewChanged() {
+        viewChangeDelay.playFromStart();
+    }
+
+    /**
+     * Gets the part of the data coordinate space currently visible in the view.
+     * @return the visible envelope, in the coordinates of the geometries before inverting y
+     */
+    public final Envelope getVisibleEnvelope() {
+        double centerX = parentPane.getWidth() / 2;
+        double centerY = parentPane.getHeight() / 2;
+        double minX = (-currentOffsetX - centerX) / currentZoom;
+        double maxX = (parentPane.getWidth() - currentOffsetX - centerX) / currentZoom;
+        double minY = -(parentPane.getHeight() - currentOffsetY - centerY) / currentZoom;
+        double maxY = -(-currentOffsetY - centerY) / currentZoom;
+        return new Envelope(minX, maxX, minY, maxY);
+    }
+
+    /**
+     * Gets the size of one screen pixel at the current zoom level.
+     * @return the pixel size in the coordinates of the geometries
+     */
+    public final double getPixelSize() {
+        return 1 / currentZoom;
+    }
+
     /**
      * Calculates double value which is used for multiplying with coordinates.
      * @param zoomFactor base
@@ -157,6 +205,21 @@ public class DisplayController implements ChangeListener {
                 currentOffsetX + centerX, currentOffsetY + centerY);
     }
 
+    /**
+     * Transforms newly added models to the current zoom and position, without touching
+     * the geometries that are already displayed.
+     * @param models models to transform
+     */
+    public final void transformModels(final List<GeometryModel> models) {
+        double centerX = parentPane.getWidth() / 2;
+        double centerY = parentPane.getHeight() / 2;
+        for (GeometryModel gm : models) {
+            gm.transformGeometry(currentZoom,
+                    this.currentOffsetX + centerX,
+                    this.currentOffsetY + centerY);
+        }
+    }
+
     /**
      * Changes X coordinates of all geometries by offsetX.
      * Changes Y coordinates of all geometries by offsetY.
@@ -295,6 +358,7 @@ public class DisplayController implements ChangeListener {
 
         setZoomLevel();
         rescaleAllGeometries();
+        fireViewChanged();
     }
 
     /**
@@ -354,6 +418,7 @@ public class DisplayController implements ChangeListener {
         backgroundGrid.resetOffsets();
         setZoomLevel();
         rescaleAllGeometries();
+        fireViewChanged();
     }
 
     /**
@@ -363,6 +428,7 @@ public class DisplayController implements ChangeListener {
         currentZoomLevel++;
         setZoomLevel();
         rescaleAllGeometries();
+        fireViewChanged();
     }
 
     /**
@@ -372,6 +438,7 @@ public class DisplayController implements ChangeListener {
         currentZoomLevel--;
         setZoomLevel();
         rescaleAllGeometries();
+        fireViewChanged();
     }
 
     /**
@@ -434,6 +501,9 @@ public class DisplayController implements ChangeListener {
         moveAllGeometries(mouseMoveOffsetX, mouseMoveOffsetY);
         mouseMoveOffsetX = 0;
         mouseMoveOffsetY = 0;
+        if (event.getSceneX() != dragBeginX || event.getSceneY() != dragBeginY) {
+            fireViewChanged();
+        }
         //calculateBoundaries();
     }
 
@@ -455,6 +525,7 @@ public class DisplayController implements ChangeListener {
                     currentZoom = zoomFactor;
                     rescaleAllGeometries();
                     currentZoomLevel = (int) logZoomFactor(zoomFactor);
+                    fireViewChanged();
                 }
             } catch (NumberFormatException e) {
                 // display error message when input is invalid
@@ -470,5 +541,6 @@ public class DisplayController implements ChangeListener {
                               final Object oldValue,
                               final Object newValue) {
         rescaleAllGeometries();
+        fireViewChanged();
     }
 }
@@ -0,0 +1,440 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.io.ParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads WKT without a tokenizer. The text is scanned character by character, and the
+ * ordinates of each point list are parsed straight into one reused double array, with
+ * the y-coordinates inverted as they are read when the geometries are for the drawing
+ * pane. Only the coordinates of the finished geometry are allocated, so reading a
+ * geometry with millions of vertices leaves little garbage behind.
+ * Reads the same geometries as WKTReader; Z and M ordinates are skipped, since layers
+ * are drawn in two dimensions. Not thread safe, one reader is used per thread.
+ */
+public class FastWktReader {
+
+    private static final int INITIAL_ORDINATES = 1024;
+    private static final int RADIX = 10;
+    /**
+     * Numbers with at most this many significant digits, and a power of ten no larger
+     * than MAX_EXACT_POWER, are computed with one exact multiplication or division.
+     * Other numbers are left to Double.parseDouble.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_EXACT_POWER = 22;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+    private static final String SRID = "SRID";
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * RADIX;
+        }
+    }
+
+    private final GeometryFactory geometryFactory;
+    private final boolean invertY;
+    private final boolean packed;
+    private String text;
+    private int position;
+    private double[] ordinates = new double[INITIAL_ORDINATES];
+    private int size;
+
+    /**
+     * Creates a reader returning geometries with the coordinates of the text.
+     * @param geometryFactory creates the geometries
+     */
+    public FastWktReader(final GeometryFactory geometryFactory) {
+        this(geometryFactory, false, false);
+    }
+
+    /**
+     * Creates a reader.
+     * @param geometryFactory creates the geometries
+     * @param invertY true to negate the y-coordinates while reading, as the models of
+     *     the drawing pane expect
+     * @param packed true to keep the coordinates of each geometry in one double array,
+     *     which takes less memory; the models move coordinates through
+     *     Geometry.getCoordinates, which only returns a copy of packed coordinates,
+     *     so packed geometries can not be drawn
+     */
+    public FastWktReader(final GeometryFactory geometryFactory, final boolean invertY,
+                         final boolean packed) {
+        this.geometryFactory = geometryFactory;
+        this.invertY = invertY;
+        this.packed = packed;
+    }
+
+    /**
+     * Reads a geometry. Like WKTReader, text after the geometry is ignored. The geometry
+     * may be EWKT, starting with SRID=n; which is set as the SRID of the geometry.
+     * @param wkt the WKT
+     * @return the geometry
+     * @throws ParseException if the text is not valid WKT
+     */
+    public final Geometry read(final String wkt) throws ParseException {
+        this.text = wkt;
+        this.position = 0;
+        try {
+            skipWhitespace();
+            int srid = 0;
+            if (text.regionMatches(true, position, SRID, 0, SRID.length())) {
+                srid = readSrid();
+            }
+            Geometry geometry = readGeometry();
+            if (srid != 0) {
+                geometry.setSRID(srid);
+            }
+            return geometry;
+        } finally {
+            this.text = null;
+        }
+    }
+
+    private Geometry readGeometry() throws ParseException {
+        String type = readWord();
+        skipDimension();
+        switch (type) {
+            case "POINT":
+                if (isEmpty()) {
+                    return geometryFactory.createPoint((Coordinate) null);
+                }
+                return readPoint();
+            case "LINESTRING":
+                if (isEmpty()) {
+                    return geometryFactory.createLineString(new Coordinate[0]);
+                }
+                return geometryFactory.createLineString(readCoordinates());
+            case "LINEARRING":
+                if (isEmpty()) {
+                    return geometryFactory.createLinearRing(new Coordinate[0]);
+                }
+                return geometryFactory.createLinearRing(readCoordinates());
+            case "POLYGON":
+                if (isEmpty()) {
+                    return geometryFactory.createPolygon(null, null);
+                }
+                return readPolygon();
+            case "MULTIPOINT":
+                return readMultiPoint();
+            case "MULTILINESTRING":
+                List<LineString> lines = new ArrayList<>();
+                if (!isEmpty()) {
+                    expect('(');
+                    do {
+                        lines.add(geometryFactory.createLineString(readCoordinatesOrEmpty()));
+                    } while (nextMember());
+                }
+                return geometryFactory.createMultiLineString(
+                        lines.toArray(new LineString[lines.size()]));
+            case "MULTIPOLYGON":
+                List<Polygon> polygons = new ArrayList<>();
+                if (!isEmpty()) {
+                    expect('(');
+                    do {
+                        if (isEmpty()) {
+                            polygons.add(geometryFactory.createPolygon(null, null));
+                        } else {
+                            polygons.add(readPolygon());
+                        }
+                    } while (nextMember());
+                }
+                return geometryFactory.createMultiPolygon(
+                        polygons.toArray(new Polygon[polygons.size()]));
+            case "GEOMETRYCOLLECTION":
+                List<Geometry> members = new ArrayList<>();
+                if (!isEmpty()) {
+                    expect('(');
+                    do {
+                        members.add(readGeometry());
+                    } while (nextMember());
+                }
+                return geometryFactory.createGeometryCollection(
+                        members.toArray(new Geometry[members.size()]));
+            default:
+                throw error("Unknown geometry type " + type);
+        }
+    }
+
+    /**
+     * Reads the SRID=n; in front of EWKT.
+     * @return the SRID
+     */
+    private int readSrid() throws ParseException {
+        readWord();
+        expect('=');
+        skipWhitespace();
+        int start = position;
+        while (Character.isDigit(peek())) {
+            position++;
+        }
+        if (position == start) {
+            throw error("Expected an SRID");
+        }
+        int srid = Integer.parseInt(text.substring(start, position));
+        expect(';');
+        return srid;
+    }
+
+    private Point readPoint() throws ParseException {
+        expect('(');
+        size = 0;
+        readCoordinate();
+        expect(')');
+        return geometryFactory.createPoint(createSequence());
+    }
+
+    /**
+     * Reads the points of a MULTIPOINT, written either as (1 2, 3 4) or as
+     * ((1 2), (3 4)).
+     */
+    private Geometry readMultiPoint() throws ParseException {
+        List<Point> points = new ArrayList<>();
+        if (!isEmpty()) {
+            expect('(');
+            do {
+                skipWhitespace();
+                if (peek() == '(') {
+                    points.add(readPoint());
+                } else if (Character.isLetter(peek()) && isEmpty()) {
+                    points.add(geometryFactory.createPoint((Coordinate) null));
+                } else {
+                    size = 0;
+                    readCoordinate();
+                    points.add(geometryFactory.createPoint(createSequence()));
+                }
+            } while (nextMember());
+        }
+        return geometryFactory.createMultiPoint(points.toArray(new Point[points.size()]));
+    }
+
+    private Polygon readPolygon() throws ParseException {
+        expect('(');
+        LinearRing shell = geometryFactory.createLinearRing(readCoordinatesOrEmpty());
+        List<LinearRing> holes = new ArrayList<>();
+        while (nextMember()) {
+            holes.add(geometryFactory.createLinearRing(readCoordinatesOrEmpty()));
+        }
+        return geometryFactory.createPolygon(shell, holes.toArray(new LinearRing[holes.size()]));
+    }
+
+    private CoordinateSequence readCoordinatesOrEmpty() throws ParseException {
+        if (isEmpty()) {
+            return createEmptySequence();
+        }
+        return readCoordinates();
+    }
+
+    /**
+     * Reads a parenthesized list of points into the ordinate buffer.
+     * @return the sequence of the points
+     */
+    private CoordinateSequence readCoordinates() throws ParseException {
+        expect('(');
+        size = 0;
+        do {
+            readCoordinate();
+        } while (next(','));
+        expect(')');
+        return createSequence();
+    }
+
+    /**
+     * Reads one point into the ordinate buffer, skipping a Z and M ordinate.
+     */
+    private void readCoordinate() throws ParseException {
+        if (size + 2 > ordinates.length) {
+            ordinates = Arrays.copyOf(ordinates, ordinates.length * 2);
+        }
+        ordinates[size++] = readNumber();
+        double y = readNumber();
+        if (invertY) {
+            y = -y;
+        }
+        ordinates[size++] = y;
+        while (isNumberNext()) {
+            readNumber();
+        }
+    }
+
+    private CoordinateSequence createSequence() {
+        if (packed) {
+            return new PackedCoordinateSequence.Double(Arrays.copyOf(ordinates, size), 2);
+        }
+        Coordinate[] coordinates = new Coordinate[size / 2];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(ordinates[2 * i], ordinates[2 * i + 1]);
+        }
+        return geometryFactory.getCoordinateSequenceFactory().create(coordinates);
+    }
+
+    private CoordinateSequence createEmptySequence() {
+        if (packed) {
+            return new PackedCoordinateSequence.Double(new double[0], 2);
+        }
+        return geometryFactory.getCoordinateSequenceFactory().create(new Coordinate[0]);
+    }
+
+    /**
+     * Reads a number at the position. Numbers that fit in a double exactly are computed
+     * here without creating a String; the result is the same as Double.parseDouble.
+     * @return the number
+     */
+    private double readNumber() throws ParseException {
+        skipWhitespace();
+        int start = position;
+        boolean negative = false;
+        if (peek() == '-' || peek() == '+') {
+            negative = text.charAt(position++) == '-';
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean fraction = false;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa != 0 || c != '0') {
+                    significant++;
+                }
+                mantissa = mantissa * RADIX + (c - '0');
+                if (fraction) {
+                    scale--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (digits == 0) {
+            throw error("Expected a number");
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            position++;
+            int exponentStart = position;
+            if (peek() == '-' || peek() == '+') {
+                position++;
+            }
+            while (peek() >= '0' && peek() <= '9') {
+                position++;
+            }
+            if (position == exponentStart || !Character.isDigit(text.charAt(position - 1))) {
+                throw error("Invalid exponent");
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+        if (significant > MAX_EXACT_DIGITS || -scale > MAX_EXACT_POWER) {
+            return Double.parseDouble(text.substring(start, position));
+        }
+        double value = mantissa / POWERS_OF_TEN[-scale];
+        if (negative) {
+            return -value;
+        }
+        return value;
+    }
+
+    private boolean isNumberNext() {
+        skipWhitespace();
+        char c = peek();
+        return c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.';
+    }
+
+    /**
+     * Checks for EMPTY, reading it if it is there.
+     * @return true if EMPTY was read
+     * @throws ParseException if neither EMPTY nor an opening parenthesis follows
+     */
+    private boolean isEmpty() throws ParseException {
+        skipWhitespace();
+        if (peek() == '(') {
+            return false;
+        }
+        int start = position;
+        if (!readWord().equals("EMPTY")) {
+            position = start;
+            throw error("Expected ( or EMPTY");
+        }
+        return true;
+    }
+
+    /**
+     * Reads the comma before the next member of a list, or the parenthesis closing it.
+     * @return true if another member follows
+     */
+    private boolean nextMember() throws ParseException {
+        if (next(',')) {
+            return true;
+        }
+        expect(')');
+        return false;
+    }
+
+    /**
+     * Skips the Z, M or ZM after a geometry type; the extra ordinates are skipped as the
+     * points are read.
+     */
+    private void skipDimension() {
+        skipWhitespace();
+        char c = Character.toUpperCase(peek());
+        if (c == 'Z' || c == 'M') {
+            readWord();
+        }
+    }
+
+    private String readWord() {
+        skipWhitespace();
+        int start = position;
+        while (position < text.length() && Character.isLetter(text.charAt(position))) {
+            position++;
+        }
+        return text.substring(start, position).toUpperCase(Locale.ROOT);
+    }
+
+    private boolean next(final char expected) {
+        skipWhitespace();
+        if (peek() == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char expected) throws ParseException {
+        if (!next(expected)) {
+            throw error("Expected " + expected);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position < text.length()) {
+            return text.charAt(position);
+        }
+        return 0;
+    }
+
+    private ParseException error(final String message) {
+        return new ParseException(message + " at character " + position);
+    }
+}
@@ -0,0 +1,191 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads GeoJSON: a FeatureCollection, a Feature, or a geometry object of any type.
+ * The features of a FeatureCollection are read one at a time and their geometries
+ * handed on as each is complete, so the collection is never held as a whole.
+ * The coordinates are built straight from the JSON numbers, with the y-coordinates
+ * inverted as they are read when the geometries are for the drawing pane.
+ * Features without a geometry are skipped.
+ */
+public class GeoJsonReader {
+
+    private final GeometryFactory geometryFactory;
+    private final boolean invertY;
+
+    /**
+     * Creates a reader.
+     * @param geometryFactory creates the geometries
+     * @param invertY true to negate the y-coordinates, as the models of the drawing
+     *     pane expect
+     */
+    public GeoJsonReader(final GeometryFactory geometryFactory, final boolean invertY) {
+        this.geometryFactory = geometryFactory;
+        this.invertY = invertY;
+    }
+
+    /**
+     * Reads the geometries of a GeoJSON text.
+     * @param json the text
+     * @param sink receives each geometry, in the order of the text
+     * @throws ParseException if the text is not valid GeoJSON
+     */
+    public final void read(final String json, final Consumer<Geometry> sink)
+            throws ParseException {
+        Map<String, Object> object = JsonParser.parseObject(json, "features",
+                feature -> readFeature(feature, sink));
+        String type = getType(object);
+        if (type.equals("FeatureCollection")) {
+            return;
+        }
+        if (type.equals("Feature")) {
+            readFeature(object, sink);
+        } else {
+            sink.accept(readGeometry(object));
+        }
+    }
+
+    private void readFeature(final Object feature, final Consumer<Geometry> sink)
+            throws ParseException {
+        if (!(feature instanceof Map) || !"Feature".equals(((Map<?, ?>) feature).get("type"))) {
+            throw new ParseException("Expected a GeoJSON Feature");
+        }
+        Object geometry = ((Map<?, ?>) feature).get("geometry");
+        if (geometry != null) {
+            sink.accept(readGeometry(geometry));
+        }
+    }
+
+    /**
+     * Builds a geometry from a GeoJSON geometry object.
+     * @param value the object
+     * @return the geometry
+     * @throws ParseException if the object is not a GeoJSON geometry, or its coordinates
+     *     do not make one, such as a ring that is not closed
+     */
+    private Geometry readGeometry(final Object value) throws ParseException {
+        try {
+            return buildGeometry(value);
+        } catch (IllegalArgumentException e) {
+            // the geometry factory checks rings and lines
+            throw new ParseException("Invalid GeoJSON geometry: " + e.getMessage());
+        }
+    }
+
+    private Geometry buildGeometry(final Object value) throws ParseException {
+        if (!(value instanceof Map)) {
+            throw new ParseException("Expected a GeoJSON geometry");
+        }
+        Map<?, ?> object = (Map<?, ?>) value;
+        String type = getType(object);
+        if (type.equals("GeometryCollection")) {
+            List<?> members = getList(object.get("geometries"), "geometries");
+            Geometry[] geometries = new Geometry[members.size()];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = readGeometry(members.get(i));
+            }
+            return geometryFactory.createGeometryCollection(geometries);
+        }
+        Object coordinates = object.get("coordinates");
+        switch (type) {
+            case "Point":
+                if (getList(coordinates, type).isEmpty()) {
+                    return geometryFactory.createPoint((Coordinate) null);
+                }
+                return geometryFactory.createPoint(readCoordinate(coordinates));
+            case "LineString":
+                return geometryFactory.createLineString(readCoordinates(coordinates));
+            case "Polygon":
+                return readPolygon(coordinates);
+            case "MultiPoint":
+                Coordinate[] points = readCoordinates(coordinates);
+                Point[] multiPoint = new Point[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    multiPoint[i] = geometryFactory.createPoint(points[i]);
+                }
+                return geometryFactory.createMultiPoint(multiPoint);
+            case "MultiLineString":
+                List<?> lineList = getList(coordinates, type);
+                LineString[] lines = new LineString[lineList.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = geometryFactory.createLineString(readCoordinates(lineList.get(i)));
+                }
+                return geometryFactory.createMultiLineString(lines);
+            case "MultiPolygon":
+                List<?> polygonList = getList(coordinates, type);
+                Polygon[] polygons = new Polygon[polygonList.size()];
+                for (int i = 0; i < polygons.length; i++) {
+                    polygons[i] = readPolygon(polygonList.get(i));
+                }
+                return geometryFactory.createMultiPolygon(polygons);
+            default:
+                throw new ParseException("Unknown GeoJSON geometry type " + type);
+        }
+    }
+
+    private Polygon readPolygon(final Object value) throws ParseException {
+        List<?> rings = getList(value, "Polygon");
+        if (rings.isEmpty()) {
+            return geometryFactory.createPolygon(null, null);
+        }
+        LinearRing shell = geometryFactory.createLinearRing(readCoordinates(rings.get(0)));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = geometryFactory.createLinearRing(readCoordinates(rings.get(i + 1)));
+        }
+        return geometryFactory.createPolygon(shell, holes);
+    }
+
+    private Coordinate[] readCoordinates(final Object value) throws ParseException {
+        List<?> positions = getList(value, "coordinates");
+        Coordinate[] coordinates = new Coordinate[positions.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = readCoordinate(positions.get(i));
+        }
+        return coordinates;
+    }
+
+    /**
+     * Reads a position, an array of x, y and optionally more ordinates, of which only
+     * x and y are kept.
+     */
+    private Coordinate readCoordinate(final Object value) throws ParseException {
+        List<?> position = getList(value, "position");
+        if (position.size() < 2 || !(position.get(0) instanceof Double)
+                || !(position.get(1) instanceof Double)) {
+            throw new ParseException("Invalid GeoJSON position " + value);
+        }
+        double y = (Double) position.get(1);
+        if (invertY) {
+            y = -y;
+        }
+        return new Coordinate((Double) position.get(0), y);
+    }
+
+    private static String getType(final Map<?, ?> object) throws ParseException {
+        Object type = object.get("type");
+        if (!(type instanceof String)) {
+            throw new ParseException("GeoJSON object without a type");
+        }
+        return (String) type;
+    }
+
+    private static List<?> getList(final Object value, final String name)
+            throws ParseException {
+        if (!(value instanceof List)) {
+            throw new ParseException("Expected an array for " + name + " in GeoJSON");
+        }
+        return (List<?>) value;
+    }
+}
@@ -0,0 +1,151 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Reads the geometry column of a result set, whether the database sends it as WKT text,
+ * as binary WKB, or as hex encoded (E)WKB which is what PostGIS returns for a plain
+ * geometry column. Binary columns are decoded straight from the bytes without
+ * going through a String.
+ * Binary columns hold TWKB instead of WKB when the query asked for compact transfer.
+ * One decoder is used per query, it is not thread safe.
+ * The time spent reading values from the driver and parsing them is added to the
+ * metrics of the query.
+ */
+public class GeometryDecoder {
+
+    private static final int HEX_RADIX = 16;
+
+    private final FastWktReader wktReader;
+    private final WKBReader wkbReader;
+    private final TwkbReader twkbReader;
+    private final QueryMetrics metrics;
+    private Boolean binaryColumn;
+    private boolean compact = false;
+
+    public GeometryDecoder() {
+        this(new QueryMetrics());
+    }
+
+    public GeometryDecoder(final QueryMetrics metrics) {
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+        this.wktReader = new FastWktReader(geometryFactory);
+        this.wkbReader = new WKBReader(geometryFactory);
+        this.twkbReader = new TwkbReader(geometryFactory);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets whether binary columns are read as TWKB instead of WKB.
+     * @param compact true for TWKB
+     */
+    public final void setCompact(final boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Decodes the geometry in a column of the current row.
+     * @param rs result set positioned on a row
+     * @param column index of the geometry column
+     * @return the geometry, or null if the value is SQL NULL
+     * @throws SQLException if the value could not be read
+     * @throws ParseException if the value is not a geometry
+     */
+    public final Geometry decode(final ResultSet rs, final int column)
+            throws SQLException, ParseException {
+        if (binaryColumn == null) {
+            binaryColumn = isBinaryType(rs.getMetaData().getColumnType(column));
+        }
+        long start = System.nanoTime();
+        if (binaryColumn) {
+            byte[] wkb = rs.getBytes(column);
+            metrics.addTime(QueryMetrics.Phase.FETCH, start);
+            return decodeBytes(wkb);
+        }
+        String text = rs.getString(column);
+        metrics.addTime(QueryMetrics.Phase.FETCH, start);
+        if (text == null) {
+            return null;
+        }
+        metrics.addBytes(text.length());
+        start = System.nanoTime();
+        try {
+            return decodeText(text);
+        } finally {
+            metrics.addTime(QueryMetrics.Phase.DECODE, start);
+        }
+    }
+
+    /**
+     * Decodes a geometry given as the raw bytes of a column, for example a value read
+     * from binary COPY output. The bytes are WKB, or TWKB with compact transfer; a text
+     * column arrives as its UTF-8 bytes, which never start with a WKB byte order byte.
+     * @param value the bytes of the value
+     * @return the geometry, or null if value is null
+     * @throws ParseException if the value is not a geometry
+     */
+    public final Geometry decodeBytes(final byte[] value) throws ParseException {
+        if (value == null) {
+            return null;
+        }
+        metrics.addBytes(value.length);
+        long start = System.nanoTime();
+        try {
+            if (compact) {
+                return twkbReader.read(value);
+            }
+            if (value.length > 0 && value[0] != 0 && value[0] != 1) {
+                return decodeText(new String(value, StandardCharsets.UTF_8));
+            }
+            return wkbReader.read(value);
+        } finally {
+            metrics.addTime(QueryMetrics.Phase.DECODE, start);
+        }
+    }
+
+    /**
+     * Decodes a geometry given as text, either WKT or hex encoded WKB.
+     * @param text the value
+     * @return the geometry, or null if text is null
+     * @throws ParseException if the value is not a geometry
+     */
+    public final Geometry decodeText(final String text) throws ParseException {
+        if (text == null) {
+            return null;
+        }
+        if (isHexWkb(text)) {
+            return wkbReader.read(WKBReader.hexToBytes(text));
+        }
+        return wktReader.read(text);
+    }
+
+    private static boolean isBinaryType(final int type) {
+        return type == Types.BINARY || type == Types.VARBINARY
+                || type == Types.LONGVARBINARY || type == Types.BLOB;
+    }
+
+    /**
+     * Checks for hex WKB, which starts with a byte order byte of 00 or 01.
+     * @param text value to check
+     * @return true if the text is hex encoded WKB
+     */
+    private static boolean isHexWkb(final String text) {
+        if (text.length() < 2 || text.length() % 2 != 0 || text.charAt(0) != '0'
+                || (text.charAt(1) != '0' && text.charAt(1) != '1')) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.digit(text.charAt(i), HEX_RADIX) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,362 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A layer query, scanned just enough to find the function that turns the geometry
+ * into text, for example ST_AsText(geom) in SELECT ST_AsText(geom) FROM roads.
+ * Used to rewrite the query, for example to ask for binary instead of text,
+ * to simplify the geometry, or to add a condition to its WHERE clause.
+ * Quoted strings, quoted identifiers, dollar quoted strings and comments are skipped
+ * while scanning, as SqlScript skips them.
+ */
+public class GeometryQuery {
+
+    private static final String[] TEXT_FUNCTIONS = {
+        "st_astext", "astext", "st_aswkt", "aswkt", "st_asewkt"};
+    /**
+     * Keywords that end a WHERE clause.
+     */
+    private static final String[] CLAUSES_AFTER_WHERE = {
+        "group", "having", "window", "order", "limit", "offset", "fetch", "for"};
+    private static final String[] SET_OPERATIONS = {"union", "intersect", "except"};
+    private static final String[] NOT_COLUMNS = {"from", "distinct", "all"};
+    /**
+     * Clauses that make the rows depend on each other, so that the query can not be
+     * answered in parts or summarised by an aggregate over its rows.
+     */
+    private static final String[] GROUPING_CLAUSES = {
+        "group", "having", "window", "limit", "offset", "fetch", "distinct"};
+
+    private final String sql;
+    private final boolean backslashEscapes;
+    private final List<Token> tokens = new ArrayList<>();
+    private Token textFunction;
+    private int argumentsStart = -1;
+    private int argumentsEnd = -1;
+
+    /**
+     * Scans a query.
+     * @param sql the query
+     * @param dialect dialect of the database, which tells how its strings are quoted,
+     *     or null for standard SQL
+     */
+    public GeometryQuery(final String sql, final SqlDialect dialect) {
+        this.sql = sql;
+        this.backslashEscapes = SqlScript.hasBackslashEscapes(dialect);
+        scan();
+        findTextFunction();
+    }
+
+    public final String getSql() {
+        return sql;
+    }
+
+    /**
+     * Checks if the geometry is selected through a text function such as ST_AsText.
+     * @return true if the function was found
+     */
+    public final boolean hasTextFunction() {
+        return textFunction != null;
+    }
+
+    /**
+     * Gets the name of the text function as written in the query.
+     * @return the function name, or null if there is none
+     */
+    public final String getTextFunction() {
+        if (textFunction == null) {
+            return null;
+        }
+        return sql.substring(textFunction.start, textFunction.end);
+    }
+
+    /**
+     * Gets the geometry expression passed to the text function, e.g. geom in ST_AsText(geom).
+     * Without a text function, the first selected column is used if it is a plain column
+     * name, e.g. geom in SELECT geom, name FROM roads.
+     * @return the expression, or null if it could not be found
+     */
+    public final String getGeometryExpression() {
+        if (textFunction != null) {
+            return sql.substring(argumentsStart, argumentsEnd).trim();
+        }
+        Token column = findGeometryColumn();
+        if (column == null) {
+            return null;
+        }
+        return column.text(sql);
+    }
+
+    /**
+     * Replaces the geometry expression, e.g. to simplify the geometry before it is sent.
+     * A plain geometry column keeps its name as an alias.
+     * @param expression the new expression, usually a function of the old one
+     * @return the rewritten query, or null if the geometry expression could not be found
+     */
+    public final String withGeometryExpression(final String expression) {
+        if (textFunction != null) {
+            return sql.substring(0, argumentsStart) + expression + sql.substring(argumentsEnd);
+        }
+        Token column = findGeometryColumn();
+        if (column == null) {
+            return null;
+        }
+        int next = tokens.indexOf(column) + 1;
+        String rest = sql.substring(column.end);
+        boolean hasAlias = next < tokens.size()
+                && sql.substring(column.end, tokens.get(next).start).trim().isEmpty()
+                && !"from".equalsIgnoreCase(tokens.get(next).text(sql));
+        if (hasAlias) {
+            return sql.substring(0, column.start) + expression + rest;
+        }
+        String name = column.text(sql);
+        name = name.substring(name.lastIndexOf('.') + 1);
+        return sql.substring(0, column.start) + expression + " AS " + name + rest;
+    }
+
+    /**
+     * Finds the first selected column, if it is a plain column name.
+     * @return the column, or null if the first column is an expression
+     */
+    private Token findGeometryColumn() {
+        int select = findKeyword("select", 0);
+        if (select < 0 || select + 1 >= tokens.size()) {
+            return null;
+        }
+        Token first = tokens.get(select + 1);
+        String after = "";
+        boolean call = false;
+        if (select + 2 < tokens.size()) {
+            Token next = tokens.get(select + 2);
+            after = sql.substring(first.end, next.start).trim();
+            // a function name followed by its arguments
+            call = after.isEmpty() && "(".equals(next.text(sql));
+        }
+        if (first.depth == 0 && (after.isEmpty() || ",".equals(after)) && !call
+                && !isKeyword(first.text(sql), NOT_COLUMNS)) {
+            return first;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a condition to the WHERE clause of the outermost query, creating the clause
+     * if there is none. The existing condition is kept in brackets, so that OR in it
+     * still applies only to itself.
+     * @param predicate condition to add
+     * @return the rewritten query, or null if the query can not be rewritten,
+     *     for example because it combines several queries with UNION
+     */
+    public final String withPredicate(final String predicate) {
+        for (String operation : SET_OPERATIONS) {
+            if (findKeyword(operation, 0) >= 0) {
+                return null;
+            }
+        }
+        int from = findKeyword("from", 0);
+        if (from < 0) {
+            return null;
+        }
+        int where = findKeyword("where", from);
+        int clauseEnd = findFirstKeyword(CLAUSES_AFTER_WHERE, Math.max(from, where));
+        int end = getStatementEnd();
+        if (clauseEnd >= 0) {
+            end = tokens.get(clauseEnd).start;
+        }
+        if (where < 0) {
+            return sql.substring(0, end).replaceAll("\\s+$", "")
+                    + " WHERE " + predicate + " " + sql.substring(end);
+        }
+        int conditionStart = tokens.get(where).end;
+        String condition = sql.substring(conditionStart, end).trim();
+        return sql.substring(0, conditionStart) + " (" + predicate + ") AND (" + condition
+                + ") " + sql.substring(end);
+    }
+
+    /**
+     * Replaces the selected columns with aggregates over all rows of the query,
+     * e.g. ST_Extent(geom), and drops ORDER BY. Used to learn about the result
+     * before fetching it, and to check that the query can be split into parts.
+     * @param selectList the new select list
+     * @return the rewritten query, or null if the rows of the query depend on each other,
+     *     for example because of GROUP BY, LIMIT, DISTINCT or UNION
+     */
+    public final String toAggregateQuery(final String selectList) {
+        for (String operation : SET_OPERATIONS) {
+            if (findKeyword(operation, 0) >= 0) {
+                return null;
+            }
+        }
+        int select = findKeyword("select", 0);
+        int from = findKeyword("from", select);
+        if (select < 0 || from < 0 || findFirstKeyword(GROUPING_CLAUSES, select) >= 0) {
+            return null;
+        }
+        int end = getStatementEnd();
+        int clauseEnd = findFirstKeyword(CLAUSES_AFTER_WHERE, from);
+        if (clauseEnd >= 0) {
+            end = tokens.get(clauseEnd).start;
+        }
+        return sql.substring(0, tokens.get(select).end) + " " + selectList + " "
+                + sql.substring(tokens.get(from).start, end).trim();
+    }
+
+    /**
+     * Finds where the statement ends, ignoring trailing semicolons.
+     * @return index after the last character of the statement
+     */
+    private int getStatementEnd() {
+        int end = sql.length();
+        while (end > 0 && (Character.isWhitespace(sql.charAt(end - 1))
+                || sql.charAt(end - 1) == ';')) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Finds a keyword outside brackets.
+     * @param keyword the keyword in lower case
+     * @param fromToken index of the token to start searching from
+     * @return index of the token, or -1 if not found
+     */
+    private int findKeyword(final String keyword, final int fromToken) {
+        return findFirstKeyword(new String[] {keyword}, fromToken);
+    }
+
+    private int findFirstKeyword(final String[] keywords, final int fromToken) {
+        for (int t = Math.max(0, fromToken); t < tokens.size(); t++) {
+            Token token = tokens.get(t);
+            if (token.depth == 0 && isKeyword(token.text(sql), keywords)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isKeyword(final String word, final String[] keywords) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        for (String keyword : keywords) {
+            if (keyword.equals(lower)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the text function with another function taking the same argument.
+     * @param function name of the new function, e.g. ST_AsBinary
+     * @return the rewritten query, or the original query if there is no text function
+     */
+    public final String withOutputFunction(final String function) {
+        if (textFunction == null) {
+            return sql;
+        }
+        return sql.substring(0, textFunction.start) + function + sql.substring(textFunction.end);
+    }
+
+    /**
+     * Replaces the text function with another function taking an extra argument after
+     * the geometry, e.g. the precision of ST_AsTWKB(geom, 3).
+     * @param function name of the new function
+     * @param argument the extra argument
+     * @return the rewritten query, or the original query if there is no text function
+     */
+    public final String withOutputFunction(final String function, final String argument) {
+        if (textFunction == null) {
+            return sql;
+        }
+        return sql.substring(0, textFunction.start) + function
+                + sql.substring(textFunction.end, argumentsEnd) + ", " + argument
+                + sql.substring(argumentsEnd);
+    }
+
+    /**
+     * Splits the query into words, remembering the bracket depth of each.
+     */
+    private void scan() {
+        int depth = 0;
+        int i = 0;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            int next = SqlScript.skip(sql, i, backslashEscapes);
+            if (next > i) {
+                i = next;
+            } else if (c == '(') {
+                tokens.add(new Token(i, i + 1, depth));
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                tokens.add(new Token(i, i + 1, depth));
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && (Character.isJavaIdentifierPart(sql.charAt(i))
+                        || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(start, i, depth));
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Finds the first text function call, and the brackets around its arguments.
+     */
+    private void findTextFunction() {
+        for (int t = 0; t + 1 < tokens.size(); t++) {
+            Token token = tokens.get(t);
+            Token next = tokens.get(t + 1);
+            if (isTextFunction(token.text(sql)) && "(".equals(next.text(sql))
+                    && sql.substring(token.end, next.start).trim().isEmpty()) {
+                int close = findClosingBracket(t + 1);
+                if (close >= 0) {
+                    textFunction = token;
+                    argumentsStart = next.end;
+                    argumentsEnd = tokens.get(close).start;
+                    return;
+                }
+            }
+        }
+    }
+
+    private int findClosingBracket(final int openIndex) {
+        int depth = tokens.get(openIndex).depth;
+        for (int t = openIndex + 1; t < tokens.size(); t++) {
+            Token token = tokens.get(t);
+            if (token.depth == depth && ")".equals(token.text(sql))) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isTextFunction(final String word) {
+        return isKeyword(word, TEXT_FUNCTIONS);
+    }
+
+    /**
+     * A word or bracket in the query.
+     */
+    private static final class Token {
+        private final int start;
+        private final int end;
+        private final int depth;
+
+        Token(final int start, final int end, final int depth) {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        String text(final String source) {
+            return source.substring(start, end);
+        }
+    }
+}
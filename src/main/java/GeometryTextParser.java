@@ -0,0 +1,188 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.InStream;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the text of the text area, finding out which format it is in: WKT or EWKT,
+ * one geometry or several on separate lines, GeoJSON, or hex encoded WKB or EWKB, one
+ * geometry per line. Each format is read straight into geometries, which go to the
+ * layer the same way whatever the format was; WKT is parsed on all cores by
+ * ParallelWktParser, and the features of a GeoJSON FeatureCollection are read one at
+ * a time.
+ */
+public class GeometryTextParser {
+
+    private static final int HEX_RADIX = 16;
+
+    /**
+     * The formats of geometry text.
+     */
+    public enum Format {
+        WKT, WKB_HEX, GEOJSON;
+
+        /**
+         * Finds the format of a text from its first characters. GeoJSON is an object,
+         * and hex WKB starts with a byte order byte of 00 or 01 and holds hex digits only;
+         * anything else is taken to be WKT.
+         * @param text the text
+         * @return the format
+         */
+        public static Format detect(final String text) {
+            int start = 0;
+            while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            if (text.startsWith("{", start)) {
+                return GEOJSON;
+            }
+            if (!text.startsWith("00", start) && !text.startsWith("01", start)) {
+                return WKT;
+            }
+            for (int i = start; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (!Character.isWhitespace(c) && Character.digit(c, HEX_RADIX) < 0) {
+                    return WKT;
+                }
+            }
+            return WKB_HEX;
+        }
+    }
+
+    private final String text;
+    private final Format format;
+    private ParallelWktParser wktParser;
+    private String geometryType;
+    private int topLevelGeometries = 0;
+
+    /**
+     * Finds the format of the text, and for WKT cuts it into the chunks parsed in
+     * parallel.
+     * @param text the text
+     * @throws ParseException if the text is WKT and its parentheses do not match
+     */
+    public GeometryTextParser(final String text) throws ParseException {
+        this.text = text;
+        this.format = Format.detect(text);
+        if (format == Format.WKT) {
+            wktParser = new ParallelWktParser(text);
+            geometryType = wktParser.getGeometryType();
+        }
+    }
+
+    public final Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the type of the text, as Geometry.getGeometryType names it. Known for WKT
+     * once the parser is created, and for the other formats once parse has returned.
+     * @return the type of the only geometry, or GeometryCollection for several
+     */
+    public final String getGeometryType() {
+        return geometryType;
+    }
+
+    /**
+     * Parses the text and splits the geometries into the single geometries a layer is
+     * drawn from, as WktParser.extractAllGeometries does.
+     * @return the single geometries, in the order of the text, with their y-coordinates
+     *     inverted for the drawing pane
+     * @throws ParseException if the text is not valid GeoJSON or WKB
+     * @throws IllegalArgumentException if the text is not valid WKT
+     */
+    public final List<Geometry> parse() throws ParseException {
+        if (format == Format.WKT) {
+            return wktParser.parse();
+        }
+        List<Geometry> result = new ArrayList<>();
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+        if (format == Format.GEOJSON) {
+            new GeoJsonReader(geometryFactory, true).read(text,
+                    geometry -> add(geometry, result));
+        } else {
+            WKBReader wkbReader = new WKBReader(geometryFactory);
+            List<Geometry> read = new ArrayList<>();
+            for (String line : text.split("\\s+")) {
+                if (!line.isEmpty()) {
+                    add(readWkb(wkbReader, line), read);
+                }
+            }
+            for (Geometry geometry : read) {
+                WktParser.invertYcoordinates(geometry);
+            }
+            result.addAll(read);
+        }
+        if (topLevelGeometries == 0) {
+            throw new ParseException("No geometry in " + format);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the hex WKB of one geometry. WKBReader reads zeros past the end of the bytes,
+     * so the bytes are checked to hold exactly one geometry, neither cut off nor
+     * followed by more.
+     */
+    private static Geometry readWkb(final WKBReader reader, final String hex)
+            throws ParseException {
+        if (hex.length() % 2 != 0) {
+            throw new ParseException("Odd number of hex digits in WKB " + hex);
+        }
+        WkbBytes bytes = new WkbBytes(WKBReader.hexToBytes(hex));
+        try {
+            Geometry geometry = reader.read(bytes);
+            bytes.checkEnd();
+            return geometry;
+        } catch (IOException e) {
+            throw new ParseException(e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the single geometries of a top-level geometry, and notes the type of the text.
+     */
+    private void add(final Geometry geometry, final List<Geometry> target) {
+        topLevelGeometries++;
+        if (topLevelGeometries == 1) {
+            geometryType = geometry.getGeometryType();
+        } else {
+            geometryType = "GeometryCollection";
+        }
+        WktParser.extractAllGeometries(geometry, target);
+    }
+
+    /**
+     * The bytes of one WKB geometry, failing on reads past their end.
+     */
+    private static final class WkbBytes implements InStream {
+        private final byte[] bytes;
+        private int position = 0;
+
+        WkbBytes(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void read(final byte[] target) throws IOException {
+            if (position + target.length > bytes.length) {
+                throw new IOException("WKB ends after " + bytes.length + " bytes");
+            }
+            System.arraycopy(bytes, position, target, 0, target.length);
+            position += target.length;
+        }
+
+        void checkEnd() throws IOException {
+            if (position < bytes.length) {
+                throw new IOException("WKB has " + (bytes.length - position)
+                        + " bytes after the geometry");
+            }
+        }
+    }
+}
@@ -8,6 +8,11 @@ import javafx.scene.shape.Circle;
 import models.GeometryModel;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by Johannes on 10.09.2015.
@@ -28,6 +33,7 @@ public class GisVisualization {
     private Color color;
     private ArrayList<GeometryModel> geometryModelList;
     private ArrayList<Circle> tooltips;
+    private Map<GeometryModel, List<Circle>> modelTooltips = new HashMap<>();
 
     private static ArrayList<Color> colors = new ArrayList<>();
 
@@ -75,8 +81,14 @@ public class GisVisualization {
         return this.geometryModelList;
     }
 
+    /**
+     * Removes all models, and their tooltips, from this visualization.
+     */
     public final void clearGeometryModelList() {
         geometryModelList.clear();
+        group.getChildren().removeAll(new HashSet<>(tooltips));
+        tooltips.clear();
+        modelTooltips.clear();
     }
 
     /**
@@ -119,18 +131,62 @@ public class GisVisualization {
         }
     }
 
+    /**
+     * Clears the canvas, leaving the tooltips in the plot view.
+     */
+    public static void clearCanvas() {
+        if (graphicsContext != null) {
+            graphicsContext.clearRect(0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+        }
+    }
+
     /**
      * Creates a geometry using the geometryModel class to delegate the drawing according to type.
      * Also creates tooltips and copies them in an original tooltip list
      */
     public final void create2DShapeAndTooltips() {
         tooltips.clear();
+        modelTooltips.clear();
         graphicsContext.setFill(this.color);
         graphicsContext.setStroke(this.color);
 
         for (GeometryModel gm : geometryModelList) {
-            tooltips.addAll(gm.drawAndCreateToolTips(graphicsContext));
+            List<Circle> circles = gm.drawAndCreateToolTips(graphicsContext);
+            tooltips.addAll(circles);
+            modelTooltips.put(gm, circles);
+        }
+    }
+
+    /**
+     * Creates the tooltips of models added to this visualization since its tooltips were
+     * created, without drawing anything.
+     * @param models models belonging to this visualization
+     * @return the created tooltips
+     */
+    public final List<Circle> createTooltips(final List<GeometryModel> models) {
+        List<Circle> created = new ArrayList<>();
+        for (GeometryModel gm : models) {
+            List<Circle> circles = gm.createToolTips();
+            created.addAll(circles);
+            modelTooltips.put(gm, circles);
         }
+        tooltips.addAll(created);
+        return created;
+    }
+
+    /**
+     * Creates the tooltips of the models that have none, for example models that were
+     * drawn while the layer was loading, when the loading stopped before it finished.
+     * @return the created tooltips
+     */
+    public final List<Circle> createMissingTooltips() {
+        List<GeometryModel> missing = new ArrayList<>();
+        for (GeometryModel gm : geometryModelList) {
+            if (!modelTooltips.containsKey(gm)) {
+                missing.add(gm);
+            }
+        }
+        return createTooltips(missing);
     }
 
     /**
@@ -141,7 +197,7 @@ public class GisVisualization {
         graphicsContext.setStroke(this.color);
 
         for (GeometryModel gm : geometryModelList) {
-            gm.drawAndCreateToolTips(graphicsContext);
+            gm.draw(graphicsContext);
         }
     }
 
@@ -149,15 +205,19 @@ public class GisVisualization {
      * Moves the tooltips according to current coordinates!
      * Tooltips are always equivalent to coordinates
      * Moved tooltips are added to the scene
+     * Models without tooltips, such as those of a layer still loading, are skipped.
      */
     public final void moveTooltips() {
         Coordinate[] coord;
-        int tooltipIndex = 0;
         for (GeometryModel gm : geometryModelList) {
+            List<Circle> circles = modelTooltips.get(gm);
+            if (circles == null) {
+                continue;
+            }
             coord = gm.getGeometry().getCoordinates();
-            for (int i = 0; i < coord.length; i++, tooltipIndex++) {
-                tooltips.get(tooltipIndex).setCenterX(coord[i].x);
-                tooltips.get(tooltipIndex).setCenterY(coord[i].y);
+            for (int i = 0; i < coord.length; i++) {
+                circles.get(i).setCenterX(coord[i].x);
+                circles.get(i).setCenterY(coord[i].y);
             }
         }
     }
@@ -214,8 +274,84 @@ public class GisVisualization {
         return clonedList;
     }
 
-    public final void addGeometry(final Geometry geometry) {
-        geometryModelList.add(GeometryModel.getModel(geometry, group));
+    /**
+     * Creates a model for the geometry and adds it to this visualization.
+     * @param geometry geometry to add
+     * @return the created model
+     */
+    public final GeometryModel addGeometry(final Geometry geometry) {
+        GeometryModel model = GeometryModel.getModel(geometry, group);
+        geometryModelList.add(model);
+        return model;
+    }
+
+    /**
+     * Adds models created for this visualization, for example on a background thread.
+     * @param models models to add
+     */
+    public final void addModels(final List<GeometryModel> models) {
+        geometryModelList.addAll(models);
+    }
+
+    /**
+     * Removes models from this visualization, for example the old shapes of features that
+     * changed. Their tooltips are removed at once; the models stay on the canvas until it
+     * is redrawn.
+     * @param models models to remove
+     */
+    public final void removeModels(final Set<GeometryModel> models) {
+        if (!models.isEmpty()) {
+            geometryModelList.removeIf(models::contains);
+            Set<Circle> removed = new HashSet<>();
+            for (GeometryModel gm : models) {
+                List<Circle> circles = modelTooltips.remove(gm);
+                if (circles != null) {
+                    removed.addAll(circles);
+                }
+            }
+            if (!removed.isEmpty()) {
+                tooltips.removeIf(removed::contains);
+                group.getChildren().removeAll(removed);
+            }
+        }
+    }
+
+    /**
+     * Replaces the models of this visualization by the given ones, in their order. The
+     * tooltips of the models that stay are kept.
+     * @param models the new models, which may include current ones
+     */
+    public final void replaceModels(final List<GeometryModel> models) {
+        Set<GeometryModel> removed = new HashSet<>(geometryModelList);
+        for (GeometryModel gm : models) {
+            removed.remove(gm);
+        }
+        removeModels(removed);
+        geometryModelList.clear();
+        geometryModelList.addAll(models);
+    }
+
+    /**
+     * Makes room for a number of models, so a layer filled with a large result does not
+     * grow its list many times.
+     * @param count the number of models expected
+     */
+    public final void ensureCapacity(final int count) {
+        geometryModelList.ensureCapacity(count);
+    }
+
+    /**
+     * Draws the given models on top of the canvas, without creating tooltips.
+     * Used to show geometries while a layer is still being loaded.
+     * @param models models belonging to this visualization
+     */
+    public final void drawModels(final List<GeometryModel> models) {
+        graphicsContext.setFill(this.color);
+        graphicsContext.setStroke(this.color);
+
+        for (GeometryModel gm : models) {
+            gm.draw(graphicsContext);
+        }
     }
 
     public final boolean containsInvalidGeometries() {
@@ -0,0 +1,284 @@
+import com.vividsolutions.jts.io.ParseException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads JSON text into plain Java values: objects become a Map keeping the order of
+ * their members, arrays a List, numbers a Double, and true, false and null a Boolean
+ * or null. Enough for query plans and GeoJSON, without a JSON library.
+ * The elements of a large array, such as the features of a GeoJSON FeatureCollection,
+ * can be handed over one at a time instead of being collected.
+ */
+public final class JsonParser {
+
+    private static final int HEX_RADIX = 16;
+    private static final int UNICODE_DIGITS = 4;
+
+    private final String json;
+    private int position = 0;
+    private String streamedMember;
+    private ElementHandler handler;
+    private int streamedObject = -1;
+
+    /**
+     * Receives the elements of a streamed array one at a time.
+     */
+    public interface ElementHandler {
+        /**
+         * Handles one element.
+         * @param element the value of the element
+         * @throws ParseException to stop reading
+         */
+        void accept(Object element) throws ParseException;
+    }
+
+    private JsonParser(final String json) {
+        this.json = json;
+    }
+
+    /**
+     * Reads a JSON value.
+     * @param json the text
+     * @return the value
+     * @throws ParseException if the text is not valid JSON
+     */
+    public static Object parse(final String json) throws ParseException {
+        JsonParser parser = new JsonParser(json);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position < json.length()) {
+            throw parser.error("Unexpected text after JSON value");
+        }
+        return value;
+    }
+
+    /**
+     * Reads a JSON object, handing each element of one of its array members to the
+     * handler as soon as the element is read. The elements are not kept, so a large
+     * array is never held as a whole.
+     * @param json the text
+     * @param member name of the array member of the outermost object to stream
+     * @param elementHandler receives the elements, in order
+     * @return the object, without the streamed member
+     * @throws ParseException if the text is not a valid JSON object
+     */
+    public static Map<String, Object> parseObject(final String json, final String member,
+                                                  final ElementHandler elementHandler)
+            throws ParseException {
+        JsonParser parser = new JsonParser(json);
+        parser.skipWhitespace();
+        if (parser.position >= json.length() || json.charAt(parser.position) != '{') {
+            throw parser.error("Expected a JSON object");
+        }
+        parser.streamedMember = member;
+        parser.handler = elementHandler;
+        parser.streamedObject = parser.position;
+        Map<String, Object> object = parser.readObject();
+        parser.skipWhitespace();
+        if (parser.position < json.length()) {
+            throw parser.error("Unexpected text after JSON value");
+        }
+        return object;
+    }
+
+    private Object readValue() throws ParseException {
+        skipWhitespace();
+        if (position >= json.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        char c = json.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() throws ParseException {
+        Map<String, Object> object = new LinkedHashMap<>();
+        boolean streaming = position == streamedObject;
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            String name = readString();
+            skipWhitespace();
+            if (peek() != ':') {
+                throw error("Expected ':'");
+            }
+            position++;
+            skipWhitespace();
+            if (streaming && name.equals(streamedMember) && peek() == '[') {
+                streamArray();
+            } else {
+                object.put(name, readValue());
+            }
+            skipWhitespace();
+            char c = peek();
+            position++;
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() throws ParseException {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            char c = peek();
+            position++;
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Reads the streamed array, handing its elements to the handler. Objects inside
+     * the elements are read as usual.
+     */
+    private void streamArray() throws ParseException {
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return;
+        }
+        while (true) {
+            handler.accept(readValue());
+            skipWhitespace();
+            char c = peek();
+            position++;
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws ParseException {
+        position++;
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            char c = peek();
+            position++;
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append(c);
+                continue;
+            }
+            char escaped = peek();
+            position++;
+            switch (escaped) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    if (position + UNICODE_DIGITS > json.length()) {
+                        throw error("Unexpected end of JSON");
+                    }
+                    try {
+                        text.append((char) Integer.parseInt(
+                                json.substring(position, position + UNICODE_DIGITS), HEX_RADIX));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += UNICODE_DIGITS;
+                    break;
+                default:
+                    text.append(escaped);
+            }
+        }
+    }
+
+    private Double readNumber() throws ParseException {
+        int start = position;
+        while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(json.substring(start, position));
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Invalid JSON value");
+        }
+    }
+
+    private void expect(final String word) throws ParseException {
+        if (!json.startsWith(word, position)) {
+            throw error("Invalid JSON value");
+        }
+        position += word.length();
+    }
+
+    private char peek() throws ParseException {
+        if (position >= json.length()) {
+            throw error("Unexpected end of JSON");
+        }
+        return json.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    private ParseException error(final String message) {
+        return new ParseException(message + " at character " + position);
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Starts the application from the class path, for example from the jar with
+ * dependencies. JavaFX is a library since Java 11, and launching a class that extends
+ * Application directly from the class path fails with "JavaFX runtime components are
+ * missing", so the main class must not extend it.
+ */
+public final class Launcher {
+
+    private Launcher() { }
+
+    public static void main(final String[] args) {
+        Main.main(args);
+    }
+}
@@ -22,9 +22,12 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import models.GeometryModel;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by Johannes on 10.09.2015.
@@ -39,6 +42,11 @@ public class Layer extends HBox {
     private String name;                       //Name of the layers
     private String wktString;                  //Original WKT string entered for this layer
     private String queryString;                //Original SQL Query
+    private Database queryDatabase;            //Database the query was last sent to
+    private QueryOptions queryOptions;         //Options the query was last sent with
+    private QueryMetrics queryMetrics;         //Phase timings of the last query
+    private QueryPlan queryPlan;               //Server plan of the last query, if explained
+    private LiveLayer liveLayer;               //Keeps the layer up to date, if live
     private TextArea textArea;
     private TextArea queryArea;
     private LayerSelectedProperty isSelected;
@@ -246,6 +254,7 @@ public class Layer extends HBox {
 
 
     public final void deleteLayer() {
+        setLiveLayer(null);
         layers.remove(this);
         reorderLayers();
         textArea.setText("");
@@ -381,6 +390,28 @@ public class Layer extends HBox {
         }
     }
 
+    /**
+     * Redraws all geometries after models of this layer were replaced, creating tooltips
+     * only for the added models. Unlike redrawAll, the tooltips of the other models and
+     * layers are kept; those of removed models are removed with the models.
+     * @param added models just added to this layer's GisVisualization
+     */
+    public final void redrawChanged(final List<GeometryModel> added) {
+        GisVisualization.clearCanvas();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer layer = layers.get(i);
+            if (layer.showOrHideCheckbox.isSelected() && layer.gisVis != null) {
+                layer.gisVis.redraw2DShape();
+            }
+        }
+        if (showOrHideCheckbox.isSelected() && gisVis != null) {
+            List<Circle> created = gisVis.createTooltips(added);
+            if (isSelected.get()) {
+                GisVisualization.getGroup().getChildren().addAll(created);
+            }
+        }
+    }
+
     /**
      * Redraws the current GisVisualization if it is checked.
      * Delegates the tasks further to GisVisualization
@@ -391,6 +422,30 @@ public class Layer extends HBox {
         }
     }
 
+    /**
+     * Draws models that were just added to this layer, if it is checked.
+     * @param models models belonging to this layer's GisVisualization
+     */
+    public final void drawModels(final List<GeometryModel> models) {
+        if (showOrHideCheckbox.isSelected()) {
+            this.gisVis.drawModels(models);
+        }
+    }
+
+    /**
+     * Creates the tooltips of models that were drawn without them, if the layer is
+     * checked, and shows them if the layer is selected.
+     * Used when a layer stops loading before it is finished.
+     */
+    public final void completeTooltips() {
+        if (showOrHideCheckbox.isSelected() && gisVis != null) {
+            List<Circle> created = gisVis.createMissingTooltips();
+            if (isSelected.get()) {
+                GisVisualization.getGroup().getChildren().addAll(created);
+            }
+        }
+    }
+
     /**
      * Checks or unchecks all the selected layers.
      * This is useful for showing/hiding several layers at once.
@@ -467,10 +522,93 @@ public class Layer extends HBox {
     public final void setWKTString(final String wktString) {
         this.wktString = wktString;
     }
+
+    public final String getWKTString() {
+        return this.wktString;
+    }
     public final void setSQLQuery(final String queryString) {
         this.queryString = queryString;
     }
 
+    public final String getSQLQuery() {
+        return this.queryString;
+    }
+
+    /**
+     * Remembers where the layer's query was sent, so it can be sent again
+     * when the view changes.
+     * @param database the database queried
+     * @param options the options the query was sent with
+     */
+    public final void setQuerySource(final Database database, final QueryOptions options) {
+        this.queryDatabase = database;
+        this.queryOptions = options;
+    }
+
+    /**
+     * Sets what keeps the layer up to date with its query, stopping the previous one.
+     * @param live the started live layer, or null to stop refreshing
+     */
+    public final void setLiveLayer(final LiveLayer live) {
+        if (this.liveLayer != null) {
+            this.liveLayer.stop();
+        }
+        this.liveLayer = live;
+    }
+
+    public final LiveLayer getLiveLayer() {
+        return this.liveLayer;
+    }
+
+    public final Database getQueryDatabase() {
+        return this.queryDatabase;
+    }
+
+    public final QueryOptions getQueryOptions() {
+        return this.queryOptions;
+    }
+
+    /**
+     * Shows the timings and counters of the layer's last query in a tooltip on its name.
+     * @param metrics the metrics of the query
+     */
+    public final void setQueryMetrics(final QueryMetrics metrics) {
+        this.queryMetrics = metrics;
+        this.queryPlan = null;
+        updateQueryTooltip();
+    }
+
+    public final QueryMetrics getQueryMetrics() {
+        return this.queryMetrics;
+    }
+
+    /**
+     * Shows the server times and warnings of the layer's query plan with its timings.
+     * @param plan the plan of the layer's query
+     */
+    public final void setQueryPlan(final QueryPlan plan) {
+        this.queryPlan = plan;
+        updateQueryTooltip();
+    }
+
+    public final QueryPlan getQueryPlan() {
+        return this.queryPlan;
+    }
+
+    private void updateQueryTooltip() {
+        StringBuilder text = new StringBuilder();
+        if (queryMetrics != null) {
+            text.append(queryMetrics);
+        }
+        if (queryPlan != null) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(queryPlan);
+        }
+        layerName.setTooltip(new Tooltip(text.toString()));
+    }
+
     public static Layer getSelectedLayer() {
         if (getNumberOfSelectedLayers() == 1) {
             return getAllSelectedLayers(false).get(0);
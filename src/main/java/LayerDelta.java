@@ -0,0 +1,106 @@
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The features of a live layer that changed since it was last refreshed, found by
+ * comparing the id and version of each row with the versions the layer already shows.
+ * Only rows with a new id or a new version need their geometry decoded; ids that are no
+ * longer returned are features that were deleted.
+ */
+public class LayerDelta {
+
+    private final Map<String, String> known;
+    private final Set<String> seen = new HashSet<>();
+    private final Map<String, Geometry> changed = new LinkedHashMap<>();
+    private final Map<String, String> changedVersions = new HashMap<>();
+    private final List<String> removed = new ArrayList<>();
+    private boolean complete = false;
+
+    /**
+     * Creates an empty delta.
+     * @param known the version of each feature the layer shows, by id; not changed here
+     */
+    public LayerDelta(final Map<String, String> known) {
+        this.known = known;
+    }
+
+    /**
+     * Records that the query returned a row, and tells whether its geometry must be
+     * decoded. A row without a version is always taken as changed.
+     * @param id the id of the row
+     * @param version the version of the row, may be null
+     * @return true if the feature is new or its version differs from the one shown
+     */
+    public final boolean needsGeometry(final String id, final String version) {
+        seen.add(id);
+        return version == null || !version.equals(known.get(id));
+    }
+
+    /**
+     * Adds an inserted or updated feature.
+     * @param id the id of the feature
+     * @param version its version
+     * @param geometry its geometry
+     */
+    public final void addChanged(final String id, final String version, final Geometry geometry) {
+        changed.put(id, geometry);
+        changedVersions.put(id, version);
+    }
+
+    /**
+     * Finds the deleted features, once every row of the query has been read.
+     * A query that failed or was cancelled must not be completed, since the rows it did
+     * not return would be taken as deleted.
+     */
+    public final void complete() {
+        for (String id : known.keySet()) {
+            if (!seen.contains(id)) {
+                removed.add(id);
+            }
+        }
+        complete = true;
+    }
+
+    public final boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gets the geometries of the inserted and updated features.
+     * @return the geometries by id, in the order the rows arrived
+     */
+    public final Map<String, Geometry> getChanged() {
+        return Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * Gets the ids of the deleted features.
+     * @return the ids
+     */
+    public final List<String> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public final boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Brings a map of versions up to date with this delta.
+     * @param versions the version of each feature by id, typically the known versions
+     */
+    public final void applyTo(final Map<String, String> versions) {
+        versions.putAll(changedVersions);
+        for (String id : removed) {
+            versions.remove(id);
+        }
+    }
+}
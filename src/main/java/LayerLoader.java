@@ -0,0 +1,208 @@
+import com.vividsolutions.jts.geom.Geometry;
+import javafx.application.Platform;
+import javafx.scene.layout.AnchorPane;
+import models.GeometryModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Fills a layer with geometries arriving on a background thread, for example rows
+ * streamed from a query. The models of the geometries are created on that thread and
+ * handed to the JavaFX thread in batches, which only places and draws them as they
+ * arrive, so the layer fills in progressively.
+ * At most a few batches wait for the JavaFX thread at any time; when it falls behind
+ * the producing thread blocks, which keeps memory use bounded.
+ * The time spent creating and drawing models is added to the loader's metrics.
+ */
+public class LayerLoader implements Consumer<Geometry> {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_PENDING_BATCHES = 4;
+    /**
+     * Results with more rows than this are not kept as WKT text in the layer.
+     */
+    private static final int MAX_TEXT_GEOMETRIES = 1000;
+    /**
+     * Results with more vertices than this are not kept as WKT text either, so a single
+     * huge geometry read from a file is not copied into a string.
+     */
+    private static final long MAX_TEXT_VERTICES = 100000;
+
+    private final Layer layer;
+    private final WktParser wktParser;
+    private final AnchorPane group;
+    private final DisplayController displayController;
+    private final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+
+    private List<Geometry> batch = new ArrayList<>(BATCH_SIZE);
+    private List<String> texts = new ArrayList<>();
+    private String geometryType;
+    private long textVertices = 0;
+    private boolean started = false;
+    private volatile int expectedRows = 0;
+    private volatile boolean discarded = false;
+    /**
+     * Whether the layer has models of this loader but not their tooltips yet.
+     * Used on the JavaFX thread only.
+     */
+    private boolean updating = false;
+    private QueryMetrics metrics = new QueryMetrics();
+
+    public LayerLoader(final Layer layer, final AnchorPane group,
+                       final DisplayController displayController) {
+        this.layer = layer;
+        this.wktParser = new WktParser(layer, group);
+        this.group = group;
+        this.displayController = displayController;
+    }
+
+    public final Layer getLayer() {
+        return layer;
+    }
+
+    public final QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    public final void setMetrics(final QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Tells the loader how many rows are coming, so the layer can make room for them
+     * at once and a result too large to edit is not collected as text.
+     * Called from the producing thread before the first row.
+     * @param rows the expected number of rows
+     */
+    public final void setExpectedRows(final long rows) {
+        expectedRows = (int) Math.min(rows, Integer.MAX_VALUE);
+        if (rows > MAX_TEXT_GEOMETRIES) {
+            texts = null;
+        }
+    }
+
+    /**
+     * Stops handing geometries to the layer, used when a newer query replaces this one.
+     * Batches already waiting for the JavaFX thread are dropped, and the models already
+     * added get their tooltips.
+     */
+    public final void discard() {
+        discarded = true;
+        Platform.runLater(() -> {
+            if (updating) {
+                updating = false;
+                layer.completeTooltips();
+            }
+        });
+    }
+
+    /**
+     * Receives one geometry from the producing thread.
+     * @param geometry geometry to add to the layer
+     */
+    @Override
+    public final void accept(final Geometry geometry) {
+        if (geometryType == null) {
+            geometryType = geometry.getGeometryType();
+        } else if (!geometryType.equals(geometry.getGeometryType())) {
+            geometryType = "GeometryCollection";
+        }
+        if (texts != null) {
+            textVertices += geometry.getNumPoints();
+            if (texts.size() < MAX_TEXT_GEOMETRIES && textVertices <= MAX_TEXT_VERTICES) {
+                texts.add(geometry.toText());
+            } else {
+                texts = null;
+            }
+        }
+        metrics.addVertices(geometry.getNumPoints());
+        WktParser.extractAllGeometries(geometry, batch);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Creates the models of the current batch and hands them to the JavaFX thread,
+     * waiting if too many batches are pending.
+     */
+    private void flush() {
+        final boolean first = !started;
+        long start = System.nanoTime();
+        final List<GeometryModel> models = WktParser.createModels(batch, group);
+        metrics.addTime(QueryMetrics.Phase.MODEL, start);
+        batch = new ArrayList<>(BATCH_SIZE);
+        started = true;
+        try {
+            pendingBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        Platform.runLater(() -> {
+            try {
+                if (discarded) {
+                    return;
+                }
+                if (first) {
+                    updating = true;
+                    wktParser.beginLayerUpdate();
+                    layer.getGisVis().ensureCapacity(expectedRows);
+                    layer.reorderLayers();
+                }
+                long placed = System.nanoTime();
+                layer.getGisVis().addModels(models);
+                displayController.transformModels(models);
+                metrics.addTime(QueryMetrics.Phase.MODEL, placed);
+                metrics.addModels(models.size());
+                long drawn = System.nanoTime();
+                layer.drawModels(models);
+                metrics.addTime(QueryMetrics.Phase.DRAW, drawn);
+            } finally {
+                pendingBatches.release();
+            }
+        });
+    }
+
+    /**
+     * Sends the remaining geometries and finishes the layer once the producer is done.
+     * @param onFinished run on the JavaFX thread after the layer is complete, may be null
+     */
+    public final void finish(final Runnable onFinished) {
+        flush();
+        final String wkt = getWktText();
+        final String type = geometryType;
+        Platform.runLater(() -> {
+            if (discarded) {
+                return;
+            }
+            updating = false;
+            long start = System.nanoTime();
+            wktParser.finishLayerUpdate(wkt, type);
+            metrics.addTime(QueryMetrics.Phase.DRAW, start);
+            if (layer.getGisVis() != null) {
+                metrics.addTooltips(layer.getGisVis().getTooltips().size());
+            }
+            if (onFinished != null) {
+                onFinished.run();
+            }
+        });
+    }
+
+    /**
+     * Builds the WKT shown for the layer, when the result is small enough to be edited.
+     * @return the WKT of the received geometries, or null if there were too many
+     */
+    private String getWktText() {
+        if (texts == null || texts.isEmpty()) {
+            return null;
+        }
+        if (texts.size() == 1) {
+            return texts.get(0);
+        }
+        return "GEOMETRYCOLLECTION(" + String.join(", ", texts) + ")";
+    }
+}
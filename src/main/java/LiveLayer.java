@@ -0,0 +1,196 @@
+import com.vividsolutions.jts.geom.Geometry;
+import javafx.application.Platform;
+import javafx.scene.layout.AnchorPane;
+import models.GeometryModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a layer up to date with a table that changes, by sending its query again at a
+ * fixed interval. The query returns the geometry in the first column, a unique id in the
+ * second and a version or timestamp in the third, for example
+ * SELECT ST_AsText(geom), id, updated_at FROM vehicles.
+ * A refresh only decodes the geometries of rows whose version changed and creates their
+ * models in the background, and only replaces the models of inserted, updated and
+ * deleted features, so its cost follows the size of the change rather than the size of
+ * the table.
+ */
+public class LiveLayer {
+
+    private static final Logger LOGGER = Logger.getLogger(LiveLayer.class.getName());
+
+    private final Layer layer;
+    private final String query;
+    private final Database database;
+    private final QueryOptions options;
+    private final AnchorPane group;
+    private final DisplayController displayController;
+    private final QueryHandle handle = new QueryHandle();
+    /**
+     * Version of each feature shown, by id. Used by the refreshing thread only.
+     */
+    private final Map<String, String> versions = new HashMap<>();
+    /**
+     * Models of each feature shown, by id. Used on the JavaFX thread only.
+     */
+    private final Map<String, List<GeometryModel>> models = new HashMap<>();
+    private ScheduledFuture<?> schedule;
+    private long intervalSeconds;
+    private boolean filled = false;
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates a live layer, which does nothing until it is started.
+     * @param layer the layer to keep up to date, its current geometries are replaced
+     * @param query the query, returning geometry, id and version
+     * @param database the database to send it to
+     * @param options options of the query, not changed afterwards
+     * @param group the pane the layer is drawn in
+     * @param displayController places new models in the current view
+     */
+    public LiveLayer(final Layer layer, final String query, final Database database,
+                     final QueryOptions options, final AnchorPane group,
+                     final DisplayController displayController) {
+        this.layer = layer;
+        this.query = query;
+        this.database = database;
+        this.options = options;
+        this.group = group;
+        this.displayController = displayController;
+    }
+
+    /**
+     * Sends the query at once, and then again each time the interval has passed since
+     * the last refresh was drawn.
+     * @param seconds the refresh interval
+     */
+    public final void start(final long seconds) {
+        intervalSeconds = seconds;
+        schedule = QueryExecutor.scheduleWithFixedDelay(this::refresh, seconds);
+    }
+
+    /**
+     * Stops refreshing and cancels a refresh that is running. The layer keeps the
+     * geometries it has.
+     */
+    public final void stop() {
+        stopped = true;
+        handle.cancel();
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+    }
+
+    public final long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Sends the query and hands the changes to the JavaFX thread, waiting until they are
+     * drawn, so that refreshes do not pile up when drawing falls behind.
+     * Runs on a background thread; a failed refresh is logged and tried again at the
+     * next interval.
+     */
+    private void refresh() {
+        QueryMetrics metrics = new QueryMetrics();
+        LayerDelta delta = new LayerDelta(versions);
+        QueryResult result = DatabaseConnector.streamChanges(query, database, options, delta,
+                handle, metrics);
+        if (stopped) {
+            return;
+        }
+        if (!result.isSuccess() || !delta.isComplete()) {
+            LOGGER.log(Level.WARNING, "Could not refresh layer " + layer.getLayerName() + ": "
+                    + result.getError());
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, List<GeometryModel>> created = new HashMap<>();
+        for (Map.Entry<String, Geometry> feature : delta.getChanged().entrySet()) {
+            metrics.addVertices(feature.getValue().getNumPoints());
+            List<Geometry> parts = new ArrayList<>();
+            WktParser.extractAllGeometries(feature.getValue(), parts);
+            created.put(feature.getKey(), WktParser.createModels(parts, group));
+        }
+        metrics.addTime(QueryMetrics.Phase.MODEL, start);
+        FutureTask<Void> applied = new FutureTask<>(() -> apply(delta, created, metrics), null);
+        Platform.runLater(applied);
+        try {
+            applied.get();
+            // only now the layer shows the new versions; after a failed draw the
+            // changed features are fetched and drawn again at the next refresh
+            delta.applyTo(versions);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Could not draw changes of layer "
+                    + layer.getLayerName(), e.getCause());
+        }
+    }
+
+    /**
+     * Replaces the models of the features in the delta and redraws the canvas if anything
+     * changed, creating tooltips only for the new models. The first refresh replaces the
+     * geometries the layer had before.
+     * @param delta the changes
+     * @param created the models of the inserted and updated features, by id
+     * @param metrics metrics of the refresh
+     */
+    private void apply(final LayerDelta delta, final Map<String, List<GeometryModel>> created,
+                       final QueryMetrics metrics) {
+        if (stopped) {
+            return;
+        }
+        long start = System.nanoTime();
+        WktParser wktParser = new WktParser(layer, group);
+        boolean first = !filled;
+        if (first) {
+            wktParser.beginLayerUpdate();
+            filled = true;
+        }
+        Set<GeometryModel> replaced = new HashSet<>();
+        for (String id : delta.getRemoved()) {
+            removeFeature(id, replaced);
+        }
+        List<GeometryModel> added = new ArrayList<>();
+        String geometryType = null;
+        for (Map.Entry<String, Geometry> feature : delta.getChanged().entrySet()) {
+            removeFeature(feature.getKey(), replaced);
+            geometryType = feature.getValue().getGeometryType();
+            List<GeometryModel> featureModels = created.get(feature.getKey());
+            models.put(feature.getKey(), featureModels);
+            added.addAll(featureModels);
+        }
+        layer.getGisVis().removeModels(replaced);
+        layer.getGisVis().addModels(added);
+        displayController.transformModels(added);
+        metrics.addTime(QueryMetrics.Phase.MODEL, start);
+        metrics.addModels(added.size());
+        start = System.nanoTime();
+        if (first) {
+            wktParser.finishLayerUpdate(null, geometryType);
+        } else if (!delta.isEmpty()) {
+            layer.redrawChanged(added);
+        }
+        metrics.addTime(QueryMetrics.Phase.DRAW, start);
+        metrics.addTooltips(layer.getGisVis().getTooltips().size());
+        layer.setQueryMetrics(metrics);
+    }
+
+    private void removeFeature(final String id, final Set<GeometryModel> removed) {
+        List<GeometryModel> old = models.remove(id);
+        if (old != null) {
+            removed.addAll(old);
+        }
+    }
+}
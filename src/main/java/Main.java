@@ -50,9 +50,17 @@ public class Main extends Application {
 
         //Create an initial empty layer
         controller.createEmptyLayer();
+
+        //Connect to the databases in the configuration file, if it asks for it
+        controller.warmUpFromConfig();
     }
 
 
+    @Override
+    public final void stop() {
+        ConnectionPool.shutdownAll();
+    }
+
     public static void main(final String[] args) {
         launch(args);
     }
@@ -0,0 +1,315 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import javafx.scene.layout.AnchorPane;
+import models.GeometryModel;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses WKT on the fork-join pool. The text is cut into chunks where a cut can not fall
+ * inside a geometry: between the members of a GEOMETRYCOLLECTION or MULTI* geometry, or
+ * between geometries on separate lines. The chunks are parsed, and the models of the
+ * geometries created, on all cores; the results are joined in the order of the text, so
+ * the layer is the same as when parsing on one thread.
+ */
+public class ParallelWktParser {
+
+    /**
+     * Characters of WKT parsed by one task. Smaller text is parsed on the calling thread.
+     */
+    private static final int CHUNK_CHARS = 65536;
+    /**
+     * Geometries one task creates models for.
+     */
+    private static final int MODEL_BATCH = 1000;
+
+    private static final String SRID = "SRID";
+
+    private static final Map<String, String> TYPE_NAMES = new HashMap<>();
+
+    static {
+        for (String name : new String[] {"Point", "LineString", "LinearRing", "Polygon",
+                "MultiPoint", "MultiLineString", "MultiPolygon", "GeometryCollection"}) {
+            TYPE_NAMES.put(name.toUpperCase(Locale.ROOT), name);
+        }
+    }
+
+    private final String wkt;
+    private final List<String> chunks = new ArrayList<>();
+    private String geometryType;
+
+    /**
+     * Cuts the text into chunks.
+     * @param wkt one geometry, or several separated by newlines, commas or semicolons;
+     *     each may be EWKT with an SRID=n; prefix
+     * @throws ParseException if the parentheses of the text do not match
+     */
+    public ParallelWktParser(final String wkt) throws ParseException {
+        this.wkt = wkt;
+        split();
+    }
+
+    /**
+     * Gets the type of the text, as Geometry.getGeometryType names it.
+     * @return the type of the only geometry, or GeometryCollection for several
+     */
+    public final String getGeometryType() {
+        return geometryType;
+    }
+
+    public final int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Parses the chunks and splits the geometries into the single geometries a layer is
+     * drawn from, as WktParser.extractAllGeometries does.
+     * @return the single geometries, in the order of the text, with their y-coordinates
+     *     inverted for the drawing pane
+     * @throws IllegalArgumentException if the text is not valid WKT
+     */
+    public final List<Geometry> parse() {
+        if (chunks.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ParseTask(0, chunks.size()).invoke();
+    }
+
+    /**
+     * Creates the models of geometries on the fork-join pool, as WktParser.createModels
+     * does on one thread.
+     * @param geometries geometries returned by parse, their y-coordinates already
+     *     inverted
+     * @param group the pane the models will be drawn in
+     * @return the models, in the order of the geometries
+     */
+    public static List<GeometryModel> createModels(final List<Geometry> geometries,
+                                                   final AnchorPane group) {
+        return new ModelTask(geometries, group, 0, geometries.size()).invoke();
+    }
+
+    /**
+     * Finds the geometries of the text, and cuts a single large collection between its
+     * members. Consecutive pieces are put in one chunk up to the chunk size.
+     */
+    private void split() throws ParseException {
+        List<int[]> records = findRecords();
+        if (records.isEmpty()) {
+            throw new ParseException("No geometry in WKT");
+        }
+        int[] first = records.get(0);
+        String keyword = keyword(first[0]);
+        geometryType = TYPE_NAMES.get(keyword);
+        if (records.size() > 1) {
+            geometryType = "GeometryCollection";
+        }
+        if (records.size() == 1 && first[1] - first[0] > CHUNK_CHARS
+                && (keyword.equals("GEOMETRYCOLLECTION") || keyword.startsWith("MULTI"))) {
+            splitMembers(first[0], first[1]);
+            return;
+        }
+        int start = first[0];
+        for (int i = 0; i < records.size(); i++) {
+            int end = records.get(i)[1];
+            boolean last = i == records.size() - 1;
+            if (last || records.get(i + 1)[1] - start > CHUNK_CHARS) {
+                chunks.add(wkt.substring(start, end));
+                if (!last) {
+                    start = records.get(i + 1)[0];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds where each top-level geometry starts and ends. A geometry ends at its closing
+     * parenthesis, or for an EMPTY geometry at the next comma, semicolon or newline.
+     */
+    private List<int[]> findRecords() throws ParseException {
+        List<int[]> records = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        for (int i = 0; i < wkt.length(); i++) {
+            char c = wkt.charAt(i);
+            if (start < 0 && depth == 0 && c != ',' && c != ';'
+                    && !Character.isWhitespace(c)) {
+                start = i;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth < 0) {
+                    throw new ParseException("Unbalanced parentheses at character " + i);
+                }
+                if (depth == 0) {
+                    records.add(new int[] {start, i + 1});
+                    start = -1;
+                }
+            } else if (depth == 0 && start >= 0 && (c == ',' || c == ';' || c == '\n')
+                    && !inSridPrefix(start, i)) {
+                records.add(new int[] {start, i});
+                start = -1;
+            }
+        }
+        if (depth > 0) {
+            throw new ParseException("Unexpected end of WKT");
+        }
+        if (start >= 0) {
+            records.add(new int[] {start, wkt.length()});
+        }
+        return records;
+    }
+
+    /**
+     * Cuts one collection between its members, each chunk being a collection of the
+     * same type holding some of the members.
+     * @param start where the collection starts
+     * @param end where it ends, after its closing parenthesis
+     */
+    private void splitMembers(final int start, final int end) {
+        int open = wkt.indexOf('(', start);
+        String header = wkt.substring(start, open) + "(";
+        int depth = 0;
+        int chunkStart = open + 1;
+        for (int i = open + 1; i < end - 1; i++) {
+            char c = wkt.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0 && i - chunkStart > CHUNK_CHARS) {
+                chunks.add(header + wkt.substring(chunkStart, i) + ")");
+                chunkStart = i + 1;
+            }
+        }
+        chunks.add(header + wkt.substring(chunkStart, end - 1) + ")");
+    }
+
+    /**
+     * Checks whether a character is part of the SRID=n; prefix of EWKT, which belongs
+     * to the geometry after it rather than ending a record.
+     * @param start where the record starts
+     * @param index the character
+     */
+    private boolean inSridPrefix(final int start, final int index) {
+        return wkt.regionMatches(true, start, SRID, 0, SRID.length())
+                && index < skipSridPrefix(start);
+    }
+
+    /**
+     * Gets where the geometry of a record starts, after the SRID prefix of EWKT.
+     */
+    private int skipSridPrefix(final int start) {
+        int semicolon = wkt.indexOf(';', start);
+        if (semicolon < 0 || !wkt.regionMatches(true, start, SRID, 0, SRID.length())) {
+            return start;
+        }
+        int end = semicolon + 1;
+        while (end < wkt.length() && Character.isWhitespace(wkt.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Gets the geometry type a record starts with.
+     */
+    private String keyword(final int start) {
+        int begin = skipSridPrefix(start);
+        int end = begin;
+        while (end < wkt.length() && Character.isLetter(wkt.charAt(end))) {
+            end++;
+        }
+        return wkt.substring(begin, end).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses a range of chunks, splitting the range in two until one chunk is left.
+     */
+    private class ParseTask extends RecursiveTask<List<Geometry>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        ParseTask(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Geometry> compute() {
+            if (to - from == 1) {
+                return parseChunk(chunks.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            ParseTask left = new ParseTask(from, middle);
+            left.fork();
+            List<Geometry> right = new ParseTask(middle, to).compute();
+            List<Geometry> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+        private List<Geometry> parseChunk(final String chunk) {
+            List<Geometry> result = new ArrayList<>();
+            WktStreamReader reader = new WktStreamReader(new StringReader(chunk), true);
+            try {
+                Geometry geometry = reader.next();
+                while (geometry != null) {
+                    WktParser.extractAllGeometries(geometry, result);
+                    geometry = reader.next();
+                }
+            } catch (ParseException | IOException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Creates the models of a range of geometries, splitting the range in two until it
+     * fits in one batch.
+     */
+    private static class ModelTask extends RecursiveTask<List<GeometryModel>> {
+
+        private static final long serialVersionUID = 1L;
+
+        // tasks are never serialized, the fields only live while the task runs
+        private final transient List<Geometry> geometries;
+        private final transient AnchorPane group;
+        private final int from;
+        private final int to;
+
+        ModelTask(final List<Geometry> geometries, final AnchorPane group, final int from,
+                  final int to) {
+            this.geometries = geometries;
+            this.group = group;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<GeometryModel> compute() {
+            if (to - from <= MODEL_BATCH) {
+                return WktParser.createModels(geometries.subList(from, to), group, false);
+            }
+            int middle = (from + to) >>> 1;
+            ModelTask left = new ModelTask(geometries, group, from, middle);
+            left.fork();
+            List<GeometryModel> right = new ModelTask(geometries, group, middle, to).compute();
+            List<GeometryModel> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+}
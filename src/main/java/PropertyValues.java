@@ -1,59 +1,148 @@
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Created by Eirik on 10/23/2015.
+ *
+ * Reads and writes config.properties. The first database is stored as name, url, user
+ * and password, further databases with the suffixes .1, .2 and so on. Optional settings:
+ * warmup=true connects to every database in the background at start, and pool.min,
+ * pool.max and pool.idleTimeout (seconds) size the connection pools.
  */
 public class PropertyValues {
 
-    public static Database Input() {
-        Properties prop = new Properties();
-        InputStream input = null;
-        Database db = null;
-        try {
-
-            input = new FileInputStream("config.properties");
-            prop.load(input);
+    private static final Logger LOGGER = Logger.getLogger(PropertyValues.class.getName());
 
-            String name = prop.getProperty("name");
-            String url = prop.getProperty("url");
-            String user = prop.getProperty("user");
-            String password = prop.getProperty("password");
+    public static final String CONFIG_FILE = "config.properties";
 
-            if(!name.isEmpty() && !url.isEmpty() && !user.isEmpty()
-                    && !password.isEmpty()) {
-                db = new Database(name,url,user,password);
-            }
+    private static final String[] DATABASE_KEYS = {"name", "url", "user", "password"};
 
+    /**
+     * Loads the databases stored in config.properties, with an alert if the file is missing.
+     * @return the databases in the order they are stored, empty if there are none
+     */
+    public static List<Database> Input() {
+        try {
+            return getDatabases(read());
         } catch (IOException ex) {
             String title = "File not found";
             String header = "";
             String body = "Did not find the configuration file. It should be called config.properties";
             Alerts alert = new Alerts(title,header,body);
             alert.show();
-        } finally {
-            return db;
+            return new ArrayList<>();
         }
     }
 
-    public static void Output(Database db) {
+    /**
+     * Reads config.properties.
+     * @return the settings
+     * @throws IOException if the file is missing or can not be read
+     */
+    public static Properties read() throws IOException {
         Properties prop = new Properties();
-        OutputStream out = null;
+        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
+            prop.load(input);
+        }
+        return prop;
+    }
 
-        try{
-            out = new FileOutputStream("config.properties");
+    /**
+     * Gets the databases of the settings. Databases with an empty name, url or user are
+     * left out, and the list ends at the first suffix without a name.
+     * @param prop the settings
+     * @return the databases in the order they are stored
+     */
+    public static List<Database> getDatabases(final Properties prop) {
+        List<Database> databases = new ArrayList<>();
+        for (int i = 0; prop.getProperty(key("name", i)) != null; i++) {
+            String name = prop.getProperty(key("name", i));
+            String url = prop.getProperty(key("url", i), "");
+            String user = prop.getProperty(key("user", i), "");
+            String password = prop.getProperty(key("password", i), "");
+            if (!name.isEmpty() && !url.isEmpty() && !user.isEmpty()) {
+                databases.add(new Database(name, url, user, password));
+            }
+        }
+        return databases;
+    }
 
-            prop.setProperty("name", db.getName());
-            prop.setProperty("url", db.getUrl());
-            prop.setProperty("user", db.getUser());
-            prop.setProperty("password", db.getPassword());
-            prop.store(out, null);
+    /**
+     * Checks if the databases should be connected to when the application starts.
+     * @param prop the settings
+     * @return true if warmup is set to true
+     */
+    public static boolean isWarmUp(final Properties prop) {
+        return Boolean.parseBoolean(prop.getProperty("warmup", "false").trim());
+    }
 
+    /**
+     * Sizes the connection pools created from now on by the pool settings, keeping the
+     * defaults for the settings that are missing or invalid.
+     * @param prop the settings
+     */
+    public static void configurePool(final Properties prop) {
+        try {
+            int min = Integer.parseInt(prop.getProperty("pool.min",
+                    Integer.toString(ConnectionPool.getConfiguredMinSize())).trim());
+            int max = Integer.parseInt(prop.getProperty("pool.max",
+                    Integer.toString(ConnectionPool.getConfiguredMaxSize())).trim());
+            long idleSeconds = Long.parseLong(prop.getProperty("pool.idleTimeout",
+                    Long.toString(TimeUnit.MILLISECONDS.toSeconds(
+                            ConnectionPool.getConfiguredIdleTimeout()))).trim());
+            ConnectionPool.configure(min, max, TimeUnit.SECONDS.toMillis(idleSeconds));
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Invalid pool settings in " + CONFIG_FILE, e);
+        }
+    }
+
+    /**
+     * Stores the databases in config.properties, keeping the other settings of the file.
+     * @param databases the databases, the first is selected when they are loaded
+     */
+    public static void Output(final List<Database> databases) {
+        Properties prop = new Properties();
+        if (new File(CONFIG_FILE).exists()) {
+            try {
+                prop = read();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not read " + CONFIG_FILE, ex);
+            }
+        }
+        for (int i = 0; prop.getProperty(key("name", i)) != null; i++) {
+            for (String key : DATABASE_KEYS) {
+                prop.remove(key(key, i));
+            }
+        }
+        for (int i = 0; i < databases.size(); i++) {
+            Database db = databases.get(i);
+            prop.setProperty(key("name", i), db.getName());
+            prop.setProperty(key("url", i), db.getUrl());
+            prop.setProperty(key("user", i), db.getUser());
+            prop.setProperty(key("password", i), db.getPassword());
+        }
+
+        try (OutputStream out = new FileOutputStream(CONFIG_FILE)) {
+            prop.store(out, null);
         } catch (IOException ex) {
             ex.printStackTrace();
         }
 
     }
 
-
+    /**
+     * Gets the key of a database setting: name for the first database, name.1 for the
+     * second and so on.
+     */
+    private static String key(final String setting, final int index) {
+        if (index == 0) {
+            return setting;
+        }
+        return setting + "." + index;
+    }
 }
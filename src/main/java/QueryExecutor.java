@@ -0,0 +1,63 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs queries and other background work off the JavaFX application thread, each task on
+ * a virtual thread of its own. A task waiting for the database or for the JavaFX thread
+ * does not hold an operating system thread, so hundreds of layers can load or refresh at
+ * once; how many of them use a database at the same time is limited by its connection
+ * pool, where the others wait.
+ */
+public final class QueryExecutor {
+
+    private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("query-", 0).factory());
+
+    /**
+     * Repeated tasks, such as refreshes of live layers, that can run at the same time.
+     * The scheduler's threads are virtual too, so this only bounds how many refreshes
+     * wait for a connection.
+     */
+    private static final int SCHEDULER_THREADS = 256;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            SCHEDULER_THREADS, Thread.ofVirtual().name("refresh-", 0).factory());
+
+    private QueryExecutor() { }
+
+    /**
+     * Runs the task on a background thread.
+     * @param task the work to run
+     */
+    public static void execute(final Runnable task) {
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * Runs the task on a background thread, for waiting on its result.
+     * @param task the work to run
+     * @param <T> type of the result
+     * @return the future result
+     */
+    public static <T> Future<T> submit(final Callable<T> task) {
+        return EXECUTOR.submit(task);
+    }
+
+    /**
+     * Runs the task on a background thread at once and then again and again, waiting the
+     * given delay after each run ends, so runs of the task never overlap.
+     * The task is not run again if it throws.
+     * @param task the work to run
+     * @param delaySeconds seconds between the end of a run and the start of the next
+     * @return the schedule, cancel it to stop the task
+     */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(final Runnable task,
+                                                            final long delaySeconds) {
+        return SCHEDULER.scheduleWithFixedDelay(task, 0, delaySeconds, TimeUnit.SECONDS);
+    }
+}
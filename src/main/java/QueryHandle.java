@@ -0,0 +1,57 @@
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets another thread cancel a query while it runs.
+ * Cancelling sends Statement.cancel() to the server and stops reading rows.
+ * A query split into partitions runs several statements at once under one handle.
+ */
+public class QueryHandle {
+
+    private static final Logger LOGGER = Logger.getLogger(QueryHandle.class.getName());
+
+    private final List<Statement> statements = new ArrayList<>();
+    private boolean cancelled = false;
+
+    /**
+     * Registers a statement that is starting to execute.
+     * @param statement the statement
+     */
+    public final synchronized void addStatement(final Statement statement) {
+        statements.add(statement);
+    }
+
+    /**
+     * Unregisters a statement that has finished.
+     * @param statement the statement
+     */
+    public final synchronized void removeStatement(final Statement statement) {
+        statements.remove(statement);
+    }
+
+    /**
+     * Cancels the query. Safe to call from any thread, and before the query has started.
+     */
+    public final void cancel() {
+        List<Statement> toCancel;
+        synchronized (this) {
+            cancelled = true;
+            toCancel = new ArrayList<>(statements);
+        }
+        for (Statement statement : toCancel) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, e.getMessage(), e);
+            }
+        }
+    }
+
+    public final synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Time spent in each phase of filling a layer from a query, from borrowing a connection
+ * to drawing the shapes, and counters for what was transferred and created.
+ * The phases run on different threads, so all values are updated atomically.
+ * When the layer is complete the metrics are logged and appended to a CSV file.
+ */
+public class QueryMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(QueryMetrics.class.getName());
+
+    /**
+     * File in the working directory, next to config.properties, the metrics are appended to.
+     */
+    public static final String METRICS_FILE = "query-metrics.csv";
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double BYTES_PER_KB = 1024;
+
+    /**
+     * A step between sending the query and seeing the geometries.
+     */
+    public enum Phase {
+        /** Borrowing a connection from the pool. */
+        CONNECT,
+        /** Waiting for the server to start returning rows. */
+        EXECUTE,
+        /** Reading rows and column values from the driver. */
+        FETCH,
+        /** Parsing WKT or WKB into JTS geometries. */
+        DECODE,
+        /** Creating and transforming the models of the geometries. */
+        MODEL,
+        /** Drawing the models and creating their tooltips. */
+        DRAW
+    }
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong vertices = new AtomicLong();
+    private final AtomicLong models = new AtomicLong();
+    private final AtomicLong tooltips = new AtomicLong();
+
+    /**
+     * Adds the time since a start time to a phase.
+     * @param phase the phase
+     * @param startNanos value of System.nanoTime() when the phase started
+     */
+    public final void addTime(final Phase phase, final long startNanos) {
+        phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - startNanos);
+    }
+
+    public final void addBytes(final long count) {
+        bytes.addAndGet(count);
+    }
+
+    public final void addRows(final long count) {
+        rows.addAndGet(count);
+    }
+
+    public final void addVertices(final long count) {
+        vertices.addAndGet(count);
+    }
+
+    public final void addModels(final long count) {
+        models.addAndGet(count);
+    }
+
+    public final void addTooltips(final long count) {
+        tooltips.addAndGet(count);
+    }
+
+    /**
+     * Adds the times and counters of another query, e.g. to total several runs.
+     * @param other metrics to add
+     */
+    public final void add(final QueryMetrics other) {
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.addAndGet(i, other.phaseNanos.get(i));
+        }
+        bytes.addAndGet(other.getBytes());
+        rows.addAndGet(other.getRows());
+        vertices.addAndGet(other.getVertices());
+        models.addAndGet(other.getModels());
+        tooltips.addAndGet(other.getTooltips());
+    }
+
+    /**
+     * Gets the time spent in a phase.
+     * @param phase the phase
+     * @return the time in milliseconds
+     */
+    public final double getMillis(final Phase phase) {
+        return phaseNanos.get(phase.ordinal()) / NANOS_PER_MILLI;
+    }
+
+    public final long getBytes() {
+        return bytes.get();
+    }
+
+    public final long getRows() {
+        return rows.get();
+    }
+
+    public final long getVertices() {
+        return vertices.get();
+    }
+
+    public final long getModels() {
+        return models.get();
+    }
+
+    public final long getTooltips() {
+        return tooltips.get();
+    }
+
+    /**
+     * Logs the metrics of a completed layer and appends them to the metrics file.
+     * @param layerName name of the layer
+     * @param database the database that was queried
+     */
+    public final void export(final String layerName, final Database database) {
+        LOGGER.log(Level.INFO, "Layer " + layerName + " from " + database.getName() + ": "
+                + toString().replace("\n", ", "));
+        File file = new File(METRICS_FILE);
+        boolean header = !file.exists();
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            if (header) {
+                out.println("time,layer,database,connect_ms,execute_ms,fetch_ms,decode_ms,"
+                        + "model_ms,draw_ms,bytes,rows,vertices,models,tooltips");
+            }
+            StringBuilder line = new StringBuilder();
+            line.append(LocalDateTime.now()).append(',').append(csvField(layerName))
+                    .append(',').append(csvField(database.getName()));
+            for (Phase phase : Phase.values()) {
+                line.append(',').append(String.format(Locale.ROOT, "%.1f", getMillis(phase)));
+            }
+            line.append(',').append(getBytes()).append(',').append(getRows())
+                    .append(',').append(getVertices()).append(',').append(getModels())
+                    .append(',').append(getTooltips());
+            out.println(line);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write " + METRICS_FILE, e);
+        }
+    }
+
+    private static String csvField(final String value) {
+        return "\"" + String.valueOf(value).replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Describes the metrics on one line per phase and counter, as shown in the layer tooltip.
+     * @return the description
+     */
+    @Override
+    public final String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            String name = phase.name().charAt(0) + phase.name().substring(1).toLowerCase();
+            text.append(String.format("%s: %.1f ms\n", name, getMillis(phase)));
+        }
+        text.append(String.format("Fetched: %.1f kB\n", getBytes() / BYTES_PER_KB));
+        text.append("Rows: ").append(getRows()).append('\n');
+        text.append("Vertices: ").append(getVertices()).append('\n');
+        text.append("Models: ").append(getModels()).append('\n');
+        text.append("Tooltips: ").append(getTooltips());
+        return text.toString();
+    }
+}
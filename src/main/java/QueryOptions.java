@@ -0,0 +1,241 @@
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Settings for how layer queries are sent and how their results are transferred.
+ * Chosen in the query options menu.
+ */
+public class QueryOptions {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    public static final long DEFAULT_VERTEX_BUDGET = 5000000;
+
+    private boolean binaryTransfer = false;
+    private boolean compactTransfer = false;
+    private int compactPrecision = 0;
+    private int queryTimeout = 0;
+    private boolean viewportQuery = false;
+    private Envelope viewport;
+    private boolean levelOfDetail = false;
+    private double simplifyTolerance = 0;
+    private boolean cacheResults = false;
+    private boolean cursorFetch = false;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int partitions = 1;
+    private boolean probe = false;
+    private boolean copyTransfer = false;
+    private long vertexBudget = DEFAULT_VERTEX_BUDGET;
+
+    public QueryOptions() {
+    }
+
+    /**
+     * Copies the options, so a running query is not affected by later changes in the menu.
+     * @param other options to copy
+     */
+    public QueryOptions(final QueryOptions other) {
+        this.binaryTransfer = other.binaryTransfer;
+        this.compactTransfer = other.compactTransfer;
+        this.compactPrecision = other.compactPrecision;
+        this.queryTimeout = other.queryTimeout;
+        this.viewportQuery = other.viewportQuery;
+        this.viewport = other.viewport;
+        this.levelOfDetail = other.levelOfDetail;
+        this.simplifyTolerance = other.simplifyTolerance;
+        this.cacheResults = other.cacheResults;
+        this.cursorFetch = other.cursorFetch;
+        this.fetchSize = other.fetchSize;
+        this.partitions = other.partitions;
+        this.probe = other.probe;
+        this.vertexBudget = other.vertexBudget;
+        this.copyTransfer = other.copyTransfer;
+    }
+
+    /**
+     * Checks whether geometries are fetched as binary WKB instead of WKT text.
+     * @return true for binary transfer
+     */
+    public final boolean isBinaryTransfer() {
+        return binaryTransfer;
+    }
+
+    public final void setBinaryTransfer(final boolean binaryTransfer) {
+        this.binaryTransfer = binaryTransfer;
+    }
+
+    /**
+     * Checks whether geometries are fetched as TWKB, with coordinates rounded to what
+     * can be seen at the zoom level the query is sent at.
+     * @return true for compact transfer
+     */
+    public final boolean isCompactTransfer() {
+        return compactTransfer;
+    }
+
+    public final void setCompactTransfer(final boolean compactTransfer) {
+        this.compactTransfer = compactTransfer;
+    }
+
+    /**
+     * Gets the number of decimals kept in coordinates fetched with compact transfer.
+     * @return the number of decimals, negative to round to tens, hundreds and so on
+     */
+    public final int getCompactPrecision() {
+        return compactPrecision;
+    }
+
+    public final void setCompactPrecision(final int compactPrecision) {
+        this.compactPrecision = compactPrecision;
+    }
+
+    /**
+     * Gets the number of seconds a query may run before it is cancelled by the driver.
+     * @return the timeout in seconds, 0 for no limit
+     */
+    public final int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public final void setQueryTimeout(final int queryTimeout) {
+        this.queryTimeout = Math.max(0, queryTimeout);
+    }
+
+    /**
+     * Checks whether queries only fetch geometries intersecting the visible part of the map,
+     * and are sent again when the view is panned or zoomed.
+     * @return true for viewport queries
+     */
+    public final boolean isViewportQuery() {
+        return viewportQuery;
+    }
+
+    public final void setViewportQuery(final boolean viewportQuery) {
+        this.viewportQuery = viewportQuery;
+    }
+
+    /**
+     * Gets the area, in data coordinates, that a viewport query fetches.
+     * @return the envelope, or null to fetch everything
+     */
+    public final Envelope getViewport() {
+        return viewport;
+    }
+
+    public final void setViewport(final Envelope viewport) {
+        this.viewport = viewport;
+    }
+
+    /**
+     * Checks whether geometries are simplified on the server to match the zoom level,
+     * and fetched again with more detail when zooming in.
+     * @return true for level of detail queries
+     */
+    public final boolean isLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    public final void setLevelOfDetail(final boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    /**
+     * Gets the tolerance, in data coordinates, geometries are simplified with.
+     * @return the tolerance, 0 for no simplification
+     */
+    public final double getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    public final void setSimplifyTolerance(final double simplifyTolerance) {
+        this.simplifyTolerance = Math.max(0, simplifyTolerance);
+    }
+
+    /**
+     * Checks whether query results are kept in memory and reused when the same query
+     * is run again.
+     * @return true to use the result cache
+     */
+    public final boolean isCacheResults() {
+        return cacheResults;
+    }
+
+    public final void setCacheResults(final boolean cacheResults) {
+        this.cacheResults = cacheResults;
+    }
+
+    /**
+     * Checks whether rows are fetched through a server side cursor, a few at a time,
+     * instead of the driver reading the whole result into memory first.
+     * @return true for cursor fetching
+     */
+    public final boolean isCursorFetch() {
+        return cursorFetch;
+    }
+
+    public final void setCursorFetch(final boolean cursorFetch) {
+        this.cursorFetch = cursorFetch;
+    }
+
+    /**
+     * Gets the number of rows fetched in each round trip when fetching through a cursor.
+     * @return the fetch size
+     */
+    public final int getFetchSize() {
+        return fetchSize;
+    }
+
+    public final void setFetchSize(final int fetchSize) {
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    /**
+     * Gets the number of spatial parts a query is split into, each running on its own
+     * connection at the same time.
+     * @return the number of parts, 1 to run the query as it is
+     */
+    public final int getPartitions() {
+        return partitions;
+    }
+
+    public final void setPartitions(final int partitions) {
+        this.partitions = Math.max(1, partitions);
+    }
+
+    /**
+     * Checks whether the extent and size of a result are found with a cheap aggregate
+     * query before the rows are fetched, so the view can be moved to the data first.
+     * @return true to probe queries
+     */
+    public final boolean isProbe() {
+        return probe;
+    }
+
+    public final void setProbe(final boolean probe) {
+        this.probe = probe;
+    }
+
+    /**
+     * Gets the number of vertices a probed query may return before asking whether to
+     * fetch it.
+     * @return the number of vertices, 0 for no limit
+     */
+    public final long getVertexBudget() {
+        return vertexBudget;
+    }
+
+    public final void setVertexBudget(final long vertexBudget) {
+        this.vertexBudget = Math.max(0, vertexBudget);
+    }
+
+    /**
+     * Checks whether results are streamed with binary COPY on databases that have it,
+     * which avoids the per row overhead of a result set.
+     * @return true for COPY transfer
+     */
+    public final boolean isCopyTransfer() {
+        return copyTransfer;
+    }
+
+    public final void setCopyTransfer(final boolean copyTransfer) {
+        this.copyTransfer = copyTransfer;
+    }
+}
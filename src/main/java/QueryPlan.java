@@ -0,0 +1,345 @@
+import com.vividsolutions.jts.io.ParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The plan a database chose for a layer query, read from EXPLAIN output in JSON format,
+ * with the time the server spent on it. Plan steps that scan a whole table to evaluate
+ * a spatial condition, instead of using a GiST or R-tree index, are marked with a warning.
+ */
+public final class QueryPlan {
+
+    /**
+     * Functions and operators that make a condition spatial, in lower case.
+     */
+    private static final String[] SPATIAL_MARKERS = {
+        "&&", "st_intersects", "st_dwithin", "st_contains", "st_within", "st_covers",
+        "st_coveredby", "st_overlaps", "st_touches", "st_crosses", "st_makeenvelope",
+        "st_geomfromtext", "mbrintersects", "mbrcontains", "mbrwithin", "mbroverlaps"};
+
+    private final Node root;
+    private final List<String> warnings = new ArrayList<>();
+    private final String geometryColumn;
+    private String error;
+    private double planningMillis = -1;
+    private double executionMillis = -1;
+
+    private QueryPlan(final String geometry) {
+        this.root = new Node("Query");
+        this.geometryColumn = columnName(geometry);
+    }
+
+    /**
+     * Creates a plan that could not be found.
+     * @param error why the query could not be explained
+     * @return the plan holding the error
+     */
+    public static QueryPlan failed(final String error) {
+        QueryPlan plan = new QueryPlan(null);
+        plan.error = error;
+        return plan;
+    }
+
+    /**
+     * Reads the EXPLAIN output of a database.
+     * @param dialect the database the query was explained on
+     * @param json the EXPLAIN output
+     * @param geometry the geometry expression of the query, null if unknown
+     * @return the plan
+     * @throws ParseException if the output is not the expected JSON
+     */
+    public static QueryPlan parse(final SqlDialect dialect, final String json,
+                                  final String geometry) throws ParseException {
+        QueryPlan plan = new QueryPlan(geometry);
+        Object value = JsonParser.parse(json);
+        if (dialect == SqlDialect.MYSQL) {
+            plan.readMysql(value, plan.root);
+        } else {
+            plan.readPostgres(value);
+        }
+        return plan;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Gets the root of the plan tree, labelled Query, with the plan below it.
+     * @return the root
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * Gets the time the server spent executing the query.
+     * @return the time in milliseconds, or -1 if the database does not report it
+     */
+    public double getExecutionMillis() {
+        return executionMillis;
+    }
+
+    /**
+     * Gets the time the server spent planning the query.
+     * @return the time in milliseconds, or -1 if the database does not report it
+     */
+    public double getPlanningMillis() {
+        return planningMillis;
+    }
+
+    /**
+     * Reads PostgreSQL output: an array holding an object with the Plan and the times.
+     */
+    private void readPostgres(final Object value) throws ParseException {
+        Object first = value;
+        if (value instanceof List && !((List<?>) value).isEmpty()) {
+            first = ((List<?>) value).get(0);
+        }
+        if (!(first instanceof Map)) {
+            throw new ParseException("Unexpected EXPLAIN output");
+        }
+        Map<?, ?> explain = (Map<?, ?>) first;
+        planningMillis = number(explain, "Planning Time", number(explain, "Total Runtime", -1));
+        executionMillis = number(explain, "Execution Time", -1);
+        if (!(explain.get("Plan") instanceof Map)) {
+            throw new ParseException("EXPLAIN output has no plan");
+        }
+        root.children.add(readPostgresNode((Map<?, ?>) explain.get("Plan")));
+    }
+
+    private Node readPostgresNode(final Map<?, ?> plan) {
+        String type = String.valueOf(plan.get("Node Type"));
+        StringBuilder label = new StringBuilder(type);
+        if (plan.get("Relation Name") != null) {
+            label.append(" on ").append(plan.get("Relation Name"));
+        }
+        if (plan.get("Index Name") != null) {
+            label.append(" using ").append(plan.get("Index Name"));
+        }
+        Node node = new Node(label.toString());
+        if (plan.get("Actual Total Time") != null) {
+            node.details.add(String.format(Locale.ROOT, "%.3f ms, %.0f rows x %.0f loops",
+                    number(plan, "Actual Total Time", 0), number(plan, "Actual Rows", 0),
+                    number(plan, "Actual Loops", 1)));
+        }
+        node.details.add(String.format(Locale.ROOT, "cost %.2f, estimated %.0f rows",
+                number(plan, "Total Cost", 0), number(plan, "Plan Rows", 0)));
+        for (String key : new String[] {"Index Cond", "Recheck Cond", "Filter"}) {
+            if (plan.get(key) != null) {
+                node.details.add(key + ": " + plan.get(key));
+            }
+        }
+        if (plan.get("Rows Removed by Filter") != null) {
+            node.details.add(String.format(Locale.ROOT, "rows removed by filter: %.0f",
+                    number(plan, "Rows Removed by Filter", 0)));
+        }
+        if (plan.get("Shared Hit Blocks") != null) {
+            node.details.add(String.format(Locale.ROOT, "buffers: %.0f hit, %.0f read",
+                    number(plan, "Shared Hit Blocks", 0), number(plan, "Shared Read Blocks", 0)));
+        }
+        Object filter = plan.get("Filter");
+        if ("Seq Scan".equals(type) && filter != null && isSpatial(filter.toString())) {
+            warn(node, "Sequential scan on " + plan.get("Relation Name")
+                    + " evaluates a spatial condition on every row, no GiST index is used");
+        }
+        Object children = plan.get("Plans");
+        if (children instanceof List) {
+            for (Object child : (List<?>) children) {
+                if (child instanceof Map) {
+                    node.children.add(readPostgresNode((Map<?, ?>) child));
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Reads MySQL output, a tree of objects where each table access is a "table" member
+     * and joins, sorts and groups are members holding more of them.
+     */
+    private void readMysql(final Object value, final Node parent) {
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                readMysql(item, parent);
+            }
+            return;
+        }
+        if (!(value instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+            Object child = member.getValue();
+            if ("table".equals(member.getKey()) && child instanceof Map) {
+                parent.children.add(readMysqlTable((Map<?, ?>) child));
+            } else if ("cost_info".equals(member.getKey()) && child instanceof Map) {
+                Object cost = ((Map<?, ?>) child).get("query_cost");
+                if (cost != null) {
+                    parent.details.add("cost " + cost);
+                }
+            } else if (child instanceof Map || child instanceof List) {
+                Node node = new Node(String.valueOf(member.getKey()).replace('_', ' '));
+                parent.children.add(node);
+                readMysql(child, node);
+            }
+        }
+    }
+
+    private Node readMysqlTable(final Map<?, ?> table) {
+        String access = String.valueOf(table.get("access_type"));
+        Node node = new Node("table " + table.get("table_name") + " (" + access + ")");
+        if (table.get("key") != null) {
+            node.details.add("key: " + table.get("key"));
+        }
+        if (table.get("possible_keys") != null) {
+            node.details.add("possible keys: " + table.get("possible_keys"));
+        }
+        if (table.get("rows_examined_per_scan") != null) {
+            node.details.add(String.format(Locale.ROOT, "rows examined per scan: %.0f",
+                    number(table, "rows_examined_per_scan", 0)));
+        }
+        if (table.get("cost_info") instanceof Map) {
+            Object cost = ((Map<?, ?>) table.get("cost_info")).get("prefix_cost");
+            if (cost != null) {
+                node.details.add("cost " + cost);
+            }
+        }
+        Object condition = table.get("attached_condition");
+        if (condition != null) {
+            node.details.add("condition: " + condition);
+        }
+        if ("ALL".equals(access) && condition != null && isSpatial(condition.toString())) {
+            warn(node, "Full scan of " + table.get("table_name")
+                    + " evaluates a spatial condition on every row, no SPATIAL (R-tree) index"
+                    + " is used");
+        } else if (table.get("possible_keys") != null && table.get("key") == null) {
+            warn(node, "An index of " + table.get("table_name") + " could be used but is not");
+        }
+        for (Map.Entry<?, ?> member : table.entrySet()) {
+            if (member.getValue() instanceof Map && !"cost_info".equals(member.getKey())) {
+                readMysql(member.getValue(), node);
+            }
+        }
+        return node;
+    }
+
+    private void warn(final Node node, final String warning) {
+        node.warning = true;
+        warnings.add(warning);
+    }
+
+    private boolean isSpatial(final String condition) {
+        String lower = condition.toLowerCase(Locale.ROOT);
+        for (String marker : SPATIAL_MARKERS) {
+            if (lower.contains(marker)) {
+                return true;
+            }
+        }
+        return geometryColumn != null && lower.contains(geometryColumn);
+    }
+
+    /**
+     * Gets the column name of a geometry expression such as t.geom or ST_AsText(geom).
+     */
+    private static String columnName(final String geometry) {
+        if (geometry == null || !geometry.matches("[\\w.\"`]+")) {
+            return null;
+        }
+        String column = geometry.substring(geometry.lastIndexOf('.') + 1);
+        return column.replace("\"", "").replace("`", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static double number(final Map<?, ?> map, final String key, final double fallback) {
+        Object value = map.get(key);
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Describes the server side of the query, as shown with the layer's own timings.
+     * @return the times and warnings, one per line
+     */
+    @Override
+    public String toString() {
+        if (!isSuccess()) {
+            return "Plan: " + error;
+        }
+        StringBuilder text = new StringBuilder();
+        if (planningMillis >= 0) {
+            text.append(String.format("Server planning: %.1f ms\n", planningMillis));
+        }
+        if (executionMillis >= 0) {
+            text.append(String.format("Server execution: %.1f ms\n", executionMillis));
+        }
+        for (String warning : warnings) {
+            text.append("Warning: ").append(warning).append('\n');
+        }
+        if (text.length() == 0) {
+            text.append("No problems found in the plan\n");
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * A step of the plan.
+     */
+    public static final class Node {
+        private final String label;
+        private final List<String> details = new ArrayList<>();
+        private final List<Node> children = new ArrayList<>();
+        private boolean warning = false;
+
+        Node(final String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public List<String> getDetails() {
+            return Collections.unmodifiableList(details);
+        }
+
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Checks if the step scans a table where a spatial index should have been used.
+         * @return true if the step has a warning
+         */
+        public boolean hasWarning() {
+            return warning;
+        }
+
+        @Override
+        public String toString() {
+            if (details.isEmpty()) {
+                return label;
+            }
+            return label + " (" + String.join("; ", details) + ")";
+        }
+    }
+}
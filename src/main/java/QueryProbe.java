@@ -0,0 +1,49 @@
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * What a cheap aggregate query found out about the result of a layer query before
+ * it is fetched: the extent of the geometries, the number of rows and the number
+ * of vertices. Values the database could not provide are missing.
+ */
+public class QueryProbe {
+
+    private final Envelope extent;
+    private final long rows;
+    private final long vertices;
+
+    /**
+     * Creates the outcome of a probe.
+     * @param extent extent of the geometries, null if unknown or there are none
+     * @param rows number of rows, -1 if unknown
+     * @param vertices number of vertices, -1 if unknown
+     */
+    public QueryProbe(final Envelope extent, final long rows, final long vertices) {
+        this.extent = extent;
+        this.rows = rows;
+        this.vertices = vertices;
+    }
+
+    /**
+     * Gets the extent of the geometries, in the coordinates of the data.
+     * @return the extent, or null if unknown
+     */
+    public final Envelope getExtent() {
+        return extent;
+    }
+
+    /**
+     * Gets the number of rows the query returns.
+     * @return the number of rows, or -1 if unknown
+     */
+    public final long getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of vertices of all geometries of the query.
+     * @return the number of vertices, or -1 if unknown
+     */
+    public final long getVertices() {
+        return vertices;
+    }
+}
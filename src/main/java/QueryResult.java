@@ -0,0 +1,72 @@
+/**
+ * Outcome of a query streamed into a layer.
+ */
+public class QueryResult {
+
+    private String error;
+    private long rows = 0;
+    private long skippedRows = 0;
+    private boolean cached = false;
+
+    /**
+     * Gets the error message shown to the user.
+     * @return the error, or null if the query succeeded
+     */
+    public final String getError() {
+        return error;
+    }
+
+    public final void setError(final String error) {
+        this.error = error;
+    }
+
+    public final boolean isSuccess() {
+        return error == null;
+    }
+
+    public final long getRows() {
+        return rows;
+    }
+
+    public final void addRow() {
+        rows++;
+    }
+
+    /**
+     * Gets the number of rows whose value could not be read as a geometry.
+     * @return number of skipped rows
+     */
+    public final long getSkippedRows() {
+        return skippedRows;
+    }
+
+    public final void addSkippedRow() {
+        skippedRows++;
+    }
+
+    /**
+     * Checks whether the rows came from the result cache instead of the database.
+     * @return true for a cached result
+     */
+    public final boolean isCached() {
+        return cached;
+    }
+
+    public final void setCached(final boolean cached) {
+        this.cached = cached;
+    }
+
+    /**
+     * Adds the rows of one part of a query split into partitions. The first error is
+     * kept, except that a real error replaces the cancellation it caused in other parts.
+     * @param part result of the part
+     */
+    public final void add(final QueryResult part) {
+        rows += part.rows;
+        skippedRows += part.skippedRows;
+        if (part.error != null && (error == null
+                || DatabaseConnector.CANCELLED.equals(error))) {
+            error = part.error;
+        }
+    }
+}
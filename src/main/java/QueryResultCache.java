@@ -0,0 +1,276 @@
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the geometries of recent query results, so that running the same query again
+ * fills the layer without a round trip to the database or parsing the rows.
+ * Results are keyed by the Database and the query as sent, with whitespace outside
+ * quotes collapsed. The least recently used results are dropped when the estimated
+ * size of all results exceeds the byte budget, or when they are older than the
+ * time to live.
+ */
+public final class QueryResultCache {
+
+    public static final long BYTES_PER_MB = 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 256 * BYTES_PER_MB;
+    public static final long DEFAULT_TIME_TO_LIVE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Estimated size of a geometry object without its coordinates.
+     */
+    private static final long GEOMETRY_BYTES = 96;
+    /**
+     * Estimated size of a Coordinate and the reference to it.
+     */
+    private static final long COORDINATE_BYTES = 48;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long timeToLive;
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates an empty cache.
+     * @param maxBytes estimated size all results may use together
+     * @param timeToLiveMillis age after which a result is dropped, 0 to keep results
+     *     until they are evicted or invalidated
+     */
+    public QueryResultCache(final long maxBytes, final long timeToLiveMillis) {
+        this.maxBytes = maxBytes;
+        this.timeToLive = timeToLiveMillis;
+    }
+
+    /**
+     * Gets a copy of the cached result of a query.
+     * @param database the database the query is sent to
+     * @param sql the query as sent
+     * @return copies of the geometries, or null if the result is not cached
+     */
+    public synchronized List<Geometry> get(final Database database, final String sql) {
+        Key key = new Key(database, sql);
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        List<Geometry> copies = new ArrayList<>(entry.geometries.size());
+        for (Geometry geometry : entry.geometries) {
+            copies.add((Geometry) geometry.clone());
+        }
+        return copies;
+    }
+
+    /**
+     * Stores the result of a query, dropping the least recently used results if the
+     * cache gets too large. The cache keeps the geometries, so they must not be
+     * changed afterwards.
+     * @param database the database the query was sent to
+     * @param sql the query as sent
+     * @param geometries the geometries of all rows
+     * @param bytes estimated size of the geometries, see {@link #estimateBytes(Geometry)}
+     */
+    public synchronized void put(final Database database, final String sql,
+                                 final List<Geometry> geometries, final long bytes) {
+        if (bytes > maxBytes) {
+            return;
+        }
+        Key key = new Key(database, sql);
+        remove(key);
+        entries.put(key, new Entry(Collections.unmodifiableList(geometries), bytes));
+        totalBytes += bytes;
+        evict();
+    }
+
+    /**
+     * Drops the cached results of one database, e.g. after its data has changed.
+     * @param database the database
+     */
+    public synchronized void invalidate(final Database database) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> next = it.next();
+            if (next.getKey().database.equals(database)) {
+                totalBytes -= next.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized void setMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the age after which a result is dropped.
+     * @param timeToLiveMillis the age in milliseconds, 0 for no limit
+     */
+    public synchronized void setTimeToLive(final long timeToLiveMillis) {
+        this.timeToLive = timeToLiveMillis;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Estimates the memory used by a geometry, from its number of points.
+     * @param geometry the geometry
+     * @return the estimated size in bytes
+     */
+    public static long estimateBytes(final Geometry geometry) {
+        return GEOMETRY_BYTES * geometry.getNumGeometries()
+                + COORDINATE_BYTES * geometry.getNumPoints();
+    }
+
+    /**
+     * Collapses whitespace outside quotes and removes trailing semicolons, so that
+     * reformatting a query still finds its result.
+     * @param sql the query
+     * @return the normalized query
+     */
+    static String normalize(final String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            space = false;
+            if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            normalized.append(c);
+        }
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';'
+                || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString();
+    }
+
+    private boolean isExpired(final Entry entry) {
+        return timeToLive > 0 && System.currentTimeMillis() - entry.created > timeToLive;
+    }
+
+    private void remove(final Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Drops expired results, then the least recently used ones until the cache fits
+     * in its budget.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (totalBytes > maxBytes || isExpired(entry)) {
+                totalBytes -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return size() + " results, " + totalBytes / BYTES_PER_MB + " MB, "
+                + hits + " hits, " + misses + " misses";
+    }
+
+    /**
+     * A query sent to a database.
+     */
+    private static final class Key {
+        private final Database database;
+        private final String sql;
+
+        Key(final Database database, final String sql) {
+            this.database = database;
+            this.sql = normalize(sql);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return database.equals(other.database) && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(database, sql);
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+        private final List<Geometry> geometries;
+        private final long bytes;
+        private final long created = System.currentTimeMillis();
+
+        Entry(final List<Geometry> geometries, final long bytes) {
+            this.geometries = geometries;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import com.vividsolutions.jts.geom.Geometry;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A query streaming its rows into a layer on a background thread.
+ * Cancelling the task cancels the statement on the server.
+ * With the result cache enabled, a cached result is drawn without running the query,
+ * and the result of a query that completes is stored in the cache.
+ * A query split into partitions runs its parts on several pooled connections at once,
+ * all filling the same layer.
+ * A probed query first asks the database for the extent and size of its result,
+ * and lets the JavaFX thread prepare the view or stop the query before any row is fetched.
+ */
+public class QueryTask extends BackgroundQuery {
+
+    private final String query;
+    private final QueryOptions options;
+    private final LayerLoader loader;
+    private final QueryResultCache cache;
+    private final QueryMetrics metrics = new QueryMetrics();
+    private final ReentrantLock receiving = new ReentrantLock();
+    private List<Geometry> cacheable;
+    private long cacheableBytes = 0;
+    private Predicate<QueryProbe> onProbed;
+
+    /**
+     * Creates a query task.
+     * @param query the query
+     * @param database the database to send it to
+     * @param options options of the query, not changed afterwards
+     * @param loader fills the layer with the rows
+     * @param cache cache for the result, used if the options enable it
+     */
+    public QueryTask(final String query, final Database database, final QueryOptions options,
+                     final LayerLoader loader, final QueryResultCache cache) {
+        super(database);
+        this.query = query;
+        this.options = options;
+        this.loader = loader;
+        this.cache = cache;
+        loader.setMetrics(metrics);
+    }
+
+    /**
+     * Sets what to do with the outcome of the probe, when the options enable it.
+     * @param onProbed called on the JavaFX thread before the rows are fetched;
+     *     returns false to cancel the query
+     */
+    public final void setOnProbed(final Predicate<QueryProbe> onProbed) {
+        this.onProbed = onProbed;
+    }
+
+    @Override
+    protected final QueryResult runQuery() {
+        Database database = getDatabase();
+        QueryHandle handle = getHandle();
+        SqlDialect dialect = SqlDialect.forDatabase(database);
+        String cacheKey = null;
+        if (cache != null && options.isCacheResults() && dialect != null) {
+            cacheKey = DatabaseConnector.prepareQuery(query, dialect, options);
+            List<Geometry> cached = cache.get(database, cacheKey);
+            if (cached != null) {
+                return loadCached(cached);
+            }
+            cacheable = new ArrayList<>();
+        }
+        QueryProbe probe = null;
+        // a viewport query fetches what is in view, there is nothing to move the view to
+        if (options.isProbe() && !options.isViewportQuery()) {
+            probe = DatabaseConnector.probeQuery(query, database,
+                    options.getVertexBudget() > 0, handle);
+            if (probe != null) {
+                loader.setExpectedRows(probe.getRows());
+                if (!confirmProbe(probe)) {
+                    cancel();
+                    QueryResult cancelled = new QueryResult();
+                    cancelled.setError(DatabaseConnector.CANCELLED);
+                    return cancelled;
+                }
+                if (cacheable != null) {
+                    // the view, and with it the detail fetched, may have changed
+                    cacheKey = DatabaseConnector.prepareQuery(query, dialect, options);
+                }
+            }
+        }
+        List<String> partitions = null;
+        if (options.getPartitions() > 1) {
+            partitions = DatabaseConnector.partitionQuery(query, database,
+                    options.getPartitions(), probe, handle);
+        }
+        QueryResult result;
+        if (partitions == null) {
+            result = DatabaseConnector.streamQuery(query, database, options,
+                    this::receive, handle, metrics);
+        } else {
+            result = streamPartitions(partitions);
+        }
+        // an empty viewport is not an error, the user panned to where there is no data
+        if (result.isSuccess() && result.getRows() == 0 && !options.isViewportQuery()) {
+            result.setError("Invalid Query");
+        }
+        if (result.getRows() > 0 || result.isSuccess()) {
+            loader.finish(this::reportMetrics);
+        }
+        if (cacheable != null && result.isSuccess()) {
+            cache.put(database, cacheKey, cacheable, cacheableBytes);
+        }
+        return result;
+    }
+
+    /**
+     * Hands the probe to the JavaFX thread and waits for it to decide whether to fetch
+     * the rows.
+     * @param probe the probe of the query
+     * @return true to fetch the rows
+     */
+    private boolean confirmProbe(final QueryProbe probe) {
+        if (onProbed == null) {
+            return true;
+        }
+        FutureTask<Boolean> decision = new FutureTask<>(() -> onProbed.test(probe));
+        Platform.runLater(decision);
+        try {
+            return decision.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // preparing the view failed, the rows can still be shown
+            return true;
+        }
+    }
+
+    /**
+     * Runs the parts of a partitioned query, at most as many at a time as the pool has
+     * connections. When a part fails the others are cancelled.
+     * @param partitions the queries of the parts
+     * @return the rows of all parts, and the first error
+     */
+    private QueryResult streamPartitions(final List<String> partitions) {
+        Database database = getDatabase();
+        QueryHandle handle = getHandle();
+        Queue<String> remaining = new ConcurrentLinkedQueue<>(partitions);
+        int workers = Math.min(partitions.size(), ConnectionPool.getPool(database).getMaxSize());
+        List<Future<QueryResult>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(QueryExecutor.submit(() -> {
+                QueryResult parts = new QueryResult();
+                String part = remaining.poll();
+                while (part != null && parts.isSuccess()) {
+                    parts.add(DatabaseConnector.streamQuery(part, database, options,
+                            this::receive, handle, metrics));
+                    part = remaining.poll();
+                }
+                if (!parts.isSuccess()) {
+                    handle.cancel();
+                }
+                return parts;
+            }));
+        }
+        QueryResult result = new QueryResult();
+        for (Future<QueryResult> future : futures) {
+            try {
+                result.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handle.cancel();
+            } catch (ExecutionException e) {
+                handle.cancel();
+                QueryResult failed = new QueryResult();
+                failed.setError(String.valueOf(e.getCause()));
+                result.add(failed);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hands a row to the layer, keeping a copy for the cache until the result gets
+     * too large to be cached. The parts of a partitioned query deliver rows from several
+     * threads, which take turns through a lock rather than a monitor: the loader may
+     * block while it waits for the JavaFX thread, and a virtual thread blocked inside
+     * synchronized code would hold on to its carrier thread.
+     * @param geometry geometry of the row
+     */
+    private void receive(final Geometry geometry) {
+        receiving.lock();
+        try {
+            if (cacheable != null) {
+                cacheableBytes += QueryResultCache.estimateBytes(geometry);
+                if (cacheableBytes <= cache.getMaxBytes()) {
+                    // the layer changes the coordinates of the geometries it draws
+                    cacheable.add((Geometry) geometry.clone());
+                } else {
+                    cacheable = null;
+                }
+            }
+            loader.accept(geometry);
+            addRow();
+        } finally {
+            receiving.unlock();
+        }
+    }
+
+    /**
+     * Fills the layer with a cached result.
+     * @param cached copies of the cached geometries
+     * @return the result
+     */
+    private QueryResult loadCached(final List<Geometry> cached) {
+        QueryResult result = new QueryResult();
+        result.setCached(true);
+        for (Geometry geometry : cached) {
+            if (isCancelled()) {
+                break;
+            }
+            loader.accept(geometry);
+            result.addRow();
+            addRow();
+        }
+        loader.finish(this::reportMetrics);
+        return result;
+    }
+
+    /**
+     * Shows the metrics of the query with its layer, once the layer is complete,
+     * and writes them to the metrics file.
+     */
+    private void reportMetrics() {
+        Layer layer = loader.getLayer();
+        layer.setQueryMetrics(metrics);
+        String layerName = layer.getLayerName();
+        QueryExecutor.execute(() -> metrics.export(layerName, getDatabase()));
+    }
+
+    /**
+     * Cancels the query and drops the rows it has not yet added to the layer.
+     */
+    @Override
+    public final void discard() {
+        loader.discard();
+        cancel();
+    }
+
+    @Override
+    public final boolean isFilling(final Layer layer) {
+        return loader.getLayer() == layer;
+    }
+
+    public final QueryOptions getOptions() {
+        return options;
+    }
+
+    public final Layer getLayer() {
+        return loader.getLayer();
+    }
+
+    public final QueryMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,138 @@
+import com.vividsolutions.jts.geom.Geometry;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A script of statements run in order on one connection, on a background thread,
+ * so that statements can build on the temporary tables and settings of earlier ones.
+ * Each statement returning geometries fills a layer of its own, created on the JavaFX
+ * thread when its first row arrives; statements returning no geometries get no layer.
+ */
+public class ScriptTask extends BackgroundQuery {
+
+    private final List<String> statements;
+    private final QueryOptions options;
+    private final IntFunction<LayerLoader> createLoader;
+    private final List<StatementSink> sinks = new ArrayList<>();
+    private volatile List<QueryResult> results = Collections.emptyList();
+
+    /**
+     * Creates a script task.
+     * @param statements the statements of the script
+     * @param database the database to send them to
+     * @param options options of the queries, not changed afterwards
+     * @param createLoader creates the loader filling the layer of a statement, by index;
+     *     called on the JavaFX thread
+     */
+    public ScriptTask(final List<String> statements, final Database database,
+                      final QueryOptions options, final IntFunction<LayerLoader> createLoader) {
+        super(database);
+        this.statements = statements;
+        this.options = options;
+        this.createLoader = createLoader;
+        for (int i = 0; i < statements.size(); i++) {
+            sinks.add(new StatementSink(i));
+        }
+    }
+
+    @Override
+    protected final QueryResult runQuery() {
+        results = DatabaseConnector.runScript(statements, getDatabase(), options,
+                sinks::get, i -> sinks.get(i).metrics, getHandle());
+        QueryResult total = new QueryResult();
+        for (QueryResult result : results) {
+            total.add(result);
+        }
+        for (StatementSink sink : sinks) {
+            sink.finish();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the results of the statements that were run, once the script is done.
+     * @return one result for each statement run, in order
+     */
+    public final List<QueryResult> getResults() {
+        return results;
+    }
+
+    public final List<String> getStatements() {
+        return statements;
+    }
+
+    @Override
+    public final boolean isFilling(final Layer layer) {
+        for (StatementSink sink : sinks) {
+            LayerLoader loader = sink.loader;
+            if (loader != null && loader.getLayer() == layer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public final void discard() {
+        for (StatementSink sink : sinks) {
+            LayerLoader loader = sink.loader;
+            if (loader != null) {
+                loader.discard();
+            }
+        }
+        cancel();
+    }
+
+    /**
+     * Receives the geometries of one statement, creating its layer on the first one.
+     * Used by the background thread only, apart from the loader being read when
+     * checking which layers the script fills.
+     */
+    private final class StatementSink implements Consumer<Geometry> {
+        private final int index;
+        private final QueryMetrics metrics = new QueryMetrics();
+        private volatile LayerLoader loader;
+
+        StatementSink(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void accept(final Geometry geometry) {
+            if (loader == null) {
+                FutureTask<LayerLoader> created = new FutureTask<>(
+                        () -> createLoader.apply(index));
+                Platform.runLater(created);
+                try {
+                    loader = created.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    getHandle().cancel();
+                    return;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Could not create layer", e.getCause());
+                }
+                loader.setMetrics(metrics);
+            }
+            loader.accept(geometry);
+            addRow();
+        }
+
+        /**
+         * Finishes the layer of the statement, if it got one.
+         */
+        void finish() {
+            if (loader != null) {
+                Layer layer = loader.getLayer();
+                loader.finish(() -> layer.setQueryMetrics(metrics));
+            }
+        }
+    }
+}
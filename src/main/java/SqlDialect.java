@@ -0,0 +1,239 @@
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQL that differs between the spatial databases the tool can query.
+ */
+public enum SqlDialect {
+
+    POSTGIS("ST_AsBinary", "ST_AsTWKB") {
+        @Override
+        public String envelopePredicate(final String geometry, final Envelope envelope) {
+            // && compares bounding boxes and can use a GiST index
+            return geometry + " && ST_MakeEnvelope(" + envelope.getMinX() + ", "
+                    + envelope.getMinY() + ", " + envelope.getMaxX() + ", "
+                    + envelope.getMaxY() + ")";
+        }
+
+        @Override
+        public String simplify(final String geometry, final double tolerance) {
+            // unlike ST_Simplify, keeps polygons valid and does not drop small ones
+            return "ST_SimplifyPreserveTopology(" + geometry + ", " + tolerance + ")";
+        }
+
+        @Override
+        public boolean supportsBinaryCopy() {
+            return true;
+        }
+
+        @Override
+        public String explain(final String sql) {
+            // ANALYZE runs the query, so the plan holds the actual times and row counts
+            return "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + sql;
+        }
+    },
+    /**
+     * The H2 database with the H2GIS functions, used embedded by the query benchmark.
+     * Its spatial functions and the && operator follow PostGIS.
+     */
+    H2GIS("ST_AsBinary", null) {
+        @Override
+        public String envelopePredicate(final String geometry, final Envelope envelope) {
+            return POSTGIS.envelopePredicate(geometry, envelope);
+        }
+
+        @Override
+        public String simplify(final String geometry, final double tolerance) {
+            return POSTGIS.simplify(geometry, tolerance);
+        }
+    },
+    MYSQL("ST_AsWKB", null) {
+        @Override
+        public String envelopePredicate(final String geometry, final Envelope envelope) {
+            return "MBRIntersects(" + geometry + ", ST_GeomFromText('"
+                    + toPolygonText(envelope) + "'))";
+        }
+
+        @Override
+        public String simplify(final String geometry, final double tolerance) {
+            return "ST_Simplify(" + geometry + ", " + tolerance + ")";
+        }
+
+        @Override
+        public String getExtentFunction() {
+            // MySQL has no aggregate for the extent of several geometries
+            return null;
+        }
+
+        @Override
+        public String getVertexCountFunction() {
+            // ST_NumPoints only accepts a LineString
+            return null;
+        }
+
+        @Override
+        public String explain(final String sql) {
+            return "EXPLAIN FORMAT=JSON " + sql;
+        }
+
+        @Override
+        public boolean hasBackslashEscapes() {
+            // unless the server runs with NO_BACKSLASH_ESCAPES
+            return true;
+        }
+
+        @Override
+        public Statement createCursorStatement(final Connection con, final int fetchSize)
+                throws SQLException {
+            // Connector/J streams rows one at a time for this fetch size instead of
+            // reading the whole result, without needing useCursorFetch in the url
+            Statement st = con.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            st.setFetchSize(Integer.MIN_VALUE);
+            return st;
+        }
+    };
+
+    private final String binaryFunction;
+    private final String compactFunction;
+
+    SqlDialect(final String binaryFunction, final String compactFunction) {
+        this.binaryFunction = binaryFunction;
+        this.compactFunction = compactFunction;
+    }
+
+    /**
+     * Finds the dialect from the JDBC url of the database.
+     * @param db the database
+     * @return the dialect, or null if the url is not a supported database
+     */
+    public static SqlDialect forDatabase(final Database db) {
+        String url = db.getUrl();
+        if (url.contains("mysql")) {
+            return MYSQL;
+        } else if (url.contains("postgresql")) {
+            return POSTGIS;
+        } else if (url.startsWith("jdbc:h2:")) {
+            return H2GIS;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the function returning a geometry as Well Known Binary.
+     * @return the function name
+     */
+    public String getBinaryFunction() {
+        return binaryFunction;
+    }
+
+    /**
+     * Gets the function returning a geometry as TWKB, taking the number of decimals
+     * to keep as second argument.
+     * @return the function name, or null if the database has none
+     */
+    public String getCompactFunction() {
+        return compactFunction;
+    }
+
+    /**
+     * Creates the statement asking for the plan of a query in JSON format.
+     * @param sql the query
+     * @return the EXPLAIN statement, or null if the database can not explain in JSON
+     */
+    public String explain(final String sql) {
+        return null;
+    }
+
+    /**
+     * Checks whether results can be streamed with COPY ... TO STDOUT (FORMAT binary)
+     * instead of through a result set.
+     * @return true if the database has binary COPY
+     */
+    public boolean supportsBinaryCopy() {
+        return false;
+    }
+
+    /**
+     * Checks whether a backslash escapes the next character in quoted strings. In
+     * standard SQL, as PostgreSQL with standard_conforming_strings and H2 read it,
+     * a backslash is an ordinary character outside E'' strings.
+     * @return true if every quoted string has backslash escapes
+     */
+    public boolean hasBackslashEscapes() {
+        return false;
+    }
+
+    /**
+     * Creates a condition that is true when the bounding box of a geometry intersects
+     * the envelope.
+     * @param geometry the geometry expression of the query
+     * @param envelope the envelope in the coordinates of the data
+     * @return the condition
+     */
+    public abstract String envelopePredicate(String geometry, Envelope envelope);
+
+    /**
+     * Gets the aggregate returning the extent of the geometries of all rows, whose
+     * bounds can be read with ST_XMin, ST_YMin, ST_XMax and ST_YMax.
+     * @return the function name, or null if the database has none
+     */
+    public String getExtentFunction() {
+        return "ST_Extent";
+    }
+
+    /**
+     * Gets the function returning the number of vertices of any geometry.
+     * @return the function name, or null if the database has none
+     */
+    public String getVertexCountFunction() {
+        return "ST_NPoints";
+    }
+
+    /**
+     * Creates an expression that simplifies a geometry on the server.
+     * @param geometry the geometry expression of the query
+     * @param tolerance largest distance, in the coordinates of the data, a simplified
+     *     line may be moved from the original
+     * @return the expression
+     */
+    public abstract String simplify(String geometry, double tolerance);
+
+    /**
+     * Creates a statement that reads its result through a server side cursor, so that
+     * only a few rows are held in memory at a time. The connection must be released
+     * to the pool afterwards, which ends the transaction the cursor needs.
+     * @param con a pooled connection
+     * @param fetchSize number of rows fetched in each round trip
+     * @return the statement
+     * @throws SQLException if the statement could not be created
+     */
+    public Statement createCursorStatement(final Connection con, final int fetchSize)
+            throws SQLException {
+        // the PostgreSQL driver only uses a cursor inside a transaction
+        con.setAutoCommit(false);
+        Statement st = con.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        st.setFetchSize(fetchSize);
+        return st;
+    }
+
+    /**
+     * Writes an envelope as a WKT polygon.
+     * @param envelope the envelope
+     * @return the polygon text
+     */
+    protected static String toPolygonText(final Envelope envelope) {
+        String minX = Double.toString(envelope.getMinX());
+        String minY = Double.toString(envelope.getMinY());
+        String maxX = Double.toString(envelope.getMaxX());
+        String maxY = Double.toString(envelope.getMaxY());
+        return "POLYGON((" + minX + " " + minY + ", " + maxX + " " + minY + ", "
+                + maxX + " " + maxY + ", " + minX + " " + maxY + ", "
+                + minX + " " + minY + "))";
+    }
+}
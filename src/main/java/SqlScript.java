@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A script of SQL statements separated by semicolons, as typed in the query area.
+ * Semicolons inside quoted strings, quoted identifiers, PostgreSQL dollar quoted
+ * strings and comments do not end a statement. A backslash escapes a quote only in
+ * PostgreSQL E'' strings, and in the strings of databases such as MySQL that always
+ * read backslash escapes.
+ * The statements are classified just enough to tell plain queries, which can run on any
+ * connection, from statements that change data or the state of the session.
+ */
+public class SqlScript {
+
+    /**
+     * Keywords a plain query starts with.
+     */
+    private static final String[] QUERY_STARTS = {"select", "with", "values", "table"};
+    /**
+     * Keywords that make a query write, for example SELECT ... INTO or a data modifying
+     * common table expression.
+     */
+    private static final String[] WRITING_WORDS = {
+        "into", "insert", "update", "delete", "merge", "for"};
+
+    private final String script;
+    private final boolean backslashEscapes;
+    private final List<String> statements = new ArrayList<>();
+
+    /**
+     * Splits a script into statements.
+     * @param script the script
+     * @param dialect dialect of the database the script is for, or null for standard SQL
+     */
+    public SqlScript(final String script, final SqlDialect dialect) {
+        this.script = script;
+        this.backslashEscapes = hasBackslashEscapes(dialect);
+        split();
+    }
+
+    /**
+     * Checks whether a backslash escapes the next character in every quoted string.
+     * @param dialect dialect of the database, or null for standard SQL
+     * @return true if it does
+     */
+    static boolean hasBackslashEscapes(final SqlDialect dialect) {
+        return dialect != null && dialect.hasBackslashEscapes();
+    }
+
+    /**
+     * Gets the statements of the script, without their semicolons. Statements holding
+     * only whitespace and comments are left out.
+     * @return the statements in the order they are written
+     */
+    public final List<String> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Checks if all statements are plain queries, which do not depend on each other and
+     * can run at the same time on separate connections.
+     * @return true if no statement changes data or the session
+     */
+    public final boolean isIndependent() {
+        for (String statement : statements) {
+            if (!isQuery(statement, backslashEscapes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a statement only reads: it starts like a query and has no clause that
+     * writes or locks rows.
+     * @param statement one statement
+     * @param dialect dialect of the database, or null for standard SQL
+     * @return true for a plain query
+     */
+    public static boolean isQuery(final String statement, final SqlDialect dialect) {
+        return isQuery(statement, hasBackslashEscapes(dialect));
+    }
+
+    private static boolean isQuery(final String statement, final boolean backslashEscapes) {
+        List<String> words = words(statement, backslashEscapes);
+        if (words.isEmpty() || !contains(QUERY_STARTS, words.get(0))) {
+            return false;
+        }
+        for (String word : words) {
+            if (contains(WRITING_WORDS, word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(final String[] keywords, final String word) {
+        for (String keyword : keywords) {
+            if (keyword.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the script at semicolons outside quotes and comments.
+     */
+    private void split() {
+        int start = 0;
+        int i = 0;
+        int length = script.length();
+        boolean hasCode = false;
+        while (i < length) {
+            char c = script.charAt(i);
+            int next = skip(script, i, backslashEscapes);
+            if (next > i) {
+                hasCode |= !isComment(script, i);
+                i = next;
+            } else if (c == ';') {
+                addStatement(start, i, hasCode);
+                start = i + 1;
+                hasCode = false;
+                i++;
+            } else {
+                hasCode |= !Character.isWhitespace(c);
+                i++;
+            }
+        }
+        addStatement(start, length, hasCode);
+    }
+
+    private void addStatement(final int start, final int end, final boolean hasCode) {
+        if (hasCode) {
+            statements.add(script.substring(start, end).trim());
+        }
+    }
+
+    /**
+     * Lists the lower case words of a statement outside quotes and comments.
+     */
+    private static List<String> words(final String sql, final boolean backslashEscapes) {
+        List<String> words = new ArrayList<>();
+        int i = 0;
+        while (i < sql.length()) {
+            int next = skip(sql, i, backslashEscapes);
+            if (next > i) {
+                i = next;
+            } else if (Character.isJavaIdentifierStart(sql.charAt(i))) {
+                int start = i;
+                while (i < sql.length() && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                words.add(sql.substring(start, i).toLowerCase(Locale.ROOT));
+            } else {
+                i++;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Skips a quoted string, quoted identifier, dollar quoted string or comment.
+     * GeometryQuery skips them the same way.
+     * @param sql the text
+     * @param start position to look at
+     * @param backslashEscapes true if a backslash escapes the next character in every
+     *     quoted string
+     * @return the position after it, or start if there is none at start
+     */
+    static int skip(final String sql, final int start, final boolean backslashEscapes) {
+        char c = sql.charAt(start);
+        if (c == '\'' || c == '"') {
+            return skipQuoted(sql, start, c,
+                    backslashEscapes || c == '\'' && isEscapeString(sql, start));
+        }
+        if (c == '`') {
+            return skipQuoted(sql, start, c, false);
+        }
+        if (startsWith(sql, start, "--")) {
+            int end = sql.indexOf('\n', start);
+            if (end < 0) {
+                return sql.length();
+            }
+            return end + 1;
+        }
+        if (startsWith(sql, start, "/*")) {
+            return skipBlockComment(sql, start);
+        }
+        if (c == '$') {
+            return skipDollarQuoted(sql, start);
+        }
+        return start;
+    }
+
+    private static boolean isComment(final String sql, final int start) {
+        return startsWith(sql, start, "--") || startsWith(sql, start, "/*");
+    }
+
+    private static boolean startsWith(final String sql, final int start, final String prefix) {
+        return sql.startsWith(prefix, start);
+    }
+
+    /**
+     * Checks if a quote starts a PostgreSQL escape string, such as E'it\'s'.
+     */
+    private static boolean isEscapeString(final String sql, final int quote) {
+        return quote > 0 && Character.toUpperCase(sql.charAt(quote - 1)) == 'E'
+                && (quote == 1 || !Character.isJavaIdentifierPart(sql.charAt(quote - 2)));
+    }
+
+    private static int skipQuoted(final String sql, final int start, final char quote,
+                                  final boolean backslashEscapes) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            if (c == '\\' && backslashEscapes) {
+                i++;
+            }
+            i++;
+        }
+        return sql.length();
+    }
+
+    /**
+     * Skips a block comment; PostgreSQL lets them nest.
+     */
+    private static int skipBlockComment(final String sql, final int start) {
+        int depth = 0;
+        int i = start;
+        while (i < sql.length()) {
+            if (startsWith(sql, i, "/*")) {
+                depth++;
+                i += 2;
+            } else if (startsWith(sql, i, "*/")) {
+                depth--;
+                i += 2;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return sql.length();
+    }
+
+    /**
+     * Skips a PostgreSQL dollar quoted string such as $$ ... $$ or $body$ ... $body$,
+     * used for function bodies that hold semicolons of their own.
+     * A $ that does not start a tag, like a $1 parameter, is not skipped.
+     */
+    private static int skipDollarQuoted(final String sql, final int start) {
+        int i = start + 1;
+        while (i < sql.length() && (Character.isLetter(sql.charAt(i))
+                || sql.charAt(i) == '_' || i > start + 1 && Character.isDigit(sql.charAt(i)))) {
+            i++;
+        }
+        if (i >= sql.length() || sql.charAt(i) != '$') {
+            return start;
+        }
+        String tag = sql.substring(start, i + 1);
+        int end = sql.indexOf(tag, i + 1);
+        if (end < 0) {
+            return sql.length();
+        }
+        return end + tag.length();
+    }
+}
@@ -0,0 +1,151 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits how long a statement may run by cancelling it from a timer thread.
+ * The PostgreSQL driver in use does not implement Statement.setQueryTimeout, it throws
+ * for any timeout above zero, while Statement.cancel() works with every driver.
+ * A timeout opened with {@link #start} runs until it is closed, so it also bounds reading
+ * the rows of a cursor or a COPY; the static execute methods only bound executing.
+ * A statement cancelled because its time ran out fails with an SQLTimeoutException.
+ */
+public final class StatementTimeout implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(StatementTimeout.class.getName());
+
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "statement-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Statement statement;
+    private final ScheduledFuture<?> timer;
+    private boolean finished = false;
+    private volatile boolean expired = false;
+
+    private StatementTimeout(final Statement statement, final int seconds) {
+        this.statement = statement;
+        if (seconds > 0) {
+            this.timer = TIMER.schedule(this::expire, seconds, TimeUnit.SECONDS);
+        } else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Starts the time of a statement about to be executed. The statement is cancelled if
+     * the timeout is still open when the time runs out, whether it is executing or its
+     * rows are being read.
+     * @param statement the statement
+     * @param seconds seconds the statement may run, 0 for no limit
+     * @return the timeout, to be closed once the rows are read
+     */
+    public static StatementTimeout start(final Statement statement, final int seconds) {
+        return new StatementTimeout(statement, seconds);
+    }
+
+    /**
+     * Executes a query, cancelling it if it executes longer than the timeout. Reading
+     * the rows of the result is not limited.
+     * @param statement the statement
+     * @param sql the query
+     * @param seconds seconds the query may execute, 0 for no limit
+     * @return the result
+     * @throws SQLException if the query fails, an SQLTimeoutException if it timed out
+     */
+    public static ResultSet executeQuery(final Statement statement, final String sql,
+                                         final int seconds) throws SQLException {
+        try (StatementTimeout timeout = new StatementTimeout(statement, seconds)) {
+            try {
+                return statement.executeQuery(sql);
+            } catch (SQLException ex) {
+                throw timeout.check(ex);
+            }
+        }
+    }
+
+    /**
+     * Executes a statement, cancelling it if it executes longer than the timeout.
+     * Reading the rows of the result is not limited.
+     * @param statement the statement
+     * @param sql the statement to execute
+     * @param seconds seconds the statement may execute, 0 for no limit
+     * @return true if the statement returned rows, as Statement.execute
+     * @throws SQLException if the statement fails, an SQLTimeoutException if it timed out
+     */
+    public static boolean execute(final Statement statement, final String sql,
+                                  final int seconds) throws SQLException {
+        try (StatementTimeout timeout = new StatementTimeout(statement, seconds)) {
+            try {
+                return statement.execute(sql);
+            } catch (SQLException ex) {
+                throw timeout.check(ex);
+            }
+        }
+    }
+
+    /**
+     * Cancels the statement, unless it has finished in the meantime, so that a late
+     * cancel can not hit the next statement on the same connection.
+     */
+    private synchronized void expire() {
+        if (finished) {
+            return;
+        }
+        expired = true;
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tells whether the time ran out. Rows the driver fetched before the statement was
+     * cancelled can still be read, so readers stop when this is true.
+     * @return true if the statement was cancelled because its time ran out
+     */
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Fails if the time ran out, for readers between rows.
+     * @throws SQLTimeoutException if the time ran out
+     */
+    public void checkExpired() throws SQLTimeoutException {
+        if (expired) {
+            throw new SQLTimeoutException(DatabaseConnector.TIMED_OUT);
+        }
+    }
+
+    /**
+     * Gives the exception to throw for an error of the statement.
+     * @param ex the error
+     * @return an SQLTimeoutException if the time ran out, otherwise the error itself
+     */
+    public synchronized SQLException check(final SQLException ex) {
+        if (expired) {
+            return new SQLTimeoutException(DatabaseConnector.TIMED_OUT, ex);
+        }
+        return ex;
+    }
+
+    @Override
+    public synchronized void close() {
+        finished = true;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+}
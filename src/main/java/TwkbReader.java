@@ -0,0 +1,285 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+
+/**
+ * Reads Tiny Well Known Binary, the compact format returned by PostGIS ST_AsTWKB.
+ * Coordinates are rounded to a number of decimals and stored as variable length
+ * differences from the previous point, which makes a geometry several times smaller
+ * than WKB. Not thread safe, one reader is used per query.
+ */
+public class TwkbReader {
+
+    private static final int POINT = 1;
+    private static final int LINESTRING = 2;
+    private static final int POLYGON = 3;
+    private static final int MULTIPOINT = 4;
+    private static final int MULTILINESTRING = 5;
+    private static final int MULTIPOLYGON = 6;
+    private static final int COLLECTION = 7;
+
+    private static final int TYPE_MASK = 0x0F;
+    private static final int PRECISION_SHIFT = 4;
+    private static final int HAS_BBOX = 0x01;
+    private static final int HAS_SIZE = 0x02;
+    private static final int HAS_IDLIST = 0x04;
+    private static final int HAS_EXTENDED = 0x08;
+    private static final int IS_EMPTY = 0x10;
+    private static final int HAS_Z = 0x01;
+    private static final int HAS_M = 0x02;
+    private static final int Z_PRECISION_SHIFT = 2;
+    private static final int EXTENDED_PRECISION_MASK = 0x07;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int VARINT_MASK = 0x7F;
+    private static final int VARINT_MORE = 0x80;
+    private static final int VARINT_SHIFT = 7;
+    private static final int MAX_VARINT_SHIFT = 63;
+    private static final double BASE = 10;
+
+    private final GeometryFactory geometryFactory;
+    private byte[] bytes;
+    private int position;
+    /**
+     * Powers of ten the stored integers are divided by; a negative precision, rounding
+     * to tens or more, has a divisor below one.
+     */
+    private double xyDivisor;
+    private double zDivisor;
+    private int dimensions;
+    private boolean hasZ;
+    private long[] last;
+
+    public TwkbReader(final GeometryFactory geometryFactory) {
+        this.geometryFactory = geometryFactory;
+    }
+
+    /**
+     * Reads a geometry.
+     * @param twkb the TWKB value
+     * @return the geometry
+     * @throws ParseException if the value is not valid TWKB
+     */
+    public final Geometry read(final byte[] twkb) throws ParseException {
+        this.bytes = twkb;
+        this.position = 0;
+        try {
+            return readGeometry();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ParseException("Unexpected end of TWKB at byte " + position);
+        }
+    }
+
+    private Geometry readGeometry() throws ParseException {
+        int header = readByte();
+        int type = header & TYPE_MASK;
+        int precision = zigZag(header >> PRECISION_SHIFT);
+        int metadata = readByte();
+        hasZ = false;
+        boolean hasM = false;
+        int zPrecision = 0;
+        if ((metadata & HAS_EXTENDED) != 0) {
+            int extended = readByte();
+            hasZ = (extended & HAS_Z) != 0;
+            hasM = (extended & HAS_M) != 0;
+            zPrecision = (extended >> Z_PRECISION_SHIFT) & EXTENDED_PRECISION_MASK;
+        }
+        dimensions = 2;
+        if (hasZ) {
+            dimensions++;
+        }
+        if (hasM) {
+            dimensions++;
+        }
+        xyDivisor = Math.pow(BASE, precision);
+        zDivisor = Math.pow(BASE, zPrecision);
+        last = new long[dimensions];
+        if ((metadata & HAS_SIZE) != 0) {
+            readUnsigned();
+        }
+        if ((metadata & HAS_BBOX) != 0) {
+            // minimum and extent of each dimension, not needed to build the geometry
+            for (int i = 0; i < 2 * dimensions; i++) {
+                readUnsigned();
+            }
+        }
+        if ((metadata & IS_EMPTY) != 0) {
+            return createEmpty(type);
+        }
+        boolean hasIds = (metadata & HAS_IDLIST) != 0;
+        switch (type) {
+            case POINT:
+                return geometryFactory.createPoint(readCoordinate());
+            case LINESTRING:
+                return geometryFactory.createLineString(readCoordinates(readCount()));
+            case POLYGON:
+                return readPolygon();
+            case MULTIPOINT:
+                Point[] points = new Point[readCount()];
+                skipIds(hasIds, points.length);
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = geometryFactory.createPoint(readCoordinate());
+                }
+                return geometryFactory.createMultiPoint(points);
+            case MULTILINESTRING:
+                LineString[] lines = new LineString[readCount()];
+                skipIds(hasIds, lines.length);
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = geometryFactory.createLineString(readCoordinates(readCount()));
+                }
+                return geometryFactory.createMultiLineString(lines);
+            case MULTIPOLYGON:
+                Polygon[] polygons = new Polygon[readCount()];
+                skipIds(hasIds, polygons.length);
+                for (int i = 0; i < polygons.length; i++) {
+                    polygons[i] = readPolygon();
+                }
+                return geometryFactory.createMultiPolygon(polygons);
+            case COLLECTION:
+                Geometry[] members = new Geometry[readCount()];
+                skipIds(hasIds, members.length);
+                for (int i = 0; i < members.length; i++) {
+                    // every member has its own header and starts from the origin again
+                    members[i] = readGeometry();
+                }
+                return geometryFactory.createGeometryCollection(members);
+            default:
+                throw new ParseException("Unknown TWKB geometry type " + type);
+        }
+    }
+
+    private Geometry createEmpty(final int type) throws ParseException {
+        switch (type) {
+            case POINT:
+                return geometryFactory.createPoint((Coordinate) null);
+            case LINESTRING:
+                return geometryFactory.createLineString(new Coordinate[0]);
+            case POLYGON:
+                return geometryFactory.createPolygon(null, null);
+            case MULTIPOINT:
+                return geometryFactory.createMultiPoint(new Point[0]);
+            case MULTILINESTRING:
+                return geometryFactory.createMultiLineString(new LineString[0]);
+            case MULTIPOLYGON:
+                return geometryFactory.createMultiPolygon(new Polygon[0]);
+            case COLLECTION:
+                return geometryFactory.createGeometryCollection(new Geometry[0]);
+            default:
+                throw new ParseException("Unknown TWKB geometry type " + type);
+        }
+    }
+
+    private Polygon readPolygon() throws ParseException {
+        int ringCount = readCount();
+        if (ringCount == 0) {
+            return geometryFactory.createPolygon(null, null);
+        }
+        LinearRing shell = readRing();
+        LinearRing[] holes = new LinearRing[ringCount - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = readRing();
+        }
+        return geometryFactory.createPolygon(shell, holes);
+    }
+
+    private LinearRing readRing() throws ParseException {
+        int count = readCount();
+        Coordinate[] coordinates = readCoordinates(count);
+        if (count > 0 && !coordinates[0].equals2D(coordinates[count - 1])) {
+            Coordinate[] closed = new Coordinate[count + 1];
+            System.arraycopy(coordinates, 0, closed, 0, count);
+            closed[count] = new Coordinate(coordinates[0]);
+            coordinates = closed;
+        }
+        return geometryFactory.createLinearRing(coordinates);
+    }
+
+    private Coordinate[] readCoordinates(final int count) throws ParseException {
+        Coordinate[] coordinates = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            coordinates[i] = readCoordinate();
+        }
+        return coordinates;
+    }
+
+    /**
+     * Reads a point, stored as the difference from the previous point of the geometry.
+     * @return the coordinate
+     * @throws ParseException if a number is too long
+     */
+    private Coordinate readCoordinate() throws ParseException {
+        for (int d = 0; d < dimensions; d++) {
+            last[d] += zigZag(readUnsigned());
+        }
+        Coordinate coordinate = new Coordinate(scale(last[0], xyDivisor),
+                scale(last[1], xyDivisor));
+        if (hasZ) {
+            coordinate.z = scale(last[2], zDivisor);
+        }
+        return coordinate;
+    }
+
+    /**
+     * Turns a stored integer into an ordinate. Dividing by a power of ten, instead of
+     * multiplying by its inverse, which is not exact, gives the double nearest to the
+     * decimal value, the same as reading the value from WKT.
+     */
+    private static double scale(final long value, final double divisor) {
+        if (divisor >= 1) {
+            return value / divisor;
+        }
+        return value * (1 / divisor);
+    }
+
+    private void skipIds(final boolean hasIds, final int count) throws ParseException {
+        if (hasIds) {
+            for (int i = 0; i < count; i++) {
+                readUnsigned();
+            }
+        }
+    }
+
+    private int readCount() throws ParseException {
+        long count = readUnsigned();
+        if (count > bytes.length) {
+            throw new ParseException("Invalid TWKB element count " + count);
+        }
+        return (int) count;
+    }
+
+    private int readByte() {
+        return bytes[position++] & BYTE_MASK;
+    }
+
+    /**
+     * Reads an unsigned variable length integer, seven bits per byte.
+     * @return the value
+     * @throws ParseException if the value has more than 64 bits
+     */
+    private long readUnsigned() throws ParseException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > MAX_VARINT_SHIFT) {
+                throw new ParseException("Invalid TWKB varint at byte " + position);
+            }
+            b = readByte();
+            value |= (long) (b & VARINT_MASK) << shift;
+            shift += VARINT_SHIFT;
+        } while ((b & VARINT_MORE) != 0);
+        return value;
+    }
+
+    private static long zigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int zigZag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
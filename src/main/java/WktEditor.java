@@ -0,0 +1,194 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.AnchorPane;
+import javafx.util.Duration;
+import models.GeometryModel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the WKT being typed to the selected layer; GeoJSON and hex WKB are read as
+ * well, see GeometryTextParser. A short while after the last key stroke the text is
+ * parsed on a background thread, and the geometries are compared
+ * with the models the layer already has: models of unchanged geometries are kept,
+ * only the geometries that are new or changed get models, and the models of removed
+ * geometries are dropped. Editing one ring of a large collection therefore only creates
+ * one model and its tooltips, and the other layers are redrawn without being
+ * transformed again or getting new tooltips.
+ * Invalid text is marked in the text area and leaves the layer as it is.
+ */
+public class WktEditor {
+
+    private static final Duration EDIT_DELAY = Duration.millis(500);
+    private static final String INVALID_STYLE = "-fx-control-inner-background: mistyrose;";
+
+    private final TextArea textArea;
+    private final AnchorPane group;
+    private final DisplayController displayController;
+    private final PauseTransition editDelay = new PauseTransition(EDIT_DELAY);
+    /**
+     * Counts the changes of the text, so a parse of text that has changed since is
+     * not applied. Used on the JavaFX thread only.
+     */
+    private long edits = 0;
+
+    /**
+     * Starts following the text area.
+     * @param textArea the WKT text area
+     * @param group the pane the layers are drawn in
+     * @param displayController places new models in the current view
+     */
+    public WktEditor(final TextArea textArea, final AnchorPane group,
+                     final DisplayController displayController) {
+        this.textArea = textArea;
+        this.group = group;
+        this.displayController = displayController;
+        editDelay.setOnFinished(event -> parse());
+        textArea.textProperty().addListener((observable, oldText, newText) -> {
+            edits++;
+            editDelay.playFromStart();
+        });
+    }
+
+    /**
+     * Parses the text in the background, unless it is what the selected layer already
+     * shows, for example because the layer was just selected.
+     */
+    private void parse() {
+        Layer layer = Layer.getSelectedLayer();
+        String text = textArea.getText();
+        if (layer == null || text == null || text.trim().isEmpty()
+                || text.equals(layer.getWKTString())) {
+            markValid(null);
+            return;
+        }
+        long edit = edits;
+        List<GeometryModel> current = new ArrayList<>();
+        if (layer.getGisVis() != null) {
+            current.addAll(layer.getGisVis().getGeometryModelList());
+        }
+        QueryExecutor.execute(() -> {
+            GeometryTextParser parser;
+            List<Geometry> geometries;
+            try {
+                parser = new GeometryTextParser(text);
+                geometries = parser.parse();
+            } catch (com.vividsolutions.jts.io.ParseException | IllegalArgumentException e) {
+                String message = e.getMessage();
+                Platform.runLater(() -> {
+                    if (edit == edits) {
+                        markValid(message);
+                    }
+                });
+                return;
+            }
+            List<GeometryModel> models = new ArrayList<>(geometries.size());
+            List<GeometryModel> created = diff(current, geometries, models);
+            String type = parser.getGeometryType();
+            Platform.runLater(() -> apply(layer, text, type, edit, current, models, created));
+        });
+    }
+
+    /**
+     * Pairs the geometries with the models of the same geometries, and creates models
+     * for the geometries that have none. Runs on a background thread; the models' own
+     * geometries are only read.
+     * @param current the models of the layer
+     * @param geometries the parsed geometries, in the order of the text
+     * @param models receives the model of each geometry, in the order of the text
+     * @return the models that were created
+     */
+    private List<GeometryModel> diff(final List<GeometryModel> current,
+                                     final List<Geometry> geometries,
+                                     final List<GeometryModel> models) {
+        Map<Geometry, ArrayDeque<GeometryModel>> unchanged = new HashMap<>();
+        for (GeometryModel model : current) {
+            unchanged.computeIfAbsent(model.getOriginalGeometry(), g -> new ArrayDeque<>())
+                    .add(model);
+        }
+        List<Geometry> changed = new ArrayList<>();
+        List<Integer> changedIndexes = new ArrayList<>();
+        for (Geometry geometry : geometries) {
+            ArrayDeque<GeometryModel> same = unchanged.get(key(geometry));
+            if (same == null || same.isEmpty()) {
+                changedIndexes.add(models.size());
+                changed.add(geometry);
+                models.add(null);
+            } else {
+                models.add(same.poll());
+            }
+        }
+        List<GeometryModel> created = WktParser.createModels(changed, group, false);
+        for (int i = 0; i < created.size(); i++) {
+            models.set(changedIndexes.get(i), created.get(i));
+        }
+        return created;
+    }
+
+    /**
+     * Gets the geometry a model would keep as its original. The holes of a polygon
+     * are turned the opposite way of its shell when its model is created.
+     */
+    private static Geometry key(final Geometry geometry) {
+        if (geometry instanceof Polygon && ((Polygon) geometry).getNumInteriorRing() > 0) {
+            return GeometryModel.holeFunction(geometry);
+        }
+        return geometry;
+    }
+
+    /**
+     * Gives the layer its new models and redraws, if the text and the layer have not
+     * changed since the text was parsed. Only the created models get new tooltips.
+     */
+    private void apply(final Layer layer, final String text, final String type,
+                       final long edit, final List<GeometryModel> before,
+                       final List<GeometryModel> models, final List<GeometryModel> created) {
+        if (edit != edits || Layer.getSelectedLayer() != layer) {
+            return;
+        }
+        markValid(null);
+        if (created.isEmpty() && models.size() == before.size()) {
+            layer.setWKTString(text);
+            return;
+        }
+        WktParser wktParser = new WktParser(layer, group);
+        boolean first = layer.getGisVis() == null;
+        if (first) {
+            wktParser.beginLayerUpdate();
+        } else if (!layer.getGisVis().getGeometryModelList().equals(before)) {
+            // the layer was filled by something else while the text was parsed
+            return;
+        }
+        layer.setLiveLayer(null);
+        layer.getGisVis().replaceModels(models);
+        displayController.transformModels(created);
+        if (first || layer.getLayerName().equals("Empty")) {
+            wktParser.finishLayerUpdate(text, type);
+        } else {
+            layer.setWKTString(text);
+            layer.redrawChanged(created);
+        }
+    }
+
+    /**
+     * Marks the text area as holding invalid WKT, with the error as its tooltip.
+     * @param error the parse error, or null to remove the mark
+     */
+    private void markValid(final String error) {
+        if (error == null) {
+            textArea.setStyle("");
+            textArea.setTooltip(null);
+        } else {
+            textArea.setStyle(INVALID_STYLE);
+            textArea.setTooltip(new Tooltip(error));
+        }
+    }
+}
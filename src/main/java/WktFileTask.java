@@ -0,0 +1,79 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a WKT file into a layer on a background thread. The file is never held as a
+ * whole: each geometry, or each member of a collection, is handed to the layer as soon
+ * as it is parsed, so a large GEOMETRYCOLLECTION fills the layer progressively.
+ * Cancelling the task stops reading, and the geometries read so far stay in the layer.
+ */
+public class WktFileTask extends BackgroundQuery {
+
+    private final File file;
+    private final LayerLoader loader;
+    private final QueryMetrics metrics = new QueryMetrics();
+
+    /**
+     * Creates a task reading a file.
+     * @param file the WKT file
+     * @param loader fills the layer with the geometries
+     */
+    public WktFileTask(final File file, final LayerLoader loader) {
+        super(null);
+        this.file = file;
+        this.loader = loader;
+        loader.setMetrics(metrics);
+    }
+
+    @Override
+    protected final QueryResult runQuery() {
+        QueryResult result = new QueryResult();
+        metrics.addBytes(file.length());
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            WktStreamReader reader = new WktStreamReader(input);
+            while (!getHandle().isCancelled()) {
+                long start = System.nanoTime();
+                Geometry geometry = reader.next();
+                metrics.addTime(QueryMetrics.Phase.DECODE, start);
+                if (geometry == null) {
+                    break;
+                }
+                metrics.addRows(1);
+                loader.accept(geometry);
+                result.addRow();
+                addRow();
+            }
+        } catch (IOException e) {
+            result.setError("Could not read " + file.getName() + ": " + e.getMessage());
+        } catch (ParseException e) {
+            result.setError("Invalid WKT in " + file.getName() + ": " + e.getMessage());
+        }
+        if (result.isSuccess() && result.getRows() == 0) {
+            result.setError("No geometries in " + file.getName());
+        }
+        if (result.getRows() > 0) {
+            loader.finish(() -> loader.getLayer().setQueryMetrics(metrics));
+        }
+        return result;
+    }
+
+    /**
+     * Stops reading and drops the geometries not yet added to the layer.
+     */
+    @Override
+    public final void discard() {
+        loader.discard();
+        cancel();
+    }
+
+    @Override
+    public final boolean isFilling(final Layer layer) {
+        return loader.getLayer() == layer;
+    }
+}
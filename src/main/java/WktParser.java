@@ -1,38 +1,28 @@
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.io.WKTReader;
 import javafx.scene.layout.AnchorPane;
-import org.geotools.geometry.jts.JTSFactoryFinder;
+import models.GeometryModel;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Johannes on 07.10.2015.
  */
 public class WktParser {
 
-    private static WKTReader wktReader;
     private Layer layer;
     private String inputString;
     private String upperMostGeometryType;
     private ArrayList<Geometry> geometries;
+    private List<GeometryModel> models;
     private AnchorPane group;
 
     public WktParser(final Layer layer, final AnchorPane group) {
         this.layer = layer;
         this.geometries = new ArrayList<>();
         this.group = group;
-        initializeWktReader();
-    }
-
-    private void initializeWktReader() {
-        if (wktReader == null) {
-            //Create a WKT parser for reading WKT input
-            GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
-            wktReader = new WKTReader(geometryFactory);
-        }
     }
 
     public final void printAllFoundGeometries() {
@@ -51,7 +41,10 @@ public class WktParser {
 
     /**
      * Creates and saves geometry. Calls methods to create new layer and visualization.
-     * @param poly Well Known Text from user input
+     * The text may hold several geometries on separate lines, and may also be EWKT,
+     * GeoJSON or hex (E)WKB, as GeometryTextParser detects. Large WKT is parsed, and
+     * the models created, on all cores.
+     * @param poly geometry text from user input
      */
     public final boolean parseWktString(final String poly) {
         if (poly == null || poly.equals("")) {
@@ -59,10 +52,11 @@ public class WktParser {
             return false;
         } else {
             try {
-                Geometry geom = wktReader.read(poly);
+                GeometryTextParser parser = new GeometryTextParser(poly);
+                this.geometries = new ArrayList<>(parser.parse());
+                this.models = ParallelWktParser.createModels(geometries, group);
                 this.inputString = poly;
-                this.upperMostGeometryType = geom.getGeometryType();
-                extractAllGeometries(geom);
+                this.upperMostGeometryType = parser.getGeometryType();
             } catch (com.vividsolutions.jts.io.ParseException | java.lang.IllegalArgumentException e) {
                 showWKTParseErrorMessage();
                 return false;
@@ -73,12 +67,21 @@ public class WktParser {
     }
 
     public final void extractAllGeometries(final Geometry geom) {
+        extractAllGeometries(geom, this.geometries);
+    }
+
+    /**
+     * Splits a geometry into the single geometries a layer is drawn from.
+     * @param geom geometry to split, collections are split recursively
+     * @param target list the single geometries are added to
+     */
+    public static void extractAllGeometries(final Geometry geom, final List<Geometry> target) {
         if (geom instanceof GeometryCollection) {
             for (int i = 0; i < geom.getNumGeometries(); i++) {
-                refineGeometryClass(geom.getGeometryN(i));
+                refineGeometryClass(geom.getGeometryN(i), target);
             }
         } else {
-            refineGeometryClass(geom);
+            refineGeometryClass(geom, target);
         }
     }
 
@@ -86,23 +89,25 @@ public class WktParser {
      * Delegates the task of creating the layer for this geometry. Whether it is a plain WKT object,
      * or a composite such as a MultiPolygon.
      * @param geometry geometry to consider.
+     * @param target list the single geometries are added to
      */
-    private void refineGeometryClass(final Geometry geometry) {
+    private static void refineGeometryClass(final Geometry geometry, final List<Geometry> target) {
         if (geometry instanceof GeometryCollection) {
-            extractAllGeometries(geometry);
+            extractAllGeometries(geometry, target);
         } else {
-            createLayersFromMultiples(geometry);
-            //this.geometries.add(geometry);
+            createLayersFromMultiples(geometry, target);
         }
     }
 
     /**
      * Assumes the given geometry is of a multiple type, and creates a layer for each.
      * @param geometry geometry to consider.
+     * @param target list the single geometries are added to
      */
-    private void createLayersFromMultiples(final Geometry geometry) {
+    private static void createLayersFromMultiples(final Geometry geometry,
+                                                  final List<Geometry> target) {
         for (int i = 0; i < geometry.getNumGeometries(); i++) {
-            this.geometries.add(geometry.getGeometryN(i));
+            target.add(geometry.getGeometryN(i));
         }
     }
 
@@ -111,25 +116,92 @@ public class WktParser {
      */
     public final void updateLayerGeometries() {
         if (layer != null) {
-            if (layer.getGisVis() == null) {
-                layer.setGisVis(new GisVisualization(group));
-                layer.setColorPickerValue(GisVisualization.getColor(layer.getGisVis().getID()));
+            beginLayerUpdate();
+            if (models == null) {
+                appendGeometries(geometries);
             } else {
-                layer.getGisVis().clearGeometryModelList();
+                layer.getGisVis().addModels(models);
             }
-            for (Geometry geometry : geometries) {
+            finishLayerUpdate(inputString, upperMostGeometryType);
+        }
+    }
+
+    /**
+     * Prepares the layer for receiving geometries, creating its visualization if needed
+     * and removing the geometries it already has.
+     */
+    public final void beginLayerUpdate() {
+        if (layer.getGisVis() == null) {
+            layer.setGisVis(new GisVisualization(group));
+            layer.setColorPickerValue(GisVisualization.getColor(layer.getGisVis().getID()));
+        } else {
+            layer.getGisVis().clearGeometryModelList();
+        }
+    }
+
+    /**
+     * Adds geometries to the layer, for example a batch of rows streamed from a query.
+     * @param newGeometries geometries to add, their y-coordinates are inverted in place
+     * @return the models created for the geometries
+     */
+    public final List<GeometryModel> appendGeometries(final List<Geometry> newGeometries) {
+        List<GeometryModel> models = createModels(newGeometries, group);
+        layer.getGisVis().addModels(models);
+        return models;
+    }
+
+    /**
+     * Creates the models of geometries without adding them to a layer. The scene is not
+     * touched, so this can run on a background thread.
+     * @param newGeometries geometries to create models for, their y-coordinates are
+     *     inverted in place
+     * @param group the pane the models will be drawn in
+     * @return the models, in the order of the geometries
+     */
+    public static List<GeometryModel> createModels(final List<Geometry> newGeometries,
+                                                   final AnchorPane group) {
+        return createModels(newGeometries, group, true);
+    }
+
+    /**
+     * Creates the models of geometries without adding them to a layer.
+     * @param newGeometries geometries to create models for
+     * @param group the pane the models will be drawn in
+     * @param invertY false if the y-coordinates were inverted already, for example by
+     *     FastWktReader while reading them
+     * @return the models, in the order of the geometries
+     */
+    public static List<GeometryModel> createModels(final List<Geometry> newGeometries,
+                                                   final AnchorPane group,
+                                                   final boolean invertY) {
+        List<GeometryModel> models = new ArrayList<>(newGeometries.size());
+        for (Geometry geometry : newGeometries) {
+            if (invertY) {
                 invertYcoordinates(geometry);
-                layer.getGisVis().addGeometry(geometry);
             }
-            layer.setWKTString(inputString);
-            if (layer.getLayerName().equals("Empty")) {
-                layer.setName(upperMostGeometryType);
-            }
-            layer.reorderLayers();
+            models.add(GeometryModel.getModel(geometry, group));
+        }
+        return models;
+    }
+
+    /**
+     * Stores the WKT of the layer and names it after the geometry type if it is still unnamed.
+     * @param wkt the text shown when the layer is selected
+     * @param geometryType name used for an unnamed layer
+     */
+    public final void finishLayerUpdate(final String wkt, final String geometryType) {
+        layer.setWKTString(wkt);
+        if (layer.getLayerName().equals("Empty") && geometryType != null) {
+            layer.setName(geometryType);
         }
+        layer.reorderLayers();
     }
 
-    private void invertYcoordinates(final Geometry geometry) {
+    /**
+     * Negates the y-coordinates of a single geometry, for the drawing pane.
+     * @param geometry the geometry, changed in place
+     */
+    static void invertYcoordinates(final Geometry geometry) {
         Coordinate[] coord = geometry.getCoordinates();
         for (Coordinate aCoord : coord) {
             aCoord.y *= -1;
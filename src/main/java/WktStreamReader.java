@@ -0,0 +1,299 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads WKT from a Reader one geometry at a time, without holding the whole text.
+ * The members of a GEOMETRYCOLLECTION or of a MULTIPOINT, MULTILINESTRING or
+ * MULTIPOLYGON are returned one by one as soon as each is complete, so reading a
+ * large collection needs memory for one member rather than for the whole document.
+ * Several geometries may follow each other, separated by whitespace, commas or
+ * semicolons. A geometry may be EWKT, starting with SRID=n; which is set as the SRID
+ * of the geometry, or of each member of a collection.
+ */
+public class WktStreamReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final FastWktReader wktReader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int length = 0;
+    private long offset = 0;
+    private String container;
+    private String documentType;
+    private int members = 0;
+    private int srid = 0;
+
+    public WktStreamReader(final Reader reader) {
+        this(reader, false);
+    }
+
+    /**
+     * Creates a reader.
+     * @param reader the text
+     * @param invertY true to negate the y-coordinates while reading, as the models of
+     *     the drawing pane expect
+     */
+    public WktStreamReader(final Reader reader, final boolean invertY) {
+        this.reader = reader;
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+        this.wktReader = new FastWktReader(geometryFactory, invertY, false);
+    }
+
+    /**
+     * Creates a reader of UTF-8 text.
+     * @param input the text
+     */
+    public WktStreamReader(final InputStream input) {
+        this(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next geometry, or the next member of the collection being read.
+     * @return the geometry, or null at the end of the text
+     * @throws IOException if the text could not be read
+     * @throws ParseException if the text is not valid WKT
+     */
+    public final Geometry next() throws IOException, ParseException {
+        while (true) {
+            if (container == null) {
+                skipSeparators();
+                if (peek() < 0) {
+                    return null;
+                }
+                String keyword = readWord();
+                srid = 0;
+                if (keyword.equals("SRID")) {
+                    srid = readSrid();
+                    skipWhitespace();
+                    keyword = readWord();
+                }
+                if (keyword.isEmpty()) {
+                    throw error("Expected a geometry type");
+                }
+                if (documentType == null) {
+                    documentType = keyword;
+                }
+                skipDimension();
+                if (!isCollection(keyword)) {
+                    return parse(keyword + " " + readMember(), keyword);
+                }
+                skipWhitespace();
+                if (peek() != '(') {
+                    if (!readWord().equals("EMPTY")) {
+                        throw error("Expected ( or EMPTY after " + keyword);
+                    }
+                    continue;
+                }
+                read();
+                container = keyword;
+            }
+            skipWhitespace();
+            int c = peek();
+            if (c == ')') {
+                read();
+                container = null;
+                continue;
+            }
+            if (c == ',') {
+                read();
+            }
+            String member = readMember();
+            members++;
+            return parse(memberText(member), container);
+        }
+    }
+
+    /**
+     * Gets the type of the first geometry of the text, in upper case, for example
+     * GEOMETRYCOLLECTION for a document holding one collection.
+     * @return the type, or null if nothing has been read yet
+     */
+    public final String getDocumentType() {
+        return documentType;
+    }
+
+    /**
+     * Gets the number of collection members read so far.
+     * @return the number of members
+     */
+    public final int getMemberCount() {
+        return members;
+    }
+
+    /**
+     * Closes the underlying reader.
+     * @throws IOException if closing fails
+     */
+    public final void close() throws IOException {
+        reader.close();
+    }
+
+    private static boolean isCollection(final String keyword) {
+        return keyword.equals("GEOMETRYCOLLECTION") || keyword.startsWith("MULTI");
+    }
+
+    /**
+     * Turns the text of a collection member into WKT of its own. Members of a
+     * GEOMETRYCOLLECTION are WKT already; members of a multi geometry lack the type.
+     */
+    private String memberText(final String member) {
+        switch (container) {
+            case "MULTIPOINT":
+                if (member.startsWith("(") || member.startsWith("EMPTY")) {
+                    return "POINT " + member;
+                }
+                return "POINT (" + member + ")";
+            case "MULTILINESTRING":
+                return "LINESTRING " + member;
+            case "MULTIPOLYGON":
+                return "POLYGON " + member;
+            default:
+                return member;
+        }
+    }
+
+    private Geometry parse(final String wkt, final String type) throws ParseException {
+        try {
+            Geometry geometry = wktReader.read(wkt);
+            if (srid != 0) {
+                geometry.setSRID(srid);
+            }
+            return geometry;
+        } catch (ParseException | IllegalArgumentException e) {
+            String where = type;
+            if (container != null) {
+                where = "member " + members + " of " + container;
+            }
+            throw new ParseException("Invalid WKT in " + where + " before character "
+                    + offset + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the text of a geometry or collection member, up to a comma or closing
+     * parenthesis outside its own parentheses, or the end of the text.
+     */
+    private String readMember() throws IOException, ParseException {
+        StringBuilder text = new StringBuilder();
+        int depth = 0;
+        skipWhitespace();
+        while (true) {
+            int c = peek();
+            if (c < 0) {
+                if (depth > 0) {
+                    throw error("Unexpected end of WKT");
+                }
+                break;
+            }
+            if (depth == 0 && (c == ',' || c == ')' || c == ';')) {
+                break;
+            }
+            if (depth == 0 && container == null && Character.isWhitespace(c)
+                    && text.toString().endsWith("EMPTY")) {
+                break;
+            }
+            read();
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0 && container == null) {
+                    text.append((char) c);
+                    break;
+                }
+            }
+            text.append((char) c);
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Reads the =n; after the SRID keyword of EWKT.
+     * @return the SRID
+     */
+    private int readSrid() throws IOException, ParseException {
+        skipWhitespace();
+        if (read() != '=') {
+            throw error("Expected = after SRID");
+        }
+        skipWhitespace();
+        StringBuilder digits = new StringBuilder();
+        while (peek() >= 0 && Character.isDigit(peek())) {
+            digits.append((char) read());
+        }
+        skipWhitespace();
+        if (digits.length() == 0 || read() != ';') {
+            throw error("Expected SRID=n;");
+        }
+        return Integer.parseInt(digits.toString());
+    }
+
+    /**
+     * Skips the Z, M or ZM after a geometry type; the extra ordinates are skipped by
+     * FastWktReader.
+     */
+    private void skipDimension() throws IOException {
+        skipWhitespace();
+        int c = Character.toUpperCase(peek());
+        if (c == 'Z' || c == 'M') {
+            readWord();
+        }
+    }
+
+    private String readWord() throws IOException {
+        StringBuilder word = new StringBuilder();
+        while (peek() >= 0 && Character.isLetter(peek())) {
+            word.append((char) read());
+        }
+        return word.toString().toUpperCase(Locale.ROOT);
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (peek() >= 0 && Character.isWhitespace(peek())) {
+            read();
+        }
+    }
+
+    private void skipSeparators() throws IOException {
+        while (peek() >= 0 && (Character.isWhitespace(peek()) || peek() == ','
+                || peek() == ';')) {
+            read();
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position >= length) {
+            length = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            position++;
+            offset++;
+        }
+        return c;
+    }
+
+    private ParseException error(final String message) {
+        return new ParseException(message + " at character " + offset);
+    }
+}
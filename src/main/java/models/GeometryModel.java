@@ -180,11 +180,39 @@ public abstract class GeometryModel {
     }
 
 
+    /**
+     * Creates a tooltip for each vertex, showing its original coordinates.
+     * @param color fill of the tooltip circles
+     * @return the tooltips, in the order of the coordinates
+     */
+    protected final ArrayList<Circle> createToolTips(final Paint color) {
+        Coordinate[] coordinates = this.geometry.getCoordinates();
+        Coordinate[] origCoordinates = this.originalGeometry.getCoordinates();
+        ArrayList<Circle> tooltips = new ArrayList<>(coordinates.length);
+        for (int i = 0; i < coordinates.length; i++) {
+            tooltips.add(createToolTip(coordinates[i].x, coordinates[i].y,
+                    origCoordinates[i].x, origCoordinates[i].y, color));
+        }
+        return tooltips;
+    }
+
     /**
      * Draws a geometry-object with to the screen.
      * @param graphicsContext The graphics to which the object should be drawn.
      * @return A list of tooltips.
      */
     public abstract ArrayList<Circle> drawAndCreateToolTips(final GraphicsContext graphicsContext);
+
+    /**
+     * Creates the tooltips of a geometry-object, without drawing it.
+     * @return A list of tooltips.
+     */
+    public abstract ArrayList<Circle> createToolTips();
+
+    /**
+     * Draws a geometry-object to the screen, without creating tooltips.
+     * @param graphicsContext The graphics to which the object should be drawn.
+     */
+    public abstract void draw(final GraphicsContext graphicsContext);
 }
 
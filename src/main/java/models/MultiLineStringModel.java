@@ -4,6 +4,7 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.MultiLineString;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 
 import java.util.ArrayList;
@@ -18,13 +19,18 @@ public class MultiLineStringModel extends GeometryModel {
     }
 
     public final ArrayList<Circle> drawAndCreateToolTips(final GraphicsContext graphicsContext) {
-        ArrayList<Circle> tooltips = new ArrayList<>();
+        draw(graphicsContext);
+        return createToolTips();
+    }
+
+    public final ArrayList<Circle> createToolTips() {
+        return createToolTips(Color.BLACK);
+    }
+
+    public final void draw(final GraphicsContext graphicsContext) {
         MultiLineString multiLineString = (MultiLineString) this.getGeometry();
         for (int i = 0; i < multiLineString.getNumGeometries(); i++) {
-            LineStringModel lineStringModel =
-                    new LineStringModel(multiLineString.getGeometryN(i), this.getGroup());
-            tooltips.addAll(lineStringModel.drawAndCreateToolTips(graphicsContext));
+            LineStringModel.drawLineString(multiLineString.getGeometryN(i), graphicsContext);
         }
-        return tooltips;
     }
 }
@@ -2,8 +2,10 @@ package models;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 
 import java.util.ArrayList;
@@ -17,12 +19,18 @@ public class MultiPointModel extends GeometryModel {
     }
 
     public final ArrayList<Circle> drawAndCreateToolTips(final GraphicsContext graphicsContext) {
-        ArrayList<Circle> tooltips = new ArrayList<>();
+        draw(graphicsContext);
+        return createToolTips();
+    }
+
+    public final ArrayList<Circle> createToolTips() {
+        return createToolTips(Color.TRANSPARENT);
+    }
+
+    public final void draw(final GraphicsContext graphicsContext) {
         MultiPoint multiPoint = (MultiPoint) this.getGeometry();
         for (int i = 0; i < multiPoint.getNumGeometries(); i++) {
-            PointModel pointModel = new PointModel(multiPoint.getGeometryN(i), this.getGroup());
-            tooltips.addAll(pointModel.drawAndCreateToolTips(graphicsContext));
+            PointModel.drawPoint((Point) multiPoint.getGeometryN(i), graphicsContext);
         }
-        return tooltips;
     }
 }
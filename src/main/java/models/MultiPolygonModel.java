@@ -2,8 +2,10 @@ package models;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Polygon;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 
 import java.util.ArrayList;
@@ -17,13 +19,18 @@ public class MultiPolygonModel extends GeometryModel {
     }
 
     public final ArrayList<Circle> drawAndCreateToolTips(final GraphicsContext graphicsContext) {
-        ArrayList<Circle> tooltips = new ArrayList<>();
+        draw(graphicsContext);
+        return createToolTips();
+    }
+
+    public final ArrayList<Circle> createToolTips() {
+        return createToolTips(Color.BLACK);
+    }
+
+    public final void draw(final GraphicsContext graphicsContext) {
         MultiPolygon multiPolygon = (MultiPolygon) this.getGeometry();
         for (int i = 0; i < multiPolygon.getNumGeometries(); i++) {
-            PolygonModel polygonModel =
-                    new PolygonModel(multiPolygon.getGeometryN(i), this.getGroup());
-            tooltips.addAll(polygonModel.drawAndCreateToolTips(graphicsContext));
+            PolygonModel.drawPolygon((Polygon) multiPolygon.getGeometryN(i), graphicsContext);
         }
-        return tooltips;
     }
 }
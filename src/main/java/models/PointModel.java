@@ -1,6 +1,5 @@
 package models;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Point;
 import javafx.scene.canvas.GraphicsContext;
@@ -23,16 +22,22 @@ public class PointModel extends GeometryModel {
     }
 
     public final ArrayList<Circle> drawAndCreateToolTips(final GraphicsContext graphicsContext) {
-        ArrayList<Circle> tooltips = new ArrayList<>();
-        Point point = (Point) this.getGeometry();
-        Coordinate[] origCoordinates = this.getOriginalGeometry().getCoordinates();
+        draw(graphicsContext);
+        return createToolTips();
+    }
+
+    public final ArrayList<Circle> createToolTips() {
+        return createToolTips(Color.TRANSPARENT);
+    }
+
+    public final void draw(final GraphicsContext graphicsContext) {
+        drawPoint((Point) this.getGeometry(), graphicsContext);
+    }
+
+    static void drawPoint(final Point point, final GraphicsContext graphicsContext) {
         graphicsContext.fillOval(
                 point.getX() - POINT_SIZE * ADJUSTMENT_FACTOR,
                 point.getY() - POINT_SIZE * ADJUSTMENT_FACTOR,
                 POINT_SIZE, POINT_SIZE);
-        Circle tooltip = createToolTip(point.getX(), point.getY(),
-                origCoordinates[0].x, origCoordinates[0].y, Color.TRANSPARENT);
-        tooltips.add(tooltip);
-        return tooltips;
     }
 }
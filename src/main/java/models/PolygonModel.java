@@ -22,29 +22,34 @@ public class PolygonModel extends GeometryModel {
     }
 
     public final ArrayList<Circle> drawAndCreateToolTips(final GraphicsContext graphicsContext) {
-        ArrayList<Circle> tooltips = new ArrayList<>();
+        draw(graphicsContext);
+        return createToolTips();
+    }
+
+    public final ArrayList<Circle> createToolTips() {
+        return createToolTips(Color.BLACK);
+    }
 
-        Coordinate[] coordinates = this.getGeometry().getCoordinates();
-        Coordinate[] origCoordinates = this.getOriginalGeometry().getCoordinates();
+    public final void draw(final GraphicsContext graphicsContext) {
+        drawPolygon((Polygon) this.getGeometry(), graphicsContext);
+    }
+
+    static void drawPolygon(final Polygon polygon, final GraphicsContext graphicsContext) {
+        Coordinate[] coordinates = polygon.getCoordinates();
         double[] xCoordinates = new double[coordinates.length];
         double[] yCoordinates = new double[coordinates.length];
         for (int i = 0; i < coordinates.length; i++) {
             xCoordinates[i] = coordinates[i].x;
             yCoordinates[i] = coordinates[i].y;
-            Circle tooltip = createToolTip(coordinates[i].x, coordinates[i].y,
-                    origCoordinates[i].x, origCoordinates[i].y, Color.BLACK);
-            tooltips.add(tooltip);
         }
 
 
         graphicsContext.fillPolygon(xCoordinates, yCoordinates, coordinates.length);
 
-        drawOutLines(graphicsContext);
-
-        return tooltips;
+        drawOutLines(polygon, graphicsContext);
     }
 
-    private void strokeCoordinateSequence(final CoordinateSequence cs,
+    private static void strokeCoordinateSequence(final CoordinateSequence cs,
                                           final GraphicsContext graphicsContext) {
         for (int i = 1; i < cs.size(); i++) {
                 graphicsContext.strokeLine(cs.getCoordinate(i - 1).x, cs.getCoordinate(i - 1).y,
@@ -52,9 +57,8 @@ public class PolygonModel extends GeometryModel {
             }
     }
 
-    private void drawOutLines(final GraphicsContext graphicsContext) {
-        Polygon polygon = (Polygon) getGeometry();
-
+    private static void drawOutLines(final Polygon polygon,
+                                     final GraphicsContext graphicsContext) {
         graphicsContext.setStroke(Color.BLACK);
 
         if (polygon.getNumInteriorRing() > 0) {
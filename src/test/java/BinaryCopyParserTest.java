@@ -0,0 +1,117 @@
+import com.vividsolutions.jts.io.WKBReader;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that BinaryCopyParser splits COPY output into rows, however the data is cut
+ * into chunks.
+ */
+public final class BinaryCopyParserTest {
+
+    /**
+     * The WKB of POINT (1 2).
+     */
+    private static final String WKB = "0101000000000000000000F03F0000000000000040";
+    /**
+     * What PostgreSQL 13 sends for COPY (VALUES (WKB, 7), (NULL, 8), (''::bytea, NULL))
+     * TO STDOUT (FORMAT binary): the header, three rows of two values, and the trailer.
+     */
+    private static final String COPY = "5047434F50590AFF0D0A00" + "00000000" + "00000000"
+            + "0002" + "00000015" + WKB + "00000004" + "00000007"
+            + "0002" + "FFFFFFFF" + "00000004" + "00000008"
+            + "0002" + "00000000" + "FFFFFFFF"
+            + "FFFF";
+    private static final int ROWS = 3;
+
+    private final List<byte[]> values = new ArrayList<>();
+
+    private static byte[] bytes(final String hex) {
+        return WKBReader.hexToBytes(hex);
+    }
+
+    private void assertRows(final BinaryCopyParser parser) {
+        assertEquals(ROWS, parser.getRows());
+        assertEquals(ROWS, values.size());
+        assertArrayEquals(bytes(WKB), values.get(0));
+        assertNull(values.get(1));
+        assertArrayEquals(new byte[0], values.get(2));
+    }
+
+    @Test
+    public void readsRows() throws SQLException {
+        BinaryCopyParser parser = new BinaryCopyParser();
+        assertFalse(parser.feed(bytes(COPY), values::add));
+        assertRows(parser);
+    }
+
+    @Test
+    public void readsRowsSplitAnywhere() throws SQLException {
+        byte[] data = bytes(COPY);
+        for (int split = 0; split < data.length; split++) {
+            values.clear();
+            BinaryCopyParser parser = new BinaryCopyParser();
+            assertTrue(parser.feed(Arrays.copyOfRange(data, 0, split), values::add));
+            assertFalse(parser.feed(Arrays.copyOfRange(data, split, data.length), values::add));
+            assertRows(parser);
+        }
+    }
+
+    @Test
+    public void readsRowsByteByByte() throws SQLException {
+        byte[] data = bytes(COPY);
+        BinaryCopyParser parser = new BinaryCopyParser();
+        for (int i = 0; i < data.length - 1; i++) {
+            assertTrue(parser.feed(new byte[] {data[i]}, values::add));
+        }
+        assertFalse(parser.feed(new byte[] {data[data.length - 1]}, values::add));
+        assertRows(parser);
+        assertFalse(parser.feed(bytes("0001"), values::add));
+        assertEquals(ROWS, values.size());
+    }
+
+    @Test
+    public void skipsHeaderExtension() throws SQLException {
+        String copy = "5047434F50590AFF0D0A00" + "00000000" + "00000003" + "AABBCC"
+                + "0001" + "00000002" + "0102" + "FFFF";
+        BinaryCopyParser parser = new BinaryCopyParser();
+        assertFalse(parser.feed(bytes(copy), values::add));
+        assertEquals(1, values.size());
+        assertArrayEquals(bytes("0102"), values.get(0));
+    }
+
+    @Test
+    public void rejectsTextCopy() {
+        // 1, tab, POINT (1 2) and the end marker, as COPY sends text
+        assertRejected("3109504F494E542028312032290A5C2E0A");
+    }
+
+    @Test
+    public void rejectsInvalidFieldLength() {
+        assertRejected("5047434F50590AFF0D0A00" + "00000000" + "00000000" + "0001" + "FFFFFFFE");
+    }
+
+    @Test
+    public void rejectsInvalidFieldCount() {
+        assertRejected("5047434F50590AFF0D0A00" + "00000000" + "00000000" + "FFFE");
+    }
+
+    private void assertRejected(final String copy) {
+        try {
+            new BinaryCopyParser().feed(bytes(copy), values::add);
+            fail("Accepts " + copy);
+        } catch (SQLException e) {
+            assertTrue(values.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that FastWktReader reads the same geometries as JTS WKTReader, in both
+ * coordinate layouts and with the y-coordinates inverted or not, and that it rejects
+ * the texts WKTReader rejects.
+ */
+public final class FastWktReaderTest {
+
+    private static final int GENERATED_CASES = 2000;
+    private static final int MIN_VERTICES = 3;
+    private static final int MAX_VERTICES = 12;
+    private static final int MAX_DECIMALS = 17;
+    private static final double EXTENT = 10000;
+    private static final double STEP = 5;
+    private static final long SEED = 42;
+    private static final int SRID = 4326;
+
+    private static final String[] VALID = {
+        "POINT (1 2)",
+        "POINT(-1.5 2.25)",
+        "point ( 0.1  -0.2 )",
+        "POINT (123456789012345678 0.12345678901234567)",
+        "POINT (0.000000000000000000000001 -0)",
+        "POINT (+3 .5)",
+        "LINESTRING (0 0, 1 1, 2 0)",
+        "LINEARRING (0 0, 1 0, 1 1, 0 0)",
+        "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 4 2, 2 2))",
+        "MULTIPOINT (1 2, 3 4)",
+        "MULTIPOINT ((1 2), (3 4))",
+        "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))",
+        "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5), (5.2 5.2, 5.4 5.2,"
+            + " 5.4 5.4, 5.2 5.2)))",
+        "GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (0 0, 1 1),"
+            + " GEOMETRYCOLLECTION (POLYGON ((0 0, 1 0, 1 1, 0 0))))",
+        // as PostGIS prints it, without spaces and with 15 significant digits
+        "MULTIPOLYGON(((10.7514399430657 59.9101538920528,10.7515283620685 59.9099832476046,"
+            + "10.7518196036532 59.910027811893,10.7514399430657 59.9101538920528)))",
+        "POINT (1 2) trailing text",
+    };
+
+    private static final String[] EXPONENTS = {
+        "POINT (1e3 -2.5E-4)",
+        "POINT (1E+3 2e0)",
+        "LINESTRING (1.5e-300 -4.9e-324, 1.7976931348623157E308 2.2250738585072014E-308)",
+        "POINT (6.02214076e23 -1.602176634e-19)",
+    };
+
+    private static final String[] EMPTY = {
+        "POINT EMPTY",
+        "LINESTRING EMPTY",
+        "POLYGON EMPTY",
+        "MULTIPOINT EMPTY",
+        "MULTILINESTRING EMPTY",
+        "MULTIPOLYGON EMPTY",
+        "GEOMETRYCOLLECTION EMPTY",
+    };
+
+    /**
+     * Texts with Z and M ordinates, which WKTReader does not accept, and the geometry
+     * FastWktReader must read from them.
+     */
+    private static final String[][] EXTENDED = {
+        {"POINT Z (1 2 3)", "POINT (1 2)"},
+        {"POINT M (1 2 3)", "POINT (1 2)"},
+        {"POINT ZM (1 2 3 4)", "POINT (1 2)"},
+        {"LINESTRING ZM (0 0 1 2, 1 1 3 4)", "LINESTRING (0 0, 1 1)"},
+        {"POLYGON M ((0 0 1, 1 0 1, 1 1 1, 0 0 1))", "POLYGON ((0 0, 1 0, 1 1, 0 0))"},
+        {"MULTIPOINT Z ((1 2 3), (4 5 6))", "MULTIPOINT ((1 2), (4 5))"},
+        {"POINT Z (1e3 2E-2 3e+1)", "POINT (1000 0.02)"},
+    };
+
+    private static final String[] INVALID = {
+        "POINT",
+        "POINT (1)",
+        "POINT (1 2",
+        "POINT (x 2)",
+        "POINT (1e 2)",
+        "LINESTRING (0 0, 1 1",
+        "POLYGON ((0 0, 1 0, 1 1))",
+        "CIRCLE (1 2)",
+        "MULTIPOINT (1 2,)",
+        "GEOMETRYCOLLECTION (POINT (1 2)",
+    };
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final WKTReader expected = new WKTReader(factory);
+
+    @Test
+    public void readsValidTexts() throws ParseException {
+        for (String text : VALID) {
+            assertSameAsWktReader(text);
+        }
+    }
+
+    @Test
+    public void readsExponents() throws ParseException {
+        for (String text : EXPONENTS) {
+            assertSameAsWktReader(text);
+        }
+    }
+
+    @Test
+    public void readsEmptyGeometries() throws ParseException {
+        for (String text : EMPTY) {
+            assertSameAsWktReader(text);
+            assertTrue(text, new FastWktReader(factory).read(text).isEmpty());
+        }
+    }
+
+    @Test
+    public void readsGeneratedTexts() throws ParseException {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GENERATED_CASES; i++) {
+            assertSameAsWktReader(createWkt(random));
+            assertSameAsWktReader(createMultiPoint(random));
+        }
+    }
+
+    @Test
+    public void skipsZAndM() throws ParseException {
+        for (String[] extended : EXTENDED) {
+            Geometry actual = new FastWktReader(factory).read(extended[0]);
+            assertExactlyEqual(extended[0], expected.read(extended[1]), actual);
+        }
+    }
+
+    @Test
+    public void readsSrid() throws ParseException {
+        Geometry geometry = new FastWktReader(factory).read("SRID=" + SRID
+                + ";POINT (10.75 59.91)");
+        assertEquals(SRID, geometry.getSRID());
+        assertExactlyEqual("EWKT", expected.read("POINT (10.75 59.91)"), geometry);
+    }
+
+    /**
+     * Like WKTReader, FastWktReader leaves checking rings to the geometry factory, which
+     * throws IllegalArgumentException for a ring that is not closed.
+     */
+    @Test
+    public void rejectsMalformedTexts() {
+        for (String text : INVALID) {
+            assertRejected("WKTReader", text, () -> expected.read(text));
+            for (FastWktReader reader : readers()) {
+                assertRejected("FastWktReader", text, () -> reader.read(text));
+            }
+        }
+        // WKTReader returns null for a text without a geometry
+        assertRejected("FastWktReader", "", () -> new FastWktReader(factory).read(""));
+    }
+
+    @Test
+    public void readsAfterRejectingText() throws ParseException {
+        FastWktReader reader = new FastWktReader(factory);
+        assertRejected("FastWktReader", "LINESTRING (0 0, 1",
+                () -> reader.read("LINESTRING (0 0, 1"));
+        assertExactlyEqual("after error", expected.read("POINT (1 2)"), reader.read("POINT (1 2)"));
+    }
+
+    private static void assertRejected(final String name, final String text, final Read read) {
+        boolean rejected = false;
+        try {
+            read.run();
+        } catch (ParseException | IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue(name + " accepts '" + text + "'", rejected);
+    }
+
+    private FastWktReader[] readers() {
+        return new FastWktReader[] {
+            new FastWktReader(factory),
+            new FastWktReader(factory, false, true),
+            new FastWktReader(factory, true, false),
+        };
+    }
+
+    /**
+     * Reads a text with WKTReader and with each FastWktReader, the last of which inverts
+     * the y-coordinates.
+     */
+    private void assertSameAsWktReader(final String text) throws ParseException {
+        FastWktReader[] readers = readers();
+        for (int r = 0; r < readers.length; r++) {
+            Geometry wanted = expected.read(text);
+            if (r == readers.length - 1) {
+                for (Coordinate coordinate : wanted.getCoordinates()) {
+                    coordinate.y *= -1;
+                }
+                wanted.geometryChanged();
+            }
+            assertExactlyEqual(text + " (reader " + r + ")", wanted, readers[r].read(text));
+        }
+    }
+
+    private static void assertExactlyEqual(final String message, final Geometry wanted,
+                                           final Geometry actual) {
+        assertEquals(message, wanted.getGeometryType(), actual.getGeometryType());
+        assertTrue(message + ": " + actual + " instead of " + wanted,
+                actual.equalsExact(wanted));
+    }
+
+    /**
+     * Creates a line or polygon around a random place, with numbers as Java prints them
+     * or rounded to a random number of decimals, as databases print them.
+     */
+    private static String createWkt(final Random random) {
+        int vertices = MIN_VERTICES + random.nextInt(MAX_VERTICES);
+        boolean polygon = random.nextBoolean();
+        int decimals = random.nextInt(MAX_DECIMALS);
+        double x = random.nextDouble() * EXTENT - EXTENT / 2;
+        double y = random.nextDouble() * EXTENT - EXTENT / 2;
+        StringBuilder wkt = new StringBuilder();
+        if (polygon) {
+            wkt.append("POLYGON ((");
+        } else {
+            wkt.append("LINESTRING (");
+        }
+        String first = number(x, decimals) + " " + number(y, decimals);
+        wkt.append(first);
+        for (int v = 0; v < vertices; v++) {
+            x += (2 * random.nextDouble() - 1) * STEP;
+            y += (2 * random.nextDouble() - 1) * STEP;
+            wkt.append(", ").append(number(x, decimals)).append(' ').append(number(y, decimals));
+        }
+        if (polygon) {
+            wkt.append(", ").append(first).append(')');
+        }
+        return wkt.append(')').toString();
+    }
+
+    /**
+     * Creates a multipoint with very large and very small numbers, which Java prints
+     * with exponents.
+     */
+    private static String createMultiPoint(final Random random) {
+        int points = 1 + random.nextInt(MAX_VERTICES);
+        StringBuilder wkt = new StringBuilder("MULTIPOINT (");
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                wkt.append(", ");
+            }
+            wkt.append(random.nextGaussian() * EXTENT * EXTENT).append(' ')
+                    .append(random.nextGaussian() / EXTENT);
+        }
+        return wkt.append(')').toString();
+    }
+
+    private static String number(final double value, final int decimals) {
+        if (decimals == 0) {
+            return Double.toString(value);
+        }
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    /**
+     * Reading that is expected to fail.
+     */
+    private interface Read {
+        void run() throws ParseException;
+    }
+}
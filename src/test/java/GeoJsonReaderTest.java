@@ -0,0 +1,140 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that GeoJsonReader reads every GeoJSON geometry type, features and feature
+ * collections into the geometries WKTReader reads from the same shapes.
+ */
+public final class GeoJsonReaderTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final WKTReader wktReader = new WKTReader(factory);
+
+    private List<Geometry> read(final String json, final boolean invertY)
+            throws ParseException {
+        List<Geometry> geometries = new ArrayList<>();
+        new GeoJsonReader(factory, invertY).read(json, geometries::add);
+        return geometries;
+    }
+
+    private void assertGeometries(final List<Geometry> actual, final String... expected)
+            throws ParseException {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            Geometry wanted = wktReader.read(expected[i]);
+            assertEquals(wanted.getGeometryType(), actual.get(i).getGeometryType());
+            assertTrue(actual.get(i) + " instead of " + wanted, actual.get(i).equalsExact(wanted));
+        }
+    }
+
+    private void assertGeometry(final String json, final String wkt) throws ParseException {
+        assertGeometries(read(json, false), wkt);
+    }
+
+    @Test
+    public void readsEveryGeometryType() throws ParseException {
+        assertGeometry("{\"type\": \"Point\", \"coordinates\": [1.5, -2]}", "POINT (1.5 -2)");
+        assertGeometry("{\"type\": \"LineString\", \"coordinates\": [[0, 0], [1, 1e2]]}",
+                "LINESTRING (0 0, 1 100)");
+        assertGeometry("{\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [10, 0], [10, 10],"
+                + " [0, 0]], [[2, 1], [8, 1], [8, 7], [2, 1]]]}",
+                "POLYGON ((0 0, 10 0, 10 10, 0 0), (2 1, 8 1, 8 7, 2 1))");
+        assertGeometry("{\"type\": \"MultiPoint\", \"coordinates\": [[1, 2], [3, 4]]}",
+                "MULTIPOINT ((1 2), (3 4))");
+        assertGeometry("{\"type\": \"MultiLineString\", \"coordinates\": [[[0, 0], [1, 1]],"
+                + " [[2, 2], [3, 3]]]}", "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))");
+        assertGeometry("{\"type\": \"MultiPolygon\", \"coordinates\": [[[[0, 0], [1, 0], [1, 1],"
+                + " [0, 0]]], [[[5, 5], [6, 5], [6, 6], [5, 5]]]]}",
+                "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))");
+        assertGeometry("{\"type\": \"GeometryCollection\", \"geometries\": ["
+                + "{\"type\": \"Point\", \"coordinates\": [1, 2]},"
+                + "{\"type\": \"GeometryCollection\", \"geometries\": []}]}",
+                "GEOMETRYCOLLECTION (POINT (1 2), GEOMETRYCOLLECTION EMPTY)");
+    }
+
+    @Test
+    public void readsEmptyGeometries() throws ParseException {
+        assertGeometry("{\"type\": \"Point\", \"coordinates\": []}", "POINT EMPTY");
+        assertGeometry("{\"type\": \"LineString\", \"coordinates\": []}", "LINESTRING EMPTY");
+        assertGeometry("{\"type\": \"Polygon\", \"coordinates\": []}", "POLYGON EMPTY");
+        assertGeometry("{\"type\": \"MultiPolygon\", \"coordinates\": []}", "MULTIPOLYGON EMPTY");
+    }
+
+    @Test
+    public void keepsOnlyXAndY() throws ParseException {
+        assertGeometry("{\"type\": \"LineString\", \"coordinates\": [[1, 2, 3], [4, 5, 6, 7]]}",
+                "LINESTRING (1 2, 4 5)");
+    }
+
+    @Test
+    public void invertsY() throws ParseException {
+        assertGeometries(read("{\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [1, 0],"
+                + " [1, 1], [0, 0]]]}", true), "POLYGON ((0 0, 1 0, 1 -1, 0 0))");
+    }
+
+    @Test
+    public void readsFeatures() throws ParseException {
+        String json = "{\"type\": \"FeatureCollection\", \"features\": ["
+                + "{\"type\": \"Feature\", \"id\": 1,"
+                + " \"properties\": {\"tags\": [\"a\", {\"b\": null}]},"
+                + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}},"
+                + "{\"type\": \"Feature\", \"properties\": null, \"geometry\": null},"
+                + "{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\","
+                + " \"coordinates\": [3, 4]},"
+                + " \"properties\": {\"name\": \"\\\"quoted\\\" \\u00e5\"}}"
+                + "], \"bbox\": [1, 2, 3, 4]}";
+        assertGeometries(read(json, false), "POINT (1 2)", "POINT (3 4)");
+        assertGeometry("{\"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]},"
+                + " \"type\": \"Feature\"}", "POINT (1 2)");
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsUnknownType() throws ParseException {
+        read("{\"type\": \"Circle\", \"coordinates\": [1, 2]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsObjectWithoutType() throws ParseException {
+        read("{\"coordinates\": [1, 2]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsShortPosition() throws ParseException {
+        read("{\"type\": \"LineString\", \"coordinates\": [[1, 2], [3]]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsTextPosition() throws ParseException {
+        read("{\"type\": \"Point\", \"coordinates\": [\"1\", 2]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsMemberThatIsNoFeature() throws ParseException {
+        read("{\"type\": \"FeatureCollection\", \"features\": [{\"type\": \"Point\","
+                + " \"coordinates\": [1, 2]}]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsUnclosedRing() throws ParseException {
+        read("{\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [1, 0], [1, 1]]]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsLineWithOnePoint() throws ParseException {
+        read("{\"type\": \"LineString\", \"coordinates\": [[1, 2]]}", false);
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsInvalidJson() throws ParseException {
+        read("{\"type\": \"Point\", \"coordinates\": [1, 2],}", false);
+    }
+}
@@ -0,0 +1,129 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks how GeometryQuery finds the geometry of a layer query and rewrites the query,
+ * without being misled by quotes and comments.
+ */
+public final class GeometryQueryTest {
+
+    private static final String PREDICATE = "geom && box";
+
+    private static GeometryQuery query(final String sql) {
+        return new GeometryQuery(sql, SqlDialect.POSTGIS);
+    }
+
+    @Test
+    public void findsTextFunction() {
+        GeometryQuery query = query("SELECT st_astext(ST_Transform(geom, 4326)) FROM roads");
+        assertEquals("st_astext", query.getTextFunction());
+        assertEquals("ST_Transform(geom, 4326)", query.getGeometryExpression());
+    }
+
+    @Test
+    public void findsGeometryColumn() {
+        GeometryQuery query = query("SELECT r.geom, name FROM roads r");
+        assertFalse(query.hasTextFunction());
+        assertEquals("r.geom", query.getGeometryExpression());
+        assertNull(query("SELECT DISTINCT geom FROM roads").getGeometryExpression());
+        assertNull(query("SELECT ST_Buffer(geom, 1) FROM roads").getGeometryExpression());
+    }
+
+    @Test
+    public void skipsFunctionsInQuotesAndComments() {
+        String sql = "-- ST_AsText(a)\nSELECT 'ST_AsText(b)', \"ST_AsText(c)\", /* ST_AsText(d) */"
+                + " ST_AsText(e) FROM t";
+        assertEquals("e", query(sql).getGeometryExpression());
+    }
+
+    @Test
+    public void skipsBracketsInQuotes() {
+        String sql = "SELECT ST_AsText(ST_GeomFromText('POINT (1 2))', 4326)) FROM t";
+        assertEquals("ST_GeomFromText('POINT (1 2))', 4326)",
+                query(sql).getGeometryExpression());
+    }
+
+    @Test
+    public void replacesOutputFunction() {
+        GeometryQuery query = query("SELECT ST_AsText(geom) FROM t");
+        assertEquals("SELECT ST_AsBinary(geom) FROM t", query.withOutputFunction("ST_AsBinary"));
+        assertEquals("SELECT ST_AsTWKB(geom, 3) FROM t",
+                query.withOutputFunction("ST_AsTWKB", "3"));
+        assertEquals("SELECT geom FROM t", query("SELECT geom FROM t")
+                .withOutputFunction("ST_AsBinary"));
+    }
+
+    @Test
+    public void replacesGeometryExpression() {
+        assertEquals("SELECT ST_AsText(ST_Simplify(geom, 1)) FROM t",
+                query("SELECT ST_AsText(geom) FROM t")
+                        .withGeometryExpression("ST_Simplify(geom, 1)"));
+        assertEquals("SELECT ST_Simplify(r.geom, 1) AS geom, name FROM roads r",
+                query("SELECT r.geom, name FROM roads r")
+                        .withGeometryExpression("ST_Simplify(r.geom, 1)"));
+        assertEquals("SELECT ST_Simplify(geom, 1) shape FROM t",
+                query("SELECT geom shape FROM t").withGeometryExpression("ST_Simplify(geom, 1)"));
+    }
+
+    @Test
+    public void addsWhereClause() {
+        assertEquals("SELECT geom FROM t WHERE " + PREDICATE + " ;",
+                query("SELECT geom FROM t;").withPredicate(PREDICATE));
+        assertEquals("SELECT geom FROM t WHERE " + PREDICATE + " ORDER BY id",
+                query("SELECT geom FROM t ORDER BY id").withPredicate(PREDICATE));
+    }
+
+    @Test
+    public void extendsWhereClause() {
+        assertEquals("SELECT geom FROM t WHERE (" + PREDICATE + ") AND (a = 1 OR b = 2) LIMIT 5",
+                query("SELECT geom FROM t WHERE a = 1 OR b = 2 LIMIT 5")
+                        .withPredicate(PREDICATE));
+    }
+
+    @Test
+    public void skipsKeywordsInQuotesAndComments() {
+        String sql = "SELECT geom FROM t WHERE kind = 'order by' -- limit\n"
+                + " AND \"group\" = $$it's a union$$ /* fetch */ ORDER BY id";
+        assertEquals("SELECT geom FROM t WHERE (" + PREDICATE + ") AND (kind = 'order by'"
+                + " -- limit\n AND \"group\" = $$it's a union$$ /* fetch */) ORDER BY id",
+                query(sql).withPredicate(PREDICATE));
+    }
+
+    @Test
+    public void readsBackslashesByDialect() {
+        String standard = "SELECT geom FROM t WHERE path = 'C:\\' ORDER BY id";
+        assertEquals("SELECT geom FROM t WHERE (" + PREDICATE + ") AND (path = 'C:\\')"
+                + " ORDER BY id", query(standard).withPredicate(PREDICATE));
+        String escape = "SELECT geom FROM t WHERE name = E'it\\'s (an) order' ORDER BY id";
+        assertEquals("SELECT geom FROM t WHERE (" + PREDICATE + ") AND (name ="
+                + " E'it\\'s (an) order') ORDER BY id", query(escape).withPredicate(PREDICATE));
+        String mysql = "SELECT geom FROM t WHERE name = 'it\\'s (an) order' ORDER BY id";
+        assertEquals("SELECT geom FROM t WHERE (" + PREDICATE + ") AND (name ="
+                + " 'it\\'s (an) order') ORDER BY id",
+                new GeometryQuery(mysql, SqlDialect.MYSQL).withPredicate(PREDICATE));
+    }
+
+    @Test
+    public void keepsSetOperations() {
+        assertNull(query("SELECT geom FROM a UNION SELECT geom FROM b").withPredicate(PREDICATE));
+        assertNull(query("SELECT geom FROM a EXCEPT SELECT geom FROM b")
+                .toAggregateQuery("COUNT(*)"));
+    }
+
+    @Test
+    public void createsAggregateQuery() {
+        assertEquals("SELECT COUNT(*) FROM t WHERE a = 1",
+                query("SELECT ST_AsText(geom) FROM t WHERE a = 1 ORDER BY id;")
+                        .toAggregateQuery("COUNT(*)"));
+        // a limit inside a subquery does not make the rows depend on each other
+        assertEquals("SELECT COUNT(*) FROM (SELECT geom FROM t LIMIT 5) s",
+                query("SELECT geom FROM (SELECT geom FROM t LIMIT 5) s")
+                        .toAggregateQuery("COUNT(*)"));
+        assertNull(query("SELECT geom FROM t LIMIT 5").toAggregateQuery("COUNT(*)"));
+        assertNull(query("SELECT ST_Union(geom) FROM t GROUP BY kind")
+                .toAggregateQuery("COUNT(*)"));
+    }
+}
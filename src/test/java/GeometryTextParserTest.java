@@ -0,0 +1,135 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that GeometryTextParser finds the format of the text area, and reads each
+ * format into the same geometries, with the y-coordinates inverted for the drawing pane.
+ */
+public final class GeometryTextParserTest {
+
+    /**
+     * POINT (1 2) as PostGIS prints ST_AsBinary and ST_AsEWKB with SRID 4326, and as
+     * big endian WKB.
+     */
+    private static final String WKB = "0101000000000000000000F03F0000000000000040";
+    private static final String EWKB = "0101000020E6100000000000000000F03F0000000000000040";
+    private static final String WKB_BIG_ENDIAN = "00000000013FF00000000000004000000000000000";
+    private static final String GEOJSON = "{\"type\": \"FeatureCollection\", \"features\": ["
+            + "{\"type\": \"Feature\", \"properties\": {\"name\": \"a\"},"
+            + " \"geometry\": {\"type\": \"Point\", \"coordinates\": [1, 2]}},"
+            + "{\"type\": \"Feature\", \"properties\": {}, \"geometry\": null},"
+            + "{\"type\": \"Feature\", \"geometry\": {\"type\": \"MultiPoint\","
+            + " \"coordinates\": [[3, 4], [5, 6]]}}]}";
+
+    private final WKTReader wktReader = new WKTReader();
+
+    @Test
+    public void detectsWkt() {
+        assertEquals(GeometryTextParser.Format.WKT,
+                GeometryTextParser.Format.detect("POINT (1 2)"));
+        assertEquals(GeometryTextParser.Format.WKT,
+                GeometryTextParser.Format.detect("\n  MULTIPOINT ((1 2))\nPOINT (3 4)"));
+        assertEquals(GeometryTextParser.Format.WKT,
+                GeometryTextParser.Format.detect("SRID=4326;POINT (1 2)"));
+        assertEquals(GeometryTextParser.Format.WKT, GeometryTextParser.Format.detect(""));
+        // starts like WKB, but is not all hex digits
+        assertEquals(GeometryTextParser.Format.WKT,
+                GeometryTextParser.Format.detect("01 POINT (1 2)"));
+    }
+
+    @Test
+    public void detectsHexWkb() {
+        assertEquals(GeometryTextParser.Format.WKB_HEX, GeometryTextParser.Format.detect(WKB));
+        assertEquals(GeometryTextParser.Format.WKB_HEX, GeometryTextParser.Format.detect(EWKB));
+        assertEquals(GeometryTextParser.Format.WKB_HEX,
+                GeometryTextParser.Format.detect(" " + WKB_BIG_ENDIAN + "\n"));
+        assertEquals(GeometryTextParser.Format.WKB_HEX,
+                GeometryTextParser.Format.detect(WKB.toLowerCase() + "\r\n" + EWKB));
+    }
+
+    @Test
+    public void detectsGeoJson() {
+        assertEquals(GeometryTextParser.Format.GEOJSON,
+                GeometryTextParser.Format.detect(" \n" + GEOJSON));
+    }
+
+    @Test
+    public void readsWkt() throws ParseException {
+        GeometryTextParser parser = new GeometryTextParser("POINT (1 2)");
+        assertEquals("Point", parser.getGeometryType());
+        assertGeometries(parser.parse(), "POINT (1 -2)");
+    }
+
+    @Test
+    public void readsEwkt() throws ParseException {
+        GeometryTextParser parser = new GeometryTextParser("SRID=4326;LINESTRING (0 0, 1 2)");
+        assertEquals(GeometryTextParser.Format.WKT, parser.getFormat());
+        assertGeometries(parser.parse(), "LINESTRING (0 0, 1 -2)");
+    }
+
+    @Test
+    public void readsHexWkb() throws ParseException {
+        GeometryTextParser parser = new GeometryTextParser(WKB + "\n" + WKB_BIG_ENDIAN);
+        assertGeometries(parser.parse(), "POINT (1 -2)", "POINT (1 -2)");
+        assertEquals("GeometryCollection", parser.getGeometryType());
+    }
+
+    @Test
+    public void readsHexEwkb() throws ParseException {
+        GeometryTextParser parser = new GeometryTextParser(EWKB.toLowerCase());
+        assertGeometries(parser.parse(), "POINT (1 -2)");
+        assertEquals("Point", parser.getGeometryType());
+    }
+
+    @Test
+    public void readsGeoJson() throws ParseException {
+        GeometryTextParser parser = new GeometryTextParser(GEOJSON);
+        assertEquals(GeometryTextParser.Format.GEOJSON, parser.getFormat());
+        assertGeometries(parser.parse(), "POINT (1 -2)", "POINT (3 -4)", "POINT (5 -6)");
+        assertEquals("GeometryCollection", parser.getGeometryType());
+    }
+
+    @Test
+    public void rejectsInvalidWkb() throws ParseException {
+        // cut off in the middle of the y-coordinate
+        assertRejected(WKB.substring(0, WKB.length() - 2));
+        assertRejected(WKB + "00");
+        assertRejected(WKB + "0");
+        // an unknown geometry type
+        assertRejected("0109000000000000000000F03F0000000000000040");
+    }
+
+    @Test
+    public void rejectsInvalidGeoJson() throws ParseException {
+        assertRejected("{\"type\": \"FeatureCollection\", \"features\": []}");
+        assertRejected("{\"type\": \"Point\", \"coordinates\": [1]}");
+        assertRejected("{\"type\": \"Point\", \"coordinates\": [1, 2]");
+    }
+
+    private static void assertRejected(final String text) throws ParseException {
+        GeometryTextParser parser = new GeometryTextParser(text);
+        try {
+            parser.parse();
+            fail("Accepts " + text);
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage() != null);
+        }
+    }
+
+    private void assertGeometries(final List<Geometry> actual, final String... expected)
+            throws ParseException {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            Geometry wanted = wktReader.read(expected[i]);
+            assertTrue(actual.get(i) + " instead of " + wanted, actual.get(i).equalsExact(wanted));
+        }
+    }
+}
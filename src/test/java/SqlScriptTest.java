@@ -0,0 +1,125 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how SqlScript splits scripts at semicolons and tells plain queries from
+ * statements that write.
+ */
+public final class SqlScriptTest {
+
+    private static List<String> split(final String script, final SqlDialect dialect) {
+        return new SqlScript(script, dialect).getStatements();
+    }
+
+    @Test
+    public void splitsAtSemicolons() {
+        assertEquals(Arrays.asList("SELECT 1", "SELECT 2"),
+                split("SELECT 1;\n SELECT 2;", SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void dropsEmptyStatements() {
+        assertEquals(Arrays.asList("SELECT 1", "SELECT 2"),
+                split(";;SELECT 1; ;\n-- nothing here\n; /* nor here */; SELECT 2",
+                        SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void keepsSemicolonsInQuotes() {
+        assertEquals(Arrays.asList("SELECT 'a;b', \"c;d\"", "SELECT 'it''s; fine'"),
+                split("SELECT 'a;b', \"c;d\"; SELECT 'it''s; fine'", SqlDialect.POSTGIS));
+        assertEquals(Arrays.asList("SELECT `a;b` FROM t", "SELECT 2"),
+                split("SELECT `a;b` FROM t; SELECT 2", SqlDialect.MYSQL));
+    }
+
+    @Test
+    public void keepsSemicolonsInComments() {
+        assertEquals(Arrays.asList("SELECT 1 -- one; two\n FROM t",
+                "SELECT /* a; /* b; */ c; */ 2"),
+                split("SELECT 1 -- one; two\n FROM t; SELECT /* a; /* b; */ c; */ 2",
+                        SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void keepsSemicolonsInDollarQuotes() {
+        String function = "CREATE FUNCTION f() RETURNS int AS $body$ BEGIN RETURN 1; END; $body$"
+                + " LANGUAGE plpgsql";
+        assertEquals(Arrays.asList(function, "SELECT $$;$$"),
+                split(function + "; SELECT $$;$$", SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void splitsAfterParameters() {
+        assertEquals(Arrays.asList("SELECT $1", "SELECT $2"),
+                split("SELECT $1; SELECT $2", SqlDialect.POSTGIS));
+    }
+
+    /**
+     * With standard_conforming_strings on, as PostgreSQL has it by default, a backslash
+     * is an ordinary character in a string.
+     */
+    @Test
+    public void readsBackslashAsCharacterInStandardStrings() {
+        assertEquals(Arrays.asList("SELECT 'C:\\'", "SELECT 2"),
+                split("SELECT 'C:\\'; SELECT 2", SqlDialect.POSTGIS));
+        assertEquals(Arrays.asList("SELECT 'C:\\'", "SELECT 2"),
+                split("SELECT 'C:\\'; SELECT 2", SqlDialect.H2GIS));
+        assertEquals(Arrays.asList("SELECT 'C:\\'", "SELECT 2"),
+                split("SELECT 'C:\\'; SELECT 2", null));
+        assertEquals(Arrays.asList("SELECT \"a\\\"", "SELECT 2"),
+                split("SELECT \"a\\\"; SELECT 2", SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void readsBackslashEscapesInEscapeStrings() {
+        assertEquals(Arrays.asList("SELECT E'it\\'s; fine'", "SELECT e'\\\\'", "SELECT 2"),
+                split("SELECT E'it\\'s; fine'; SELECT e'\\\\'; SELECT 2", SqlDialect.POSTGIS));
+        // a name ending in e before a string is not an escape string prefix
+        assertEquals(Arrays.asList("SELECT name'\\'", "SELECT 2"),
+                split("SELECT name'\\'; SELECT 2", SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void readsBackslashEscapesInMySqlStrings() {
+        assertEquals(Arrays.asList("SELECT 'it\\'s; fine', \"a\\\"; b\"", "SELECT 2"),
+                split("SELECT 'it\\'s; fine', \"a\\\"; b\"; SELECT 2", SqlDialect.MYSQL));
+        assertEquals(Arrays.asList("SELECT `a\\`", "SELECT 2"),
+                split("SELECT `a\\`; SELECT 2", SqlDialect.MYSQL));
+    }
+
+    @Test
+    public void findsPlainQueries() {
+        assertTrue(SqlScript.isQuery("SELECT geom FROM roads", SqlDialect.POSTGIS));
+        assertTrue(SqlScript.isQuery("  with r AS (SELECT 1) SELECT * FROM r", null));
+        assertTrue(SqlScript.isQuery("VALUES (1)", null));
+        assertTrue(SqlScript.isQuery("SELECT 'insert', \"update\" -- delete\n FROM t", null));
+        assertTrue(SqlScript.isQuery("/* drop */ SELECT 1", null));
+    }
+
+    @Test
+    public void findsStatementsThatWrite() {
+        assertFalse(SqlScript.isQuery("", null));
+        assertFalse(SqlScript.isQuery("INSERT INTO t VALUES (1)", null));
+        assertFalse(SqlScript.isQuery("SELECT * INTO copy FROM t", null));
+        assertFalse(SqlScript.isQuery("SELECT * FROM t FOR UPDATE", null));
+        assertFalse(SqlScript.isQuery(
+                "WITH d AS (DELETE FROM t RETURNING *) SELECT * FROM d", null));
+        assertFalse(SqlScript.isQuery("SET search_path TO gis", null));
+        // the quote ends after the backslash, so the insert is outside it
+        assertFalse(SqlScript.isQuery("SELECT 'C:\\' FROM t; INSERT INTO t VALUES ('x')",
+                SqlDialect.POSTGIS));
+    }
+
+    @Test
+    public void findsIndependentScripts() {
+        assertTrue(new SqlScript("SELECT 1; SELECT 2", SqlDialect.POSTGIS).isIndependent());
+        assertFalse(new SqlScript("CREATE TEMP TABLE t AS SELECT 1; SELECT * FROM t",
+                SqlDialect.POSTGIS).isIndependent());
+    }
+}
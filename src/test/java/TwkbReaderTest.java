@@ -0,0 +1,137 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that TwkbReader reads TWKB, as PostGIS ST_AsTWKB writes it, into the
+ * geometries the same shapes have as WKT.
+ */
+public final class TwkbReaderTest {
+
+    private static final double Z = 3;
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final WKTReader wktReader = new WKTReader(factory);
+
+    private Geometry read(final String hex) throws ParseException {
+        return new TwkbReader(factory).read(WKBReader.hexToBytes(hex));
+    }
+
+    private void assertGeometry(final String hex, final String wkt) throws ParseException {
+        Geometry wanted = wktReader.read(wkt);
+        Geometry actual = read(hex);
+        assertEquals(wanted.getGeometryType(), actual.getGeometryType());
+        assertTrue(actual + " instead of " + wanted, actual.equalsExact(wanted));
+    }
+
+    @Test
+    public void readsPoint() throws ParseException {
+        assertGeometry("01000204", "POINT (1 2)");
+    }
+
+    /**
+     * The example of the PostGIS manual, ST_AsTWKB('LINESTRING(1 1,5 5)'::geometry).
+     */
+    @Test
+    public void readsLineString() throws ParseException {
+        assertGeometry("02000202020808", "LINESTRING (1 1, 5 5)");
+    }
+
+    @Test
+    public void readsPrecision() throws ParseException {
+        // two decimals, with values taking two bytes each
+        assertGeometry("4100F6018F07", "POINT (1.23 -4.56)");
+        // rounded to tens
+        assertGeometry("11001805", "POINT (120 -30)");
+    }
+
+    @Test
+    public void readsPolygon() throws ParseException {
+        assertGeometry("030001" + "04" + "0000" + "0200" + "0002" + "0101",
+                "POLYGON ((0 0, 1 0, 1 1, 0 0))");
+        // a shell and a hole, the hole continuing from the last point of the shell
+        assertGeometry("030002" + "04" + "0000" + "1400" + "0014" + "1313"
+                + "04" + "1003" + "0400" + "0004" + "0303",
+                "POLYGON ((0 0, 10 0, 10 10, 0 0), (8 -2, 10 -2, 10 0, 8 -2))");
+    }
+
+    @Test
+    public void closesOpenRings() throws ParseException {
+        assertGeometry("030001" + "03" + "0000" + "0200" + "0002",
+                "POLYGON ((0 0, 1 0, 1 1, 0 0))");
+    }
+
+    @Test
+    public void readsMultiGeometries() throws ParseException {
+        assertGeometry("040002" + "0204" + "0404", "MULTIPOINT ((1 2), (3 4))");
+        assertGeometry("050002" + "02" + "0000" + "0202" + "02" + "0202" + "0202",
+                "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))");
+        // the second polygon continues from the last point of the first
+        assertGeometry("060002" + "01" + "04" + "0000" + "0200" + "0002" + "0101"
+                + "01" + "04" + "0808" + "0200" + "0002" + "0101",
+                "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((4 4, 5 4, 5 5, 4 4)))");
+    }
+
+    @Test
+    public void readsCollection() throws ParseException {
+        assertGeometry("070002" + "01000204" + "02000202020808",
+                "GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (1 1, 5 5))");
+    }
+
+    @Test
+    public void skipsIdsSizeAndBoundingBox() throws ParseException {
+        // ids 5 and 10
+        assertGeometry("040402" + "0A14" + "0204" + "0404", "MULTIPOINT ((1 2), (3 4))");
+        // a size of six bytes, then the minimum and extent of x and of y
+        assertGeometry("0103" + "06" + "0200" + "0400" + "0204", "POINT (1 2)");
+    }
+
+    @Test
+    public void readsEmptyGeometries() throws ParseException {
+        assertGeometry("0110", "POINT EMPTY");
+        assertGeometry("0210", "LINESTRING EMPTY");
+        assertGeometry("0310", "POLYGON EMPTY");
+        assertGeometry("0410", "MULTIPOINT EMPTY");
+        assertGeometry("0510", "MULTILINESTRING EMPTY");
+        assertGeometry("0610", "MULTIPOLYGON EMPTY");
+        assertGeometry("0710", "GEOMETRYCOLLECTION EMPTY");
+    }
+
+    @Test
+    public void readsZAndSkipsM() throws ParseException {
+        Geometry point = read("010801020406");
+        assertGeometry("010801020406", "POINT (1 2)");
+        assertEquals(Z, point.getCoordinate().z, 0);
+        // Z with one decimal, and M
+        Geometry line = read("02080702" + "02041E08" + "0202000A");
+        assertGeometry("02080702" + "02041E08" + "0202000A", "LINESTRING (1 2, 2 3)");
+        assertEquals(Z / 2, line.getCoordinates()[1].z, 0);
+    }
+
+    @Test
+    public void rejectsInvalidTwkb() {
+        // cut off before the last ordinate
+        assertRejected("020002020208");
+        assertRejected("0900");
+        // more points than there are bytes
+        assertRejected("0200FFFFFFFF0F");
+        // a number longer than 64 bits
+        assertRejected("0100FFFFFFFFFFFFFFFFFFFF01");
+    }
+
+    private void assertRejected(final String hex) {
+        try {
+            read(hex);
+            fail("Accepts " + hex);
+        } catch (ParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("TWKB"));
+        }
+    }
+}